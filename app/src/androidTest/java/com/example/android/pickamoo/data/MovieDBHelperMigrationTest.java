@@ -0,0 +1,228 @@
+package com.example.android.pickamoo.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.pickamoo.data.MovieContract.CastEntry;
+import com.example.android.pickamoo.data.MovieContract.DetailEntry;
+import com.example.android.pickamoo.data.MovieContract.ListEntry;
+import com.example.android.pickamoo.data.MovieContract.MovieEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that every step of {@link MovieDBHelper#MIGRATIONS} keeps the data, starting from a
+ * database created the way the first version of the app did.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieDBHelperMigrationTest {
+
+    private static final String TEST_DATABASE = "migration-test.db";
+
+    // Favorites table of version 1, as it was created by the first version of the app
+    private static final String SQL_CREATE_FAVORITES_TABLE_V1 =
+            "CREATE TABLE favorites (" +
+                    "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "movie_id INTEGER NOT NULL," +
+                    "poster_url TEXT," +
+                    "title TEXT," +
+                    "release_date TEXT," +
+                    "production_countries TEXT," +
+                    "genres TEXT," +
+                    "synopsis TEXT," +
+                    "director TEXT," +
+                    "vote_average REAL NOT NULL DEFAULT 0.0," +
+                    " UNIQUE (movie_id) ON CONFLICT REPLACE);";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsFavorites() {
+        SQLiteDatabase db = createVersion1Database();
+        insertFavorite(db, 550, "Fight Club");
+        insertFavorite(db, 13, "Forrest Gump");
+        db.close();
+
+        MovieDBHelper helper = new MovieDBHelper(mContext, TEST_DATABASE);
+        db = helper.getWritableDatabase();
+        try {
+            assertEquals(MovieDBHelper.DATABASE_VERSION, db.getVersion());
+            assertEquals(2, countRows(db, MovieEntry.TABLE_NAME));
+            assertTrue(exists(db, "table", ListEntry.TABLE_NAME));
+            assertTrue(exists(db, "index", CastEntry.TABLE_NAME + "_movie_position_index"));
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void migration1To2_addsCacheTables() {
+        SQLiteDatabase db = createVersion1Database();
+        insertFavorite(db, 550, "Fight Club");
+        try {
+            findMigration(1).migrate(db);
+
+            assertEquals(1, countRows(db, MovieEntry.TABLE_NAME));
+            assertTrue(exists(db, "table", ListEntry.TABLE_NAME));
+            assertTrue(exists(db, "table", DetailEntry.TABLE_NAME));
+            assertTrue(exists(db, "trigger", "delete_details_children"));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void migration2To3_addsIndices() {
+        SQLiteDatabase db = createVersion1Database();
+        try {
+            findMigration(1).migrate(db);
+            insertCastMember(db, 550, 0, "Edward Norton");
+            findMigration(2).migrate(db);
+
+            assertEquals(1, countRows(db, CastEntry.TABLE_NAME));
+            assertTrue(exists(db, "index", ListEntry.TABLE_NAME + "_fetched_at_index"));
+            assertTrue(exists(db, "index", DetailEntry.TABLE_NAME + "_last_accessed_index"));
+            assertTrue(exists(db, "index", CastEntry.TABLE_NAME + "_movie_position_index"));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void migration3To4_keepsOnlyTheImagePaths() {
+        SQLiteDatabase db = createVersion1Database();
+        try {
+            // The first versions of the app saved the URLs over http, later ones over https
+            insertFavoritePoster(db, 550,
+                    "http://image.tmdb.org/t/p/w500//pB8BM7pdSp6B6Ih7QZ4DrQ3PmJK.jpg");
+            insertFavoritePoster(db, 13,
+                    "https://image.tmdb.org/t/p/w342//arw2vcBveWOVZr6pxd9XTd1TdQa.jpg");
+            findMigration(1).migrate(db);
+            findMigration(2).migrate(db);
+            insertCastMember(db, 550, 0, "Edward Norton");
+            findMigration(3).migrate(db);
+
+            assertEquals("/pB8BM7pdSp6B6Ih7QZ4DrQ3PmJK.jpg", readPoster(db, 550));
+            assertEquals("/arw2vcBveWOVZr6pxd9XTd1TdQa.jpg", readPoster(db, 13));
+            assertEquals("/5XBzD5WuTyVQZeS4VI25z2moMeY.jpg",
+                    readString(db, CastEntry.TABLE_NAME, CastEntry.COLUMN_PHOTO_URL));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingMigration_throws() {
+        SQLiteDatabase db = createVersion1Database();
+        try {
+            Migration.runMigrations(db, MovieDBHelper.MIGRATIONS, 1,
+                    MovieDBHelper.DATABASE_VERSION + 1);
+        } finally {
+            db.close();
+        }
+    }
+
+    private SQLiteDatabase createVersion1Database() {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE,
+                null);
+        db.execSQL(SQL_CREATE_FAVORITES_TABLE_V1);
+        db.setVersion(1);
+        return db;
+    }
+
+    private static Migration findMigration(int startVersion) {
+        for (Migration migration : MovieDBHelper.MIGRATIONS) {
+            if (migration.getStartVersion() == startVersion) {
+                return migration;
+            }
+        }
+        throw new AssertionError("No migration from version " + startVersion);
+    }
+
+    private static void insertFavorite(SQLiteDatabase db, int movieId, String title) {
+        ContentValues values = new ContentValues();
+        values.put(MovieEntry.COLUMN_MOVIE_ID, movieId);
+        values.put(MovieEntry.COLUMN_MOVIE_TITLE, title);
+        db.insertOrThrow(MovieEntry.TABLE_NAME, null, values);
+    }
+
+    private static void insertFavoritePoster(SQLiteDatabase db, int movieId, String posterUrl) {
+        ContentValues values = new ContentValues();
+        values.put(MovieEntry.COLUMN_MOVIE_ID, movieId);
+        values.put(MovieEntry.COLUMN_MOVIE_POSTER, posterUrl);
+        db.insertOrThrow(MovieEntry.TABLE_NAME, null, values);
+    }
+
+    private static void insertCastMember(SQLiteDatabase db, int movieId, int position,
+                                         String name) {
+        ContentValues values = new ContentValues();
+        values.put(MovieContract.COLUMN_MOVIE_ID, movieId);
+        values.put(MovieContract.COLUMN_POSITION, position);
+        values.put(CastEntry.COLUMN_NAME, name);
+        values.put(CastEntry.COLUMN_PHOTO_URL,
+                "http://image.tmdb.org/t/p/w342//5XBzD5WuTyVQZeS4VI25z2moMeY.jpg");
+        db.insertOrThrow(CastEntry.TABLE_NAME, null, values);
+    }
+
+    private static int countRows(SQLiteDatabase db, String tableName) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + tableName, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String readString(SQLiteDatabase db, String tableName, String column) {
+        Cursor cursor = db.query(tableName, new String[] {column}, null, null, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String readPoster(SQLiteDatabase db, int movieId) {
+        Cursor cursor = db.query(MovieEntry.TABLE_NAME,
+                new String[] {MovieEntry.COLUMN_MOVIE_POSTER}, MovieEntry.COLUMN_MOVIE_ID + "=?",
+                new String[] {String.valueOf(movieId)}, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static boolean exists(SQLiteDatabase db, String type, String name) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type=? AND name=?",
+                new String[] {type, name});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.example.android.pickamoo;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.example.android.pickamoo.utilities.TmdbImages;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by Cristina on 07/06/2018.
+ * This adapter provides access to the items of the horizontal lists of the details (images, cast,
+ * trailers and recommendations), creates views for items, and replaces the content of some of the
+ * views with new data when the original item is no longer visible.
+ * Each item is an {@link Item} that knows how to bind itself. The view types only depend on the
+ * layout, and are the same for every list, so the lists can share their recycled views through a
+ * single RecyclerView.RecycledViewPool: a view scrolled out of the images can show a trailer.
+ */
+
+public class CarouselAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
+        implements ImagePreloader.Preloadable {
+
+    /* View type of the items shown with an image card (images, trailers and recommendations) */
+    static final int IMAGE_VIEW_TYPE = 0;
+
+    /* View type of the items shown with a round photo and a name (cast) */
+    static final int CAST_VIEW_TYPE = 1;
+
+    private final Context mContext;
+    private List<? extends Item> mItems = Collections.emptyList();
+
+    /* Height of the images of the horizontal lists and size of the cast photos, in pixels */
+    private final int mImageHeight;
+    private final int mCastImageSize;
+
+    /**
+     * Custom constructor
+     *
+     * @param context is the activity context
+     */
+    public CarouselAdapter(Context context) {
+        mContext = context;
+        mImageHeight = context.getResources().getDimensionPixelSize(R.dimen.carouselImageHeight);
+        mCastImageSize = context.getResources().getDimensionPixelSize(R.dimen.listImageDimen);
+    }
+
+    /**
+     * Replace the items of the list
+     */
+    public void setItems(List<? extends Item> items) {
+        mItems = items;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Return the items that show the given backdrop images
+     */
+    public static List<Item> images(List<String> imagePaths) {
+        List<Item> items = new ArrayList<>(imagePaths.size());
+        for (String imagePath : imagePaths) {
+            items.add(new ImageItem(imagePath));
+        }
+        return items;
+    }
+
+    /**
+     * Return the items that show the given cast (a list with the array of names and the array of
+     * photos)
+     */
+    public static List<Item> cast(List<String[]> cast) {
+        String[] names = cast.get(0);
+        String[] photoPaths = cast.get(1);
+        List<Item> items = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            items.add(new CastItem(names[i], photoPaths[i]));
+        }
+        return items;
+    }
+
+    /**
+     * Return the items that show the given trailers (a list with the array of YouTube keys and
+     * the array of thumbnails)
+     */
+    public static List<Item> trailers(List<String[]> trailers) {
+        String[] keys = trailers.get(0);
+        String[] thumbnails = trailers.get(1);
+        List<Item> items = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            items.add(new TrailerItem(keys[i], thumbnails[i]));
+        }
+        return items;
+    }
+
+    /**
+     * Return the items that show the posters of the given movies
+     */
+    public static List<Item> recommendations(List<Movie> movies) {
+        List<Item> items = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            items.add(new RecommendationItem(movie));
+        }
+        return items;
+    }
+
+    /**
+     * An item of a horizontal list. It builds the request of its image and binds its data to the
+     * view holder of its view type.
+     */
+    public abstract static class Item {
+
+        abstract int getViewType();
+
+        /**
+         * Return the request that downloads the image of the item, in the smallest size that
+         * fills its view, or null if the item has no image.
+         */
+        abstract RequestCreator createImageRequest(CarouselAdapter adapter);
+    }
+
+    /**
+     * An item shown with an image card.
+     */
+    abstract static class ImageCardItem extends Item {
+
+        @Override
+        int getViewType() {
+            return IMAGE_VIEW_TYPE;
+        }
+
+        abstract void bind(ImageCardViewHolder holder, RequestCreator request);
+    }
+
+    /**
+     * A backdrop image of the movie.
+     */
+    static final class ImageItem extends ImageCardItem {
+        private final String mImagePath;
+
+        ImageItem(String imagePath) {
+            mImagePath = imagePath;
+        }
+
+        @Override
+        RequestCreator createImageRequest(CarouselAdapter adapter) {
+            String imageLink = TmdbImages.getBackdropUrlForHeight(mImagePath,
+                    adapter.mImageHeight);
+            if (imageLink == null) return null;
+            return Picasso.get().load(imageLink).resize(0, adapter.mImageHeight);
+        }
+
+        @Override
+        void bind(ImageCardViewHolder holder, RequestCreator request) {
+            holder.showImage(request);
+        }
+    }
+
+    /**
+     * A trailer of the movie: its thumbnail with a play button that opens it.
+     */
+    static final class TrailerItem extends ImageCardItem {
+        private final String mKey;
+        private final String mThumbnailLink;
+
+        TrailerItem(String key, String thumbnailLink) {
+            mKey = key;
+            mThumbnailLink = thumbnailLink;
+        }
+
+        @Override
+        RequestCreator createImageRequest(CarouselAdapter adapter) {
+            if (mThumbnailLink == null || mThumbnailLink.isEmpty()) return null;
+            return Picasso.get().load(mThumbnailLink).resize(0, adapter.mImageHeight);
+        }
+
+        @Override
+        void bind(ImageCardViewHolder holder, RequestCreator request) {
+            holder.showImage(request);
+            // Make the play button visible
+            holder.playButton.setVisibility(View.VISIBLE);
+            // Handle onClick events
+            holder.playButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    Context context = view.getContext();
+                    // Open the trailer on Youtube App if it's available on the device or else
+                    // on navigator.
+                    try {
+                        Intent intent = new Intent(Intent.ACTION_VIEW,
+                                Uri.parse("vnd.youtube:" + mKey));
+                        context.startActivity(intent);
+                    } catch (Exception e) {
+                        context.startActivity(new Intent(Intent.ACTION_VIEW,
+                                Uri.parse("https://www.youtube.com/watch?v=" + mKey)));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * A recommended movie: its poster, which opens its details.
+     */
+    static final class RecommendationItem extends ImageCardItem {
+        private final Movie mMovie;
+
+        RecommendationItem(Movie movie) {
+            mMovie = movie;
+        }
+
+        @Override
+        RequestCreator createImageRequest(CarouselAdapter adapter) {
+            String posterLink = TmdbImages.getPosterUrlForHeight(mMovie.getImageUrl(),
+                    adapter.mImageHeight);
+            if (posterLink == null) return null;
+            return Picasso.get().load(posterLink).resize(0, adapter.mImageHeight);
+        }
+
+        @Override
+        void bind(ImageCardViewHolder holder, RequestCreator request) {
+            holder.showImage(request != null ? request.error(R.drawable.img_placeholder) : null);
+            // Handle onClick events
+            holder.image.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    Context context = view.getContext();
+                    Intent openActivityDetail = new Intent(context, DetailActivity.class);
+                    openActivityDetail.putExtra(DetailActivity.MOVIE_ID_EXTRA, mMovie.getId());
+                    openActivityDetail.putExtra(DetailActivity.MOVIE_EXTRA, mMovie);
+                    context.startActivity(openActivityDetail);
+                }
+            });
+        }
+    }
+
+    /**
+     * An actor/actress of the main cast: photo and name.
+     */
+    static final class CastItem extends Item {
+        private final String mName;
+        private final String mPhotoPath;
+
+        CastItem(String name, String photoPath) {
+            mName = name;
+            mPhotoPath = photoPath;
+        }
+
+        @Override
+        int getViewType() {
+            return CAST_VIEW_TYPE;
+        }
+
+        @Override
+        RequestCreator createImageRequest(CarouselAdapter adapter) {
+            String pictureLink = TmdbImages.getProfileUrl(mPhotoPath, adapter.mCastImageSize);
+            if (pictureLink == null) return null;
+            return Picasso.get().load(pictureLink)
+                    .resize(adapter.mCastImageSize, adapter.mCastImageSize).centerCrop();
+        }
+
+        void bind(CastViewHolder holder, RequestCreator request) {
+            // Download the profile picture and attach it to the ImageView. If there is no
+            // picture, a default image is assigned
+            if (request != null) {
+                request.placeholder(R.drawable.ic_profile_image).into(holder.castImage);
+            } else {
+                Picasso.get().load(R.drawable.ic_profile_image).into(holder.castImage);
+            }
+            holder.castName.setText(mName);
+        }
+    }
+
+    /**
+     * Provide a reference to the views of an image card. The same holder shows images, trailers
+     * and recommendations, so everything an item may change is reset before binding it.
+     */
+    static class ImageCardViewHolder extends RecyclerView.ViewHolder {
+        final ImageView image, playButton;
+
+        ImageCardViewHolder(View view) {
+            super(view);
+            image = view.findViewById(R.id.iv_image_item);
+            playButton = view.findViewById(R.id.play_button);
+        }
+
+        void reset() {
+            playButton.setVisibility(View.GONE);
+            playButton.setOnClickListener(null);
+            image.setOnClickListener(null);
+            image.setClickable(false);
+        }
+
+        /**
+         * Download the image and attach it to the ImageView, or remove the image of the previous
+         * item if there is none.
+         */
+        void showImage(RequestCreator request) {
+            if (request != null) {
+                request.into(image);
+            } else {
+                Picasso.get().cancelRequest(image);
+                image.setImageDrawable(null);
+            }
+        }
+    }
+
+    /**
+     * Provide a reference to the views of a cast member.
+     */
+    static class CastViewHolder extends RecyclerView.ViewHolder {
+        final ImageView castImage;
+        final TextView castName;
+
+        CastViewHolder(View view) {
+            super(view);
+            castImage = view.findViewById(R.id.cast_image);
+            castName = view.findViewById(R.id.cast_name);
+        }
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return mItems.get(position).getViewType();
+    }
+
+    // Create new views
+    @NonNull
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(mContext);
+        if (viewType == CAST_VIEW_TYPE) {
+            return new CastViewHolder(inflater.inflate(R.layout.cast_item, parent, false));
+        }
+        return new ImageCardViewHolder(inflater.inflate(R.layout.image_item, parent, false));
+    }
+
+    // Replace the contents of a view
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        Item item = mItems.get(position);
+        // Get the request that downloads the image of the item
+        RequestCreator request = item.createImageRequest(this);
+        if (item instanceof CastItem) {
+            ((CastItem) item).bind((CastViewHolder) holder, request);
+        } else {
+            ImageCardViewHolder imageCardHolder = (ImageCardViewHolder) holder;
+            imageCardHolder.reset();
+            ((ImageCardItem) item).bind(imageCardHolder, request);
+        }
+    }
+
+    // Return the request of the image of the item at the given position, to preload it
+    @Override
+    public RequestCreator getPreloadRequest(int position) {
+        return mItems.get(position).createImageRequest(this);
+    }
+
+    // Return the size of your data set
+    @Override
+    public int getItemCount() {
+        return mItems.size();
+    }
+}
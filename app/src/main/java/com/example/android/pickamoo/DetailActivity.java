@@ -17,10 +17,12 @@ import android.support.annotation.Nullable;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.content.Loader;
+import android.support.v4.widget.NestedScrollView;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.CardView;
 import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
@@ -30,54 +32,53 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.android.pickamoo.data.FavoritesStore;
 import com.example.android.pickamoo.data.MovieContract.MovieEntry;
+import com.example.android.pickamoo.data.MovieMemoryCache;
 import com.example.android.pickamoo.databinding.ActivityDetailBinding;
 import com.example.android.pickamoo.loaders.MovieDetailsLoader;
+import com.example.android.pickamoo.utilities.MovieJsonParser;
+import com.example.android.pickamoo.utilities.TmdbImages;
+import com.example.android.pickamoo.utilities.TmdbUrls;
 import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
 
-import java.util.List;
-
-public class DetailActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Movie> {
+public class DetailActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Movie>,
+        FavoritesStore.OnFavoritesChangedListener, MovieDetailsLoader.OnSectionLoadedListener {
 
     public static final String LOG_TAG = DetailActivity.class.getName();
 
-    /**
-     * URL for get details from a movie from the TheMovieDb API
-     */
-    private static final String MOVIE_REQUEST_URL = "http://api.themoviedb.org/3/movie/";
-
-    /**
-     * Query parameter for the API key
-     */
-    private static final String API_QUERY_PARAMETER = "?api_key=";
-
-    /**
-     * API Key
-     */
-    private static final String API_KEY = BuildConfig.API_KEY;
-
-    /**
-     * Path for the append_to_response method filtered by language
-     */
-    private static final String APPEND_PATH = "&append_to_response=images,credits,videos,reviews,recommendations&language=";
-
-    /**
-     * Language value null. The main value is stored in res/strings to allow translations
-     */
-    private static final String LANGUAGE_VALUE = ",null";
+    /* Keys of the intent extras: the movie id and, optionally, the data the list already had */
+    public static final String MOVIE_ID_EXTRA = "movieId";
+    public static final String MOVIE_EXTRA = "movie";
 
     /* Unique identifier of the Loader */
     private static final int ID_LOADER = 12;
 
     private static final String SEPARATOR = "-";
 
+    /* Sections of the details appended to the request of the movie (bit mask of SECTION_
+    constants of MovieJsonParser). The other sections are requested on their own when the user
+    scrolls near them, so the ones never seen are never downloaded. Use TmdbUrls.ALL_SECTIONS to
+    download everything in a single request */
+    private static final int APPENDED_SECTIONS = 0;
+
+    /* Number of recycled views of each type kept by the pool shared by the horizontal lists */
+    private static final int MAX_RECYCLED_CARDS = 12;
+    private static final int MAX_RECYCLED_CAST = 8;
+
     private String requestUrl;
 
     private ActivityDetailBinding mBinding;
 
+    /* Adapters of the horizontal lists */
+    private CarouselAdapter mImagesAdapter, mCastAdapter, mTrailersAdapter,
+            mRecommendationsAdapter;
+
     /* First trailer url */
     private String mSharedLink = "";
 
@@ -94,6 +95,25 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
             mMovieDirector;
     Double mMovieRating;
 
+    /* Boolean to know if the poster of the previous screen is being displayed */
+    boolean hasPreviewPoster = false;
+
+    /* Movie whose sections are being displayed while its response is parsed, and bit mask of the
+    sections already displayed */
+    private Movie mStreamedMovie;
+    private int mBoundSections;
+
+    /* Movie displayed once it has been loaded, and bit mask of the sections requested on demand */
+    private Movie mMovie;
+    private int mRequestedSections;
+
+    private final Runnable mRequestSectionsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            requestNearSections();
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -104,30 +124,27 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
             isFavorite = savedInstanceState.getBoolean("isFavoriteSaved");
         }
 
-        if (getIntent() == null && !getIntent().hasExtra("movieId")) {
+        if (getIntent() == null && !getIntent().hasExtra(MOVIE_ID_EXTRA)) {
             showError();
         }
 
-        mMovieId = getIntent().getExtras().getInt("movieId");
+        mMovieId = getIntent().getExtras().getInt(MOVIE_ID_EXTRA);
 
         // Check if the movie is a favorite
-        isFavorite = MainActivity.favoritesList.contains(mMovieId);
+        isFavorite = FavoritesStore.getInstance().contains(mMovieId);
 
-        // Without internet connection, read movie from database
+        // Without internet connection, the movie is read from the offline cache or the favorites
         if (!checkInternetConnection()) {
-            requestUrl = MovieEntry.buildUriWithMovieId(mMovieId).toString();
             Toast.makeText(this, getString(R.string.offline), Toast.LENGTH_SHORT).show();
-        } else {
-            // Create the URL to perform the network request
-            requestUrl = MOVIE_REQUEST_URL + String.valueOf(mMovieId)
-                    + API_QUERY_PARAMETER + API_KEY
-                    + APPEND_PATH + getString(R.string.language_code) + LANGUAGE_VALUE;
         }
+        // Create the URL to perform the network request
+        requestUrl = buildRequestUrl(this, mMovieId);
 
         // Get a reference to the LoaderManager
         LoaderManager loaderManager = getSupportLoaderManager();
-        // Initialize the loader
-        loaderManager.initLoader(ID_LOADER, null, this);
+        // Initialize the loader and get its sections as soon as they are downloaded
+        Loader<Movie> loader = loaderManager.initLoader(ID_LOADER, null, this);
+        ((MovieDetailsLoader) loader).setOnSectionLoadedListener(this);
 
         // Toolbar settings
         Toolbar myToolbar = mBinding.toolbar;
@@ -147,12 +164,77 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
             params.height = screenHeight / 2;
         }
 
+        // Request the missing sections of the details as the user scrolls towards them
+        mBinding.nestedSv.setOnScrollChangeListener(new NestedScrollView.OnScrollChangeListener() {
+            @Override
+            public void onScrollChange(NestedScrollView v, int scrollX, int scrollY,
+                                       int oldScrollX, int oldScrollY) {
+                requestNearSections();
+            }
+        });
+
+        // The horizontal lists share their recycled views, so a view scrolled out of one list
+        // (or left by a list that is filled again) is bound in another instead of inflated
+        RecyclerView.RecycledViewPool carouselPool = new RecyclerView.RecycledViewPool();
+        carouselPool.setMaxRecycledViews(CarouselAdapter.IMAGE_VIEW_TYPE, MAX_RECYCLED_CARDS);
+        carouselPool.setMaxRecycledViews(CarouselAdapter.CAST_VIEW_TYPE, MAX_RECYCLED_CAST);
+        mImagesAdapter = setUpCarousel(mBinding.rvPhotos, carouselPool);
+        mCastAdapter = setUpCarousel(mBinding.rvCast, carouselPool);
+        mTrailersAdapter = setUpCarousel(mBinding.rvTrailers, carouselPool);
+        mRecommendationsAdapter = setUpCarousel(mBinding.rvRecommendations, carouselPool);
+
         // Progress bar color
         if (mBinding.loadingSpinner.getIndeterminateDrawable() != null) {
             mBinding.loadingSpinner.getIndeterminateDrawable()
                     .setColorFilter(ContextCompat.getColor(this, R.color.colorAccent),
                             android.graphics.PorterDuff.Mode.SRC_IN);
         }
+
+        // Display what the previous screen already knew about the movie while the details load
+        Movie preview = getIntent().getParcelableExtra(MOVIE_EXTRA);
+        if (preview == null) {
+            preview = MovieMemoryCache.getInstance().getSummary(mMovieId);
+        }
+        if (preview != null) {
+            bindPreview(preview);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        mBinding.nestedSv.removeCallbacks(mRequestSectionsRunnable);
+        // The loader may outlive the activity (i.e. on rotation)
+        Loader<Movie> loader = getSupportLoaderManager().getLoader(ID_LOADER);
+        if (loader != null) {
+            ((MovieDetailsLoader) loader).setOnSectionLoadedListener(null);
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        FavoritesStore.getInstance().addListener(this);
+        // The favorites may have changed (or finished loading) while the activity was stopped
+        onFavoritesChanged();
+    }
+
+    @Override
+    protected void onStop() {
+        FavoritesStore.getInstance().removeListener(this);
+        super.onStop();
+    }
+
+    /**
+     * Called when the favorite movies change. Update the favorite icon if it is needed.
+     */
+    @Override
+    public void onFavoritesChanged() {
+        boolean favorite = FavoritesStore.getInstance().contains(mMovieId);
+        if (favorite != isFavorite) {
+            isFavorite = favorite;
+            invalidateOptionsMenu();
+        }
     }
 
     // Fires when a configuration change occurs and fragment needs to save state
@@ -220,7 +302,6 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
                             item.getIcon().setColorFilter(ContextCompat.getColor(this,
                                     R.color.colorAccent), PorterDuff.Mode.SRC_ATOP);
                             isFavorite = true;
-                            MainActivity.favoritesList.add(mMovieId);
                         }
                     }
                     return true;
@@ -246,8 +327,6 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
                                 // Otherwise, the deletion was successful.
                                 item.getIcon().setColorFilter(Color.WHITE, PorterDuff.Mode.SRC_ATOP);
                                 isFavorite = false;
-                                MainActivity.favoritesList.remove(MainActivity.favoritesList
-                                        .indexOf(mMovieId));
                             }
                         }
                     });
@@ -283,7 +362,7 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
     public Loader<Movie> onCreateLoader(int id, @Nullable Bundle args) {
         // Create a new loader for the correct URL
         Uri baseUri = Uri.parse(requestUrl);
-        return new MovieDetailsLoader(this, baseUri.toString());
+        return new MovieDetailsLoader(this, baseUri.toString(), mMovieId);
     }
 
     /**
@@ -291,205 +370,406 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
      */
     @Override
     public void onLoadFinished(@NonNull Loader<Movie> loader, Movie movie) {
-        // Hide the loading indicator
-        mBinding.loadingSpinner.setVisibility(View.GONE);
         isLoading = false;
-        // Show the main view
-        mBinding.mainDetails.setVisibility(View.VISIBLE);
 
         // If there is a valid {@link Movie}, then display its details.
         if (movie != null) {
-            // Set title
-            if (movie.getTitle() != null && !movie.getTitle().isEmpty()) {
-                mMovieTitle = movie.getTitle();
-                mBinding.tvTitle.setText(mMovieTitle);
-                // Change toolbar height for multiline text
-                ViewGroup.LayoutParams params = mBinding.toolbar.getLayoutParams();
-                if (mBinding.tvTitle.getLineCount() != 1) {
-                    params.height = ViewGroup.LayoutParams.WRAP_CONTENT;
+            showDetails();
+            // Sections already displayed while the response was parsed are not bound again
+            boolean streamed = movie == mStreamedMovie;
+            for (int section = MovieJsonParser.SECTION_HEADER;
+                 section <= MovieJsonParser.SECTION_RECOMMENDATIONS; section++) {
+                if (!streamed || (mBoundSections & (1 << section)) == 0) {
+                    bindSection(section, movie);
                 }
             }
+            mStreamedMovie = null;
+            mBoundSections = 0;
+            // Once the layout is updated, request the missing sections the user can see
+            mMovie = movie;
+            mBinding.nestedSv.post(mRequestSectionsRunnable);
+        } else {
+            // Hide the loading indicator
+            mBinding.loadingSpinner.setVisibility(View.GONE);
+            showError();
+        }
+    }
 
-            // Set vote average
-            if (movie.getVoteAverage() == -1.0) {
-                mBinding.tvRating.setText(SEPARATOR);
-            } else {
-                mMovieRating = movie.getVoteAverage();
-                mBinding.tvRating.setVisibility(View.VISIBLE);
-                mBinding.tvRating.setText(String.valueOf(mMovieRating));
+    /**
+     * Called by the {@link MovieDetailsLoader} each time a section of the details has been
+     * downloaded, before the whole response is loaded.
+     */
+    @Override
+    public void onSectionLoaded(int section, Movie movie) {
+        if (mMovie != null) {
+            // A section requested on demand, the movie now includes it
+            mMovie = movie;
+            bindSection(section, movie);
+            mBinding.nestedSv.post(mRequestSectionsRunnable);
+            return;
+        }
+        if (movie != mStreamedMovie) {
+            // A new response started
+            mStreamedMovie = movie;
+            mBoundSections = 0;
+        }
+        if (section == MovieJsonParser.SECTION_HEADER) {
+            showDetails();
+        }
+        bindSection(section, movie);
+        mBoundSections |= 1 << section;
+    }
+
+    /**
+     * Request the first section of the details that isn't loaded if the user is about to see it.
+     * The sections that are not loaded are hidden, so it would appear right below the last
+     * displayed one. When it is displayed this is checked again for the next one.
+     */
+    private void requestNearSections() {
+        Loader<Movie> loader = getSupportLoaderManager().getLoader(ID_LOADER);
+        if (mMovie == null || loader == null) {
+            return;
+        }
+        NestedScrollView scrollView = mBinding.nestedSv;
+        // Sections less than one screen below the visible area are requested
+        int limit = scrollView.getScrollY() + 2 * scrollView.getHeight();
+        int sectionTop = getBottomInScrollView(mBinding.tvSynopsis);
+        for (int section = MovieJsonParser.SECTION_IMAGES;
+             section <= MovieJsonParser.SECTION_RECOMMENDATIONS; section++) {
+            if (mMovie.isSectionLoaded(section)) {
+                View sectionView = getSectionView(section);
+                if (sectionView.getVisibility() == View.VISIBLE) {
+                    sectionTop = getBottomInScrollView(sectionView);
+                }
+            } else if (sectionTop > limit) {
+                return;
+            } else if ((mRequestedSections & (1 << section)) == 0) {
+                mRequestedSections |= 1 << section;
+                ((MovieDetailsLoader) loader).loadSection(section);
+                return;
             }
+            // Else it was requested before (and maybe failed), go on with the next one
+        }
+    }
+
+    /**
+     * Return the view that displays a section of the details.
+     */
+    private View getSectionView(int section) {
+        switch (section) {
+            case MovieJsonParser.SECTION_IMAGES:
+                return mBinding.rvPhotos;
+            case MovieJsonParser.SECTION_CREDITS:
+                return mBinding.rvCast;
+            case MovieJsonParser.SECTION_VIDEOS:
+                return mBinding.rvTrailers;
+            case MovieJsonParser.SECTION_REVIEWS:
+                return mBinding.reviewsLayout;
+            default:
+                return mBinding.rvRecommendations;
+        }
+    }
+
+    /**
+     * Return the position of the bottom of a view inside the content of the scroll view.
+     */
+    private int getBottomInScrollView(View view) {
+        int bottom = view.getBottom();
+        ViewParent parent = view.getParent();
+        while (parent instanceof View && parent != mBinding.nestedSv) {
+            bottom += ((View) parent).getTop();
+            parent = parent.getParent();
+        }
+        return bottom;
+    }
+
+    /**
+     * Hide the loading indicator and show the main view.
+     */
+    private void showDetails() {
+        mBinding.loadingSpinner.setVisibility(View.GONE);
+        mBinding.mainDetails.setVisibility(View.VISIBLE);
+    }
 
-            // Set poster image
-            // Get the imageLink to download the image
-            String imageLink = movie.getImageUrl();
-            if (imageLink != null && imageLink.length() > 0) {
-                Picasso.get().load(imageLink).error(R.drawable.img_placeholder)
-                        .into(mBinding.ivPoster);
-                mMoviePoster = imageLink;
-            } else {
-                Picasso.get().load(R.drawable.img_placeholder).into(mBinding.ivPoster);
+    /**
+     * Display a section of the details of the movie.
+     *
+     * @param section is one of the SECTION_ constants of {@link MovieJsonParser}
+     */
+    private void bindSection(int section, Movie movie) {
+        switch (section) {
+            case MovieJsonParser.SECTION_HEADER:
+                bindHeader(movie);
+                break;
+            case MovieJsonParser.SECTION_IMAGES:
+                bindImages(movie);
+                break;
+            case MovieJsonParser.SECTION_CREDITS:
+                bindCredits(movie);
+                break;
+            case MovieJsonParser.SECTION_VIDEOS:
+                bindTrailers(movie);
+                break;
+            case MovieJsonParser.SECTION_REVIEWS:
+                bindReviews(movie);
+                break;
+            case MovieJsonParser.SECTION_RECOMMENDATIONS:
+                bindRecommendations(movie);
+                break;
+        }
+    }
+
+    /**
+     * Display the data the previous screen already had (title and poster), so the user doesn't
+     * look at an empty screen while the details are downloaded.
+     */
+    private void bindPreview(Movie movie) {
+        bindTitle(movie);
+        // Use the size of the grid cells, which is probably in the cache already
+        int gridCellWidth = MovieAdapter.getCellWidth(getResources(),
+                getResources().getDisplayMetrics().widthPixels);
+        String imageLink = TmdbImages.getPosterUrl(movie.getImageUrl(), gridCellWidth);
+        if (imageLink != null) {
+            Picasso.get().load(imageLink).into(mBinding.ivPoster);
+            hasPreviewPoster = true;
+        }
+    }
+
+    /**
+     * Set the title in the toolbar.
+     */
+    private void bindTitle(Movie movie) {
+        if (movie.getTitle() != null && !movie.getTitle().isEmpty()) {
+            mMovieTitle = movie.getTitle();
+            mBinding.tvTitle.setText(mMovieTitle);
+            // Change toolbar height for multiline text
+            ViewGroup.LayoutParams params = mBinding.toolbar.getLayoutParams();
+            if (mBinding.tvTitle.getLineCount() != 1) {
+                params.height = ViewGroup.LayoutParams.WRAP_CONTENT;
             }
+        }
+    }
+
+    /**
+     * Display the main values of the movie: title, rating, poster, year, countries, genres and
+     * synopsis.
+     */
+    private void bindHeader(Movie movie) {
+        // Set title
+        bindTitle(movie);
 
-            // Set release year
-            String date;
-            if (movie.getReleaseDate() != null && !movie.getReleaseDate().isEmpty()) {
-                date = movie.getReleaseDate();
-                mMovieDate = date;
-                // Show only year (date is returned in format yyyy-mm-dd)
-                if (date.contains(SEPARATOR)) {
-                    String[] parts = date.split(SEPARATOR);
-                    date = parts[0];
+        // Set vote average
+        if (movie.getVoteAverage() == -1.0) {
+            mBinding.tvRating.setText(SEPARATOR);
+        } else {
+            mMovieRating = movie.getVoteAverage();
+            mBinding.tvRating.setVisibility(View.VISIBLE);
+            mBinding.tvRating.setText(String.valueOf(mMovieRating));
+        }
+
+        // Set poster image
+        // Get the file path of the image. The poster fills the width of the screen
+        String imagePath = movie.getImageUrl();
+        if (imagePath != null && imagePath.length() > 0) {
+            if (!imagePath.equals(mMoviePoster)) {
+                String imageLink = TmdbImages.getPosterUrl(imagePath,
+                        getResources().getDisplayMetrics().widthPixels);
+                RequestCreator request = Picasso.get().load(imageLink)
+                        .error(R.drawable.img_placeholder);
+                if (hasPreviewPoster) {
+                    // Keep the preview poster until the bigger one is ready
+                    request.noPlaceholder();
                 }
-            } else {
-                date = SEPARATOR;
-            }
-            mBinding.tvDate.setText(date);
-
-            // Set country
-            String country;
-            if (movie.getCountries() != null && !movie.getCountries().isEmpty()) {
-                country = movie.getCountries();
-                mMovieCountries = country;
-            } else {
-                country = SEPARATOR;
-            }
-            mBinding.tvCountry.setText(country);
-
-            // Set genre
-            if (movie.getGenres() != null && !movie.getGenres().trim().isEmpty()) {
-                mMovieGenres = movie.getGenres();
-                mBinding.tvGenre.setText(mMovieGenres);
-            } else {
-                mBinding.genreLayout.setVisibility(View.GONE);
+                request.into(mBinding.ivPoster);
+                mMoviePoster = imagePath;
             }
+        } else if (!hasPreviewPoster) {
+            Picasso.get().load(R.drawable.img_placeholder).into(mBinding.ivPoster);
+        }
 
-            // Set director
-            if (movie.getDirector() != null && !movie.getDirector().trim().isEmpty()) {
-                mMovieDirector = movie.getDirector().trim();
-                mBinding.tvDirector.setText(mMovieDirector);
-            } else {
-                mBinding.directionLayout.setVisibility(View.GONE);
+        // Set release year
+        String date;
+        if (movie.getReleaseDate() != null && !movie.getReleaseDate().isEmpty()) {
+            date = movie.getReleaseDate();
+            mMovieDate = date;
+            // Show only year (date is returned in format yyyy-mm-dd)
+            if (date.contains(SEPARATOR)) {
+                String[] parts = date.split(SEPARATOR);
+                date = parts[0];
             }
+        } else {
+            date = SEPARATOR;
+        }
+        mBinding.tvDate.setText(date);
 
-            // Set synopsis
-            String synopsisLabel = getString(R.string.synopsis_label);
-            String synopsis;
-            if (movie.getSynopsis() != null && !movie.getSynopsis().isEmpty()) {
-                synopsis = movie.getSynopsis();
-                mMovieSynopsis = synopsis;
-            } else {
-                synopsis = getString(R.string.no_info);
-            }
-            SpannableStringBuilder spannableSynopsis =
-                    new SpannableStringBuilder(synopsisLabel + " " + synopsis);
-            spannableSynopsis.setSpan(new TextAppearanceSpan(this, R.style.label_style),
-                    0, synopsisLabel.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            spannableSynopsis.setSpan(new TextAppearanceSpan(this, R.style.body_style),
-                    synopsisLabel.length() + 1, synopsis.length(),
-                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            mBinding.tvSynopsis.setText(spannableSynopsis);
-
-            // Set images
-            if (movie.getImagesList() != null) {
-                // use a horizontal linear layout manager
-                LinearLayoutManager imagesLayoutManager = new LinearLayoutManager(this,
-                        LinearLayoutManager.HORIZONTAL, false);
-                mBinding.rvPhotos.setLayoutManager(imagesLayoutManager);
-                // specify an adapter and tell that it is a list of images
-                DetailsAdapter imagesAdapter = new DetailsAdapter(this, movie.getImagesList(),
-                        DetailsAdapter.IMAGES_TYPE);
-                mBinding.rvPhotos.setAdapter(imagesAdapter);
-            } else {
-                mBinding.photosLabel.setVisibility(View.GONE);
-                mBinding.rvPhotos.setVisibility(View.GONE);
-            }
+        // Set country
+        String country;
+        if (movie.getCountries() != null && !movie.getCountries().isEmpty()) {
+            country = movie.getCountries();
+            mMovieCountries = country;
+        } else {
+            country = SEPARATOR;
+        }
+        mBinding.tvCountry.setText(country);
 
-            // Set cast
-            if (movie.getCast() != null) {
-                // use a horizontal linear layout manager
-                LinearLayoutManager castLayoutManager = new LinearLayoutManager(this,
-                        LinearLayoutManager.HORIZONTAL, false);
-                mBinding.rvCast.setLayoutManager(castLayoutManager);
-                // specify an adapter and tell that it is a list of actors/actress
-                DetailsAdapter castAdapter = new DetailsAdapter(this, movie.getCast(),
-                        DetailsAdapter.CAST_TYPE);
-                mBinding.rvCast.setAdapter(castAdapter);
-            } else {
-                mBinding.castLabel.setVisibility(View.GONE);
-                mBinding.rvCast.setVisibility(View.GONE);
-            }
+        // Set genre
+        if (movie.getGenres() != null && !movie.getGenres().trim().isEmpty()) {
+            mMovieGenres = movie.getGenres();
+            mBinding.tvGenre.setText(mMovieGenres);
+            mBinding.genreLayout.setVisibility(View.VISIBLE);
+        } else {
+            mBinding.genreLayout.setVisibility(View.GONE);
+        }
 
-            // Set trailers
-            if (movie.getTrailers() != null) {
-                String videoUrlsList[] = movie.getTrailers().get(0);
-                // use a horizontal linear layout manager
-                LinearLayoutManager videosLayoutManager = new LinearLayoutManager(this,
-                        LinearLayoutManager.HORIZONTAL, false);
-                mBinding.rvTrailers.setLayoutManager(videosLayoutManager);
-                // specify an adapter and tell that it is a list of trailers
-                DetailsAdapter videosAdapter = new DetailsAdapter(this, movie.getTrailers(),
-                        DetailsAdapter.TRAILERS_TYPE);
-                mBinding.rvTrailers.setAdapter(videosAdapter);
-
-                // Set video url to share
-                mSharedLink = "http://www.youtube.com/watch?v=" + videoUrlsList[0];
-            } else {
-                mBinding.trailersLabel.setVisibility(View.GONE);
-                mBinding.rvTrailers.setVisibility(View.GONE);
-            }
+        // Set synopsis
+        String synopsisLabel = getString(R.string.synopsis_label);
+        String synopsis;
+        if (movie.getSynopsis() != null && !movie.getSynopsis().isEmpty()) {
+            synopsis = movie.getSynopsis();
+            mMovieSynopsis = synopsis;
+        } else {
+            synopsis = getString(R.string.no_info);
+        }
+        SpannableStringBuilder spannableSynopsis =
+                new SpannableStringBuilder(synopsisLabel + " " + synopsis);
+        spannableSynopsis.setSpan(new TextAppearanceSpan(this, R.style.label_style),
+                0, synopsisLabel.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        spannableSynopsis.setSpan(new TextAppearanceSpan(this, R.style.body_style),
+                synopsisLabel.length() + 1, synopsis.length(),
+                Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        mBinding.tvSynopsis.setText(spannableSynopsis);
+    }
 
-            // Set reviews
-            if (movie.getReviews() != null) {
-                String contentsList[] = movie.getReviews().get(0);
-                final String urlsList[] = movie.getReviews().get(1);
-                String authorsList[] = movie.getReviews().get(2);
-                TypedArray viewsArray = getResources().obtainTypedArray(R.array.reviews_ids);
-                for (int i = 0; i < contentsList.length; i++) {
-                    CardView view = findViewById(viewsArray.getResourceId(i, 0));
-                    TextView author = view.findViewById(R.id.author_tv);
-                    TextView review = view.findViewById(R.id.review_tv);
-                    TextView viewMore = view.findViewById(R.id.view_more);
-                    view.setVisibility(View.VISIBLE);
-                    SpannableStringBuilder spannableName =
-                            new SpannableStringBuilder(getString(R.string.author_label,
-                                    authorsList[i]));
-                    spannableName.setSpan(new StyleSpan(android.graphics.Typeface.BOLD),
-                            0, authorsList[i].length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-                    author.setText(spannableName);
-                    review.setText(getString(R.string.review_text, contentsList[i]));
-                    final String url = urlsList[i];
-                    viewMore.setOnClickListener(new View.OnClickListener() {
-                        @Override
-                        public void onClick(View view) {
-                            // Open the review in the explorer
-                            startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(url)));
-                        }
-                    });
+    /**
+     * Give a horizontal list its layout manager, the shared pool of views and its adapter, which
+     * is filled when its section is loaded. The images are downloaded ahead of the scroll.
+     */
+    private CarouselAdapter setUpCarousel(RecyclerView recyclerView,
+                                          RecyclerView.RecycledViewPool pool) {
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this,
+                LinearLayoutManager.HORIZONTAL, false);
+        // Give the views back to the shared pool if the list is detached
+        layoutManager.setRecycleChildrenOnDetach(true);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setRecycledViewPool(pool);
+        CarouselAdapter adapter = new CarouselAdapter(this);
+        recyclerView.setAdapter(adapter);
+        ImagePreloader.attach(recyclerView);
+        return adapter;
+    }
+
+    /**
+     * Display the backdrop images.
+     */
+    private void bindImages(Movie movie) {
+        if (movie.getImagesList() != null) {
+            mImagesAdapter.setItems(CarouselAdapter.images(movie.getImagesList()));
+            mBinding.photosLabel.setVisibility(View.VISIBLE);
+            mBinding.rvPhotos.setVisibility(View.VISIBLE);
+        } else {
+            mBinding.photosLabel.setVisibility(View.GONE);
+            mBinding.rvPhotos.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Display the director and the main cast.
+     */
+    private void bindCredits(Movie movie) {
+        // Set director
+        if (movie.getDirector() != null && !movie.getDirector().trim().isEmpty()) {
+            mMovieDirector = movie.getDirector().trim();
+            mBinding.tvDirector.setText(mMovieDirector);
+            mBinding.directionLayout.setVisibility(View.VISIBLE);
+        } else {
+            mBinding.directionLayout.setVisibility(View.GONE);
+        }
+
+        // Set cast
+        if (movie.getCast() != null) {
+            mCastAdapter.setItems(CarouselAdapter.cast(movie.getCast()));
+            mBinding.castLabel.setVisibility(View.VISIBLE);
+            mBinding.rvCast.setVisibility(View.VISIBLE);
+        } else {
+            mBinding.castLabel.setVisibility(View.GONE);
+            mBinding.rvCast.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Display the trailers and keep the first one to be shared.
+     */
+    private void bindTrailers(Movie movie) {
+        if (movie.getTrailers() != null) {
+            String videoUrlsList[] = movie.getTrailers().get(0);
+            mTrailersAdapter.setItems(CarouselAdapter.trailers(movie.getTrailers()));
+            mBinding.trailersLabel.setVisibility(View.VISIBLE);
+            mBinding.rvTrailers.setVisibility(View.VISIBLE);
+
+            // Set video url to share
+            mSharedLink = "https://www.youtube.com/watch?v=" + videoUrlsList[0];
+        } else {
+            mBinding.trailersLabel.setVisibility(View.GONE);
+            mBinding.rvTrailers.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Display the first reviews.
+     */
+    private void bindReviews(Movie movie) {
+        TypedArray viewsArray = getResources().obtainTypedArray(R.array.reviews_ids);
+        if (movie.getReviews() != null) {
+            String contentsList[] = movie.getReviews().get(0);
+            final String urlsList[] = movie.getReviews().get(1);
+            String authorsList[] = movie.getReviews().get(2);
+            for (int i = 0; i < viewsArray.length(); i++) {
+                CardView view = findViewById(viewsArray.getResourceId(i, 0));
+                if (i >= contentsList.length) {
+                    view.setVisibility(View.GONE);
+                    continue;
                 }
-                viewsArray.recycle();
-            } else {
-                mBinding.reviewsLabel.setVisibility(View.GONE);
-                mBinding.reviewsLayout.setVisibility(View.GONE);
+                TextView author = view.findViewById(R.id.author_tv);
+                TextView review = view.findViewById(R.id.review_tv);
+                TextView viewMore = view.findViewById(R.id.view_more);
+                view.setVisibility(View.VISIBLE);
+                SpannableStringBuilder spannableName =
+                        new SpannableStringBuilder(getString(R.string.author_label,
+                                authorsList[i]));
+                spannableName.setSpan(new StyleSpan(android.graphics.Typeface.BOLD),
+                        0, authorsList[i].length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+                author.setText(spannableName);
+                review.setText(getString(R.string.review_text, contentsList[i]));
+                final String url = urlsList[i];
+                viewMore.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        // Open the review in the explorer
+                        startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(url)));
+                    }
+                });
             }
+            mBinding.reviewsLabel.setVisibility(View.VISIBLE);
+            mBinding.reviewsLayout.setVisibility(View.VISIBLE);
+        } else {
+            mBinding.reviewsLabel.setVisibility(View.GONE);
+            mBinding.reviewsLayout.setVisibility(View.GONE);
+        }
+        viewsArray.recycle();
+    }
 
-            // Set recommendations
-            if (movie.getRecommendations() != null) {
-                final List<Movie> recommendedMovies = movie.getRecommendations();
-                // use a horizontal linear layout manager
-                LinearLayoutManager recommendationsLayoutManager =
-                        new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL,
-                                false);
-                mBinding.rvRecommendations.setLayoutManager(recommendationsLayoutManager);
-                // Specify an adapter and tell that it is a list of recommendations
-                DetailsAdapter recommendationsAdapter = new DetailsAdapter(this,
-                        recommendedMovies, DetailsAdapter.RECOMMENDATIONS_TYPE);
-                mBinding.rvRecommendations.setAdapter(recommendationsAdapter);
-            } else {
-                mBinding.recommendationsLabel.setVisibility(View.GONE);
-                mBinding.rvRecommendations.setVisibility(View.GONE);
-            }
+    /**
+     * Display the recommended movies.
+     */
+    private void bindRecommendations(Movie movie) {
+        if (movie.getRecommendations() != null) {
+            mRecommendationsAdapter.setItems(
+                    CarouselAdapter.recommendations(movie.getRecommendations()));
+            mBinding.recommendationsLabel.setVisibility(View.VISIBLE);
+            mBinding.rvRecommendations.setVisibility(View.VISIBLE);
         } else {
-            showError();
+            mBinding.recommendationsLabel.setVisibility(View.GONE);
+            mBinding.rvRecommendations.setVisibility(View.GONE);
         }
     }
 
@@ -501,6 +781,24 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
         // No need to do anything
     }
 
+    /**
+     * Return the URL to request the details of a movie from TheMovieDb API.
+     */
+    public static String buildRequestUrl(Context context, int movieId) {
+        return TmdbUrls.movieDetails(movieId, context.getString(R.string.language_code),
+                APPENDED_SECTIONS);
+    }
+
+    /**
+     * Return the URL to request a section of the details of a movie from TheMovieDb API.
+     *
+     * @param section is one of the SECTION_ constants of {@link MovieJsonParser}
+     */
+    public static String buildSectionUrl(Context context, int movieId, int section) {
+        return TmdbUrls.movieSection(movieId, section,
+                context.getString(R.string.language_code));
+    }
+
     /**
      * Helper method to finish the activity when an error occur.
      */
@@ -0,0 +1,145 @@
+package com.example.android.pickamoo;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+/**
+ * Downloads the images of the items the user is scrolling towards before they are bound, so a
+ * fast fling shows posters instead of placeholders. The adapter of the list provides the same
+ * request it uses to show each image (same URL and size), so the image is stored in the memory
+ * and disk caches of Picasso with the key the cell will look for.
+ * The faster the list scrolls, the more items are preloaded. When the direction changes the
+ * images ahead in the old direction are cancelled.
+ */
+
+public class ImagePreloader extends RecyclerView.OnScrollListener {
+
+    /**
+     * Implemented by the adapters whose images can be preloaded.
+     */
+    public interface Preloadable {
+        /**
+         * Return the request that shows the image of the item at the given position, without
+         * the target, or null if the item has no image or its size isn't known yet.
+         */
+        RequestCreator getPreloadRequest(int position);
+    }
+
+    /* Number of items preloaded ahead of the visible ones, when scrolling slowly and fast */
+    private static final int MIN_PRELOADED_ITEMS = 4;
+    private static final int MAX_PRELOADED_ITEMS = 12;
+
+    /* Distance scrolled in a frame, in dp, from which the maximum number of items is preloaded */
+    private static final int FAST_SCROLL_DISTANCE = 60;
+
+    private final int mFastScrollDistance;
+
+    /* Tag of the preload requests, to cancel them */
+    private final Object mTag = new Object();
+
+    /* Direction of the scroll: 1 towards the end of the list, -1 towards the start, 0 unknown */
+    private int mDirection;
+
+    /* Furthest position in the current direction whose image has been preloaded, or NO_POSITION
+    to start from the visible items */
+    private int mLastPreloadedPosition = RecyclerView.NO_POSITION;
+
+    private ImagePreloader(RecyclerView recyclerView) {
+        mFastScrollDistance = (int) (FAST_SCROLL_DISTANCE
+                * recyclerView.getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * Preload the images of the given list while it scrolls. Its layout manager has to be a
+     * {@link LinearLayoutManager} (or a GridLayoutManager) and its adapter {@link Preloadable},
+     * otherwise nothing is preloaded. Both can be replaced later.
+     */
+    public static ImagePreloader attach(RecyclerView recyclerView) {
+        ImagePreloader preloader = new ImagePreloader(recyclerView);
+        recyclerView.addOnScrollListener(preloader);
+        return preloader;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            // The list may change before the next scroll, start again from the visible items
+            mLastPreloadedPosition = RecyclerView.NO_POSITION;
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        // Horizontal lists scroll on x and vertical ones on y
+        int distance = dx != 0 ? dx : dy;
+        if (distance == 0) return;
+        if (!(recyclerView.getAdapter() instanceof Preloadable)
+                || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        Preloadable adapter = (Preloadable) recyclerView.getAdapter();
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int firstVisible = layoutManager.findFirstVisibleItemPosition();
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION) return;
+
+        int direction = distance > 0 ? 1 : -1;
+        if (direction != mDirection) {
+            // The images ahead in the old direction are not needed any more
+            cancel();
+            mDirection = direction;
+        }
+        if (mLastPreloadedPosition == RecyclerView.NO_POSITION) {
+            mLastPreloadedPosition = direction > 0 ? lastVisible : firstVisible;
+        }
+
+        int itemsAhead = getItemsAhead(Math.abs(distance));
+        if (direction > 0) {
+            int lastPosition = recyclerView.getAdapter().getItemCount() - 1;
+            int end = Math.min(lastVisible + itemsAhead, lastPosition);
+            for (int position = Math.max(lastVisible, mLastPreloadedPosition) + 1;
+                 position <= end; position++) {
+                preload(adapter, position);
+            }
+            mLastPreloadedPosition = Math.max(mLastPreloadedPosition, end);
+        } else {
+            int end = Math.max(firstVisible - itemsAhead, 0);
+            for (int position = Math.min(firstVisible, mLastPreloadedPosition) - 1;
+                 position >= end; position--) {
+                preload(adapter, position);
+            }
+            mLastPreloadedPosition = Math.min(mLastPreloadedPosition, end);
+        }
+    }
+
+    /**
+     * Cancel the images that are being preloaded.
+     */
+    public void cancel() {
+        Picasso.get().cancelTag(mTag);
+        mDirection = 0;
+        mLastPreloadedPosition = RecyclerView.NO_POSITION;
+    }
+
+    /**
+     * Return the number of items to preload for the distance scrolled in the last frame.
+     */
+    private int getItemsAhead(int distance) {
+        if (distance >= mFastScrollDistance) {
+            return MAX_PRELOADED_ITEMS;
+        }
+        return MIN_PRELOADED_ITEMS
+                + (MAX_PRELOADED_ITEMS - MIN_PRELOADED_ITEMS) * distance / mFastScrollDistance;
+    }
+
+    private void preload(Preloadable adapter, int position) {
+        RequestCreator request = adapter.getPreloadRequest(position);
+        if (request != null) {
+            // Images that are being shown go first
+            request.priority(Picasso.Priority.LOW).tag(mTag).fetch();
+        }
+    }
+}
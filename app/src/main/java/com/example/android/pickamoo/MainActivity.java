@@ -18,13 +18,14 @@ import android.support.v7.app.ActionBarDrawerToggle;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
-import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
 
 import com.example.android.pickamoo.data.MovieContract;
 import com.example.android.pickamoo.databinding.ActivityMainBinding;
+import com.example.android.pickamoo.loaders.DetailsPrefetcher;
 import com.example.android.pickamoo.loaders.MoviesListLoader;
+import com.example.android.pickamoo.utilities.TmdbUrls;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -35,33 +36,10 @@ public class MainActivity extends AppCompatActivity
 
     public static final String LOG_TAG = MainActivity.class.getName();
 
-    /**
-     * API Key
-     */
-    private static final String API_KEY = BuildConfig.API_KEY;
-
     /**
      * URL to fetch data from the TheMovieDb API
      */
-    private String requestUrl = POPULAR_REQUEST_URL;
-
-    /**
-     * URL for popular movies data from the TheMovieDb API
-     */
-    private static final String POPULAR_REQUEST_URL =
-            "http://api.themoviedb.org/3/movie/popular?api_key=" + API_KEY;
-
-    /**
-     * URL for top rated movies data from the TheMovieDb API
-     */
-    private static final String TOP_RATED_REQUEST_URL =
-            "http://api.themoviedb.org/3/movie/top_rated?api_key=" + API_KEY;
-
-    /**
-     * URL for movies data ordered by genre from the TheMovieDb API
-     */
-    private static final String BASE_GENRE_REQUEST_URL =
-            "https://api.themoviedb.org/3/discover/movie?api_key=" + API_KEY + "&with_genres=";
+    private String requestUrl = TmdbUrls.popularMovies();
 
     /**
      * Genres values
@@ -82,15 +60,61 @@ public class MainActivity extends AppCompatActivity
     /* Adapter for the grid of movies */
     private MovieAdapter mAdapter;
 
+    /* Downloads in advance the details of the first visible movies */
+    private DetailsPrefetcher mPrefetcher;
+
     /* Unique identifier of the main Loader */
     private static final int ID_LOADER = 23;
 
-    /* Unique identifier of the Loader to get the favorite movies */
-    private static final int ID_FAV_LOADER = 17;
+    /* Loader argument to revalidate the cached list with the server */
+    private static final String FORCE_REFRESH_KEY = "forceRefresh";
+
+    /* Unique identifier of the Loader that fetches the next (or previous) pages of the list */
+    private static final int ID_PAGE_LOADER = 24;
+
+    /* Loader argument for the page to fetch */
+    private static final String PAGE_KEY = "page";
+
+    /* Query parameter to request a page of the list */
+    private static final String PAGE_QUERY_PARAMETER = "&page=";
+
+    /* Last page that TheMovieDb API returns */
+    private static final int MAX_PAGE = 500;
+
+    /* Number of movies before the end of the grid at which the next page starts loading */
+    private static final int PREFETCH_DISTANCE = 10;
+
+    /* Boolean to know whether or not a page is being loaded */
+    private boolean isLoadingPage = false;
+
+    /* Boolean to know whether or not the list has more pages after the last loaded one */
+    private boolean hasMorePages = false;
+
+    /* Number of the page that is being loaded */
+    private int mLoadingPage;
+
+    /* Pages the grid showed before the activity was recreated, which are loaded again one by one,
+    and the position of the first visible movie among them. NO_PAGE if there is nothing to load */
+    private static final int NO_PAGE = 0;
+    private int mRestoredFirstPage = NO_PAGE;
+    private int mRestoredLastPage = NO_PAGE;
+    private int mRestoredPosition;
 
     /* Boolean to know whether or not the layout is refreshing */
     private boolean isRefreshing = false;
 
+    /* Id of the movie whose details the user opened from the grid, or NO_MOVIE_ID */
+    private static final int NO_MOVIE_ID = -1;
+    private int mOpenedMovieId = NO_MOVIE_ID;
+
+    /* Boolean to know whether or not the app started without internet connection, so it shows
+    the favorites if the first list isn't in the offline cache */
+    private boolean isStartingOffline = false;
+
+    /* Boolean to know whether or not the current list has already been delivered by the loader,
+    so a second delivery is a background revalidation of its first page */
+    private boolean isListDelivered = false;
+
     /* Drawer toggle */
     private ActionBarDrawerToggle mDrawerToggle;
 
@@ -101,21 +125,15 @@ public class MainActivity extends AppCompatActivity
 
     private ActivityMainBinding mBinding;
 
-    /* List to store the ids of the favorite movies */
-    public static List<Integer> favoritesList = new ArrayList<>();
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         mBinding = DataBindingUtil.setContentView(this, R.layout.activity_main);
 
-        // Without internet connection, start activity from favorites
-        if (!checkInternetConnection()) {
-            requestUrl = MovieContract.MovieEntry.CONTENT_URI.toString();
-            position = FAVORITES_POSITION;
-            changeUI(position);
-            mBinding.leftDrawer.setCheckedItem(R.id.favorite);
-        }
+        // Without internet connection, start activity from favorites unless the popular movies
+        // are in the offline cache. The loader reads the cache in the background, so the switch
+        // is made when it finishes (see onLoadFinished)
+        isStartingOffline = savedInstanceState == null && !checkInternetConnection();
 
         // Restore state from saved instance
         if (savedInstanceState != null) {
@@ -125,9 +143,14 @@ public class MainActivity extends AppCompatActivity
             mBinding.headTv.setText(savedInstanceState.getString("headText"));
             // Apply correct empty text
             position = savedInstanceState.getInt("currentPosition");
-        } else {
-            // Init loader to get the list of favorite movies ids only the first time the activity is created
-            getSupportLoaderManager().initLoader(ID_FAV_LOADER, null, this);
+            // Apply the pages of the list that were in the grid
+            if (savedInstanceState.getInt("lastPage", NO_PAGE) > 1) {
+                mRestoredFirstPage = savedInstanceState.getInt("firstPage");
+                mRestoredLastPage = savedInstanceState.getInt("lastPage");
+                mRestoredPosition = savedInstanceState.getInt("scrollPosition");
+            }
+            // A page requested before the activity was recreated belongs to the old grid
+            getSupportLoaderManager().destroyLoader(ID_PAGE_LOADER);
         }
 
         //Toolbar settings
@@ -184,14 +207,47 @@ public class MainActivity extends AppCompatActivity
         mAdapter = new MovieAdapter(this, mMoviesList, new MovieAdapter.MovieAdapterListener() {
             @Override
             public void OnClick(View v, int position) {
+                Movie movie = mAdapter.getItem(position);
+                // The details the user asked for go first. If they are being prefetched, the
+                // detail screen joins that request
+                mPrefetcher.cancelExcept(movie.getId());
+                mOpenedMovieId = movie.getId();
                 Intent openActivityDetail = new Intent(getApplicationContext(),
                         DetailActivity.class);
-                openActivityDetail.putExtra("movieId", mMoviesList.get(position).getId());
+                openActivityDetail.putExtra(DetailActivity.MOVIE_ID_EXTRA, movie.getId());
+                // Pass the data the grid already has, so the detail screen can show it at once
+                openActivityDetail.putExtra(DetailActivity.MOVIE_EXTRA, movie);
                 startActivity(openActivityDetail);
             }
         });
         // Set the adapter on the {@link RecyclerView} so the list can be populated in the UI
         mRecyclerView.setAdapter(mAdapter);
+        // Prefetch the details of the first visible movies while the user looks at the grid
+        mPrefetcher = new DetailsPrefetcher(this, mRecyclerView, mLayoutManager, mAdapter);
+        // Download the posters ahead of the scroll, so a fling doesn't show placeholders
+        ImagePreloader.attach(mRecyclerView);
+        // Load the next page before the user reaches the end of the grid, and the previous one
+        // when the user scrolls back to pages that were dropped from memory
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (isLoadingPage || position == FAVORITES_POSITION) {
+                    return;
+                }
+                if (dy > 0) {
+                    int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+                    if (hasMorePages
+                            && lastVisible + PREFETCH_DISTANCE >= mAdapter.getItemCount()) {
+                        loadPage(mAdapter.getLastPage() + 1);
+                    }
+                } else if (dy < 0) {
+                    int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+                    if (mAdapter.getFirstPage() > 1 && firstVisible <= PREFETCH_DISTANCE) {
+                        loadPage(mAdapter.getFirstPage() - 1);
+                    }
+                }
+            }
+        });
 
         // Refresh Layout on pulling down
         mBinding.refresh.setOnRefreshListener(this);
@@ -207,9 +263,35 @@ public class MainActivity extends AppCompatActivity
         savedInstanceState.putString("currentUrl", requestUrl);
         savedInstanceState.putString("headText", mBinding.headTv.getText().toString());
         savedInstanceState.putInt("currentPosition", position);
+        if (mRestoredLastPage != NO_PAGE) {
+            // The pages are still being loaded again
+            savedInstanceState.putInt("firstPage", mRestoredFirstPage);
+            savedInstanceState.putInt("lastPage", mRestoredLastPage);
+            savedInstanceState.putInt("scrollPosition", mRestoredPosition);
+        } else {
+            GridLayoutManager layoutManager =
+                    (GridLayoutManager) mBinding.moviesGrid.getLayoutManager();
+            savedInstanceState.putInt("firstPage", mAdapter.getFirstPage());
+            savedInstanceState.putInt("lastPage", mAdapter.getLastPage());
+            savedInstanceState.putInt("scrollPosition",
+                    layoutManager.findFirstVisibleItemPosition());
+        }
         super.onSaveInstanceState(savedInstanceState);
     }
 
+    @Override
+    protected void onStop() {
+        // Don't keep prefetching while the user doesn't see the grid, except the details of the
+        // movie the user opened, which its screen may not have joined yet
+        if (mOpenedMovieId != NO_MOVIE_ID) {
+            mPrefetcher.cancelExcept(mOpenedMovieId);
+            mOpenedMovieId = NO_MOVIE_ID;
+        } else {
+            mPrefetcher.cancel();
+        }
+        super.onStop();
+    }
+
     // Sync the toggle state after onRestoreInstanceState has occurred.
     @Override
     protected void onPostCreate(Bundle savedInstanceState) {
@@ -234,6 +316,8 @@ public class MainActivity extends AppCompatActivity
     // Handle navigation view item clicks
     @Override
     public boolean onNavigationItemSelected(@NonNull MenuItem item) {
+        // The user chose a list, don't replace it with the favorites
+        isStartingOffline = false;
         // Hide the current view (empty state text or recyclerView)
         mBinding.emptyText.setVisibility(View.GONE);
         mBinding.moviesGrid.setVisibility(View.GONE);
@@ -243,12 +327,12 @@ public class MainActivity extends AppCompatActivity
         switch (item.getItemId()) {
             case R.id.popular:
                 // Popular movies
-                requestUrl = POPULAR_REQUEST_URL;
+                requestUrl = TmdbUrls.popularMovies();
                 position = 0;
                 break;
             case R.id.top_rated:
                 // Top-rated movies
-                requestUrl = TOP_RATED_REQUEST_URL;
+                requestUrl = TmdbUrls.topRatedMovies();
                 position = 1;
                 break;
             case R.id.favorite:
@@ -257,62 +341,62 @@ public class MainActivity extends AppCompatActivity
                 break;
             case R.id.action:
                 // Action movies
-                requestUrl = BASE_GENRE_REQUEST_URL + ACTION_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(ACTION_VALUE);
                 position = 3;
                 break;
             case R.id.animation:
                 // Animation movies
-                requestUrl = BASE_GENRE_REQUEST_URL + ANIMATION_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(ANIMATION_VALUE);
                 position = 4;
                 break;
             case R.id.comedy:
                 // Comedy movies
-                requestUrl = BASE_GENRE_REQUEST_URL + COMEDY_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(COMEDY_VALUE);
                 position = 5;
                 break;
             case R.id.drama:
                 // Drama movies
-                requestUrl = BASE_GENRE_REQUEST_URL + DRAMA_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(DRAMA_VALUE);
                 position = 6;
                 break;
             case R.id.romance:
                 // Romance movies
-                requestUrl = BASE_GENRE_REQUEST_URL + ROMANCE_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(ROMANCE_VALUE);
                 position = 7;
                 break;
             case R.id.family:
                 // Family movies
-                requestUrl = BASE_GENRE_REQUEST_URL + FAMILY_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(FAMILY_VALUE);
                 position = 8;
                 break;
             case R.id.music:
                 // Music movies
-                requestUrl = BASE_GENRE_REQUEST_URL + MUSIC_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(MUSIC_VALUE);
                 position = 9;
                 break;
             case R.id.sci_fi:
                 // Sci-Fi movies
-                requestUrl = BASE_GENRE_REQUEST_URL + SCIENCE_FICTION_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(SCIENCE_FICTION_VALUE);
                 position = 10;
                 break;
             case R.id.thriller:
                 // Thriller movies
-                requestUrl = BASE_GENRE_REQUEST_URL + THRILLER_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(THRILLER_VALUE);
                 position = 11;
                 break;
             case R.id.documentary:
                 // Documentary movies
-                requestUrl = BASE_GENRE_REQUEST_URL + DOCUMENTARY_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(DOCUMENTARY_VALUE);
                 position = 12;
                 break;
             case R.id.horror:
                 // Horror movies
-                requestUrl = BASE_GENRE_REQUEST_URL + HORROR_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(HORROR_VALUE);
                 position = 13;
                 break;
             case R.id.western:
                 // Western movies
-                requestUrl = BASE_GENRE_REQUEST_URL + WESTERN_VALUE;
+                requestUrl = TmdbUrls.moviesByGenre(WESTERN_VALUE);
                 position = 14;
                 break;
         }
@@ -336,17 +420,18 @@ public class MainActivity extends AppCompatActivity
     public Loader<List<Movie>> onCreateLoader(int id, Bundle bundle) {
         // Create a new loader for the correct URL
         Uri baseUri;
+        boolean forceRefresh = bundle != null && bundle.getBoolean(FORCE_REFRESH_KEY);
         switch (id) {
-            case ID_FAV_LOADER:
-                baseUri = MovieContract.MovieEntry.CONTENT_URI;
-                Log.e("loader", "is created");
+            case ID_PAGE_LOADER:
+                mLoadingPage = bundle.getInt(PAGE_KEY);
+                baseUri = Uri.parse(requestUrl + PAGE_QUERY_PARAMETER + mLoadingPage);
                 break;
             case ID_LOADER:
             default:
                 baseUri = Uri.parse(requestUrl);
                 break;
         }
-        return new MoviesListLoader(this, baseUri.toString());
+        return new MoviesListLoader(this, baseUri.toString(), forceRefresh);
     }
 
     /**
@@ -356,18 +441,41 @@ public class MainActivity extends AppCompatActivity
     public void onLoadFinished(@NonNull Loader<List<Movie>> loader, List<Movie> movies) {
         int id = loader.getId();
         switch (id) {
-            case ID_FAV_LOADER:
-                // Add favorite movies ids to the list
-                if (movies != null && !movies.isEmpty()) {
-                    for (int i = 0; i < movies.size(); i++) {
-                        favoritesList.add(movies.get(i).getId());
+            case ID_PAGE_LOADER:
+                isLoadingPage = false;
+                if (movies == null || movies.isEmpty()) {
+                    // There was an error or the list has no more pages
+                    if (mLoadingPage > mAdapter.getLastPage()) {
+                        hasMorePages = false;
                     }
+                } else if (mLoadingPage == mAdapter.getFirstPage() - 1) {
+                    mAdapter.prependPage(movies);
+                } else if (mLoadingPage == mAdapter.getLastPage() + 1) {
+                    mAdapter.appendPage(movies);
                 }
                 // Finish using this loader
-                getLoaderManager().destroyLoader(id);
+                getSupportLoaderManager().destroyLoader(id);
+                if (movies == null || movies.isEmpty()) {
+                    // Show the restored pages that could be loaded
+                    finishRestoringPages();
+                } else {
+                    restoreNextPage();
+                }
                 break;
             case ID_LOADER:
             default:
+                if (isStartingOffline) {
+                    isStartingOffline = false;
+                    if ((movies == null || movies.isEmpty()) && position != FAVORITES_POSITION) {
+                        // The list isn't in the offline cache, show the favorites instead
+                        requestUrl = MovieContract.MovieEntry.CONTENT_URI.toString();
+                        position = FAVORITES_POSITION;
+                        changeUI(position);
+                        mBinding.leftDrawer.setCheckedItem(R.id.favorite);
+                        restartLoader();
+                        break;
+                    }
+                }
                 // Set empty/error text
                 if (position == FAVORITES_POSITION) {
                     mBinding.emptyText.setText(R.string.empty);
@@ -383,16 +491,42 @@ public class MainActivity extends AppCompatActivity
                 mBinding.loadingSpinner.setVisibility(View.GONE);
                 // Hide empty state text
                 mBinding.emptyText.setVisibility(View.GONE);
-                // Clear the adapter of previous data
-                mAdapter.clear();
                 // Show the recyclerView
                 mBinding.moviesGrid.setVisibility(View.VISIBLE);
 
-                // If there is a valid list of {@link Movie}s, then add them to the adapter's
-                // data set. This will trigger the RecyclerView to update.
+                // If there is a valid list of {@link Movie}s, then replace the adapter's data set
+                // with it. Only the posters that changed are updated in the RecyclerView.
                 if (movies != null && !movies.isEmpty()) {
-                    mAdapter.addAll(movies);
+                    // The favorites list isn't paginated, and its details are already stored
+                    hasMorePages = position != FAVORITES_POSITION;
+                    mPrefetcher.setEnabled(position != FAVORITES_POSITION);
+                    if (isListDelivered
+                            && (mAdapter.getLastPage() > 1 || mRestoredLastPage != NO_PAGE)) {
+                        // A revalidation of the first page while the user scrolls through the
+                        // next ones: keep them and the scroll position
+                        mAdapter.updateFirstPage(movies);
+                    } else if (mRestoredFirstPage > 1) {
+                        // The first pages had been dropped from the grid before the activity was
+                        // recreated: start again from the first page it showed
+                        mAdapter.startAtPage(mRestoredFirstPage);
+                        loadPage(mRestoredFirstPage);
+                    } else {
+                        mAdapter.submitList(movies, new Runnable() {
+                            @Override
+                            public void run() {
+                                // Prefetch the details of the movies once they are in the grid
+                                mPrefetcher.schedule();
+                                restoreNextPage();
+                            }
+                        });
+                    }
+                    isListDelivered = true;
                 } else {
+                    hasMorePages = false;
+                    // Clear the adapter of previous data
+                    mAdapter.clear();
+                    // There are no pages to load again
+                    finishRestoringPages();
                     // Show empty state text
                     mBinding.emptyText.setVisibility(View.VISIBLE);
                 }
@@ -405,8 +539,10 @@ public class MainActivity extends AppCompatActivity
      */
     @Override
     public void onLoaderReset(@NonNull Loader<List<Movie>> loader) {
-        // Loader reset, so we can clear out our existing data.
-        mAdapter.clear();
+        // Main loader reset, so we can clear out our existing data.
+        if (loader.getId() == ID_LOADER) {
+            mAdapter.clear();
+        }
     }
 
     // Listen to refreshes made by the user
@@ -414,14 +550,82 @@ public class MainActivity extends AppCompatActivity
     public void onRefresh() {
         mBinding.refresh.setRefreshing(true);
         isRefreshing = true;
-        restartLoader();
+        isListDelivered = false;
+        cancelPageLoad();
+        // Ask the server again even if the cached list is still fresh
+        Bundle args = new Bundle();
+        args.putBoolean(FORCE_REFRESH_KEY, true);
+        getSupportLoaderManager().restartLoader(ID_LOADER, args, this);
     }
 
     // Restart the Loader to set new data
     public void restartLoader() {
+            isListDelivered = false;
+            cancelPageLoad();
             getSupportLoaderManager().restartLoader(ID_LOADER, null, this);
     }
 
+    /**
+     * Start loading the given page of the current list.
+     */
+    private void loadPage(int page) {
+        if (page > MAX_PAGE) {
+            hasMorePages = false;
+            return;
+        }
+        mPrefetcher.cancel();
+        isLoadingPage = true;
+        Bundle args = new Bundle();
+        args.putInt(PAGE_KEY, page);
+        getSupportLoaderManager().restartLoader(ID_PAGE_LOADER, args, this);
+    }
+
+    /**
+     * Stop loading pages of the previous list.
+     */
+    private void cancelPageLoad() {
+        mPrefetcher.cancel();
+        getSupportLoaderManager().destroyLoader(ID_PAGE_LOADER);
+        isLoadingPage = false;
+        hasMorePages = false;
+        mRestoredFirstPage = NO_PAGE;
+        mRestoredLastPage = NO_PAGE;
+    }
+
+    /**
+     * Load the next of the pages the grid showed before the activity was recreated, or scroll
+     * back to where the user was once all of them are in the grid.
+     */
+    private void restoreNextPage() {
+        if (mRestoredLastPage == NO_PAGE) {
+            return;
+        }
+        if (mAdapter.getLastPage() < mRestoredLastPage) {
+            loadPage(mAdapter.getLastPage() + 1);
+        } else {
+            finishRestoringPages();
+        }
+    }
+
+    /**
+     * Scroll back to the movie the user was looking at before the activity was recreated, or as
+     * close as the loaded pages allow.
+     */
+    private void finishRestoringPages() {
+        if (mRestoredLastPage == NO_PAGE) {
+            return;
+        }
+        mRestoredFirstPage = NO_PAGE;
+        mRestoredLastPage = NO_PAGE;
+        mPrefetcher.schedule();
+        if (mAdapter.getItemCount() > 0) {
+            GridLayoutManager layoutManager =
+                    (GridLayoutManager) mBinding.moviesGrid.getLayoutManager();
+            int restoredPosition = Math.min(mRestoredPosition, mAdapter.getItemCount() - 1);
+            layoutManager.scrollToPositionWithOffset(Math.max(restoredPosition, 0), 0);
+        }
+    }
+
     /**
      * Helper method to change UI based on the category selected in the drawer
      */
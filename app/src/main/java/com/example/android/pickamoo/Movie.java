@@ -1,14 +1,22 @@
 package com.example.android.pickamoo;
 
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.example.android.pickamoo.utilities.MovieJsonParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Created by Cristina on 28/03/2018.
  * This class represents a single movie. Each object has information about the movie, such as title,
- * release date, vote average, synopsis and image poster url.
+ * release date, vote average, synopsis and image poster url. It is Parcelable so the data already
+ * shown in a list can be passed to {@link DetailActivity}.
  */
 
-public class Movie {
+public class Movie implements Parcelable {
 
     private int mId;
     private String mTitle, mReleaseDate, mCountries, mGenres, mSynopsis, mImageUrl, mDirector;
@@ -17,6 +25,10 @@ public class Movie {
     private List<String[]> mCast, mTrailers, mReviews;
     private List<Movie> mRecommendations;
 
+    /* Bit mask of the sections of the details (SECTION_ constants of {@link MovieJsonParser})
+    that have been loaded. The values of the other sections are unknown, not empty */
+    private int mLoadedSections;
+
     /**
      * No arguments constructor to construct the object with the setter methods
      */
@@ -26,7 +38,7 @@ public class Movie {
     /**
      * Create a new {@link Movie} object with only basic information.
      * @param id is the movie id
-     * @param imageUrl is the url to download the movie poster image
+     * @param imageUrl is the TheMovieDb file path of the movie poster image
      */
     public Movie(int id, String imageUrl) {
         mId = id;
@@ -40,11 +52,11 @@ public class Movie {
      * @param releaseDate is the date of release
      * @param voteAverage is the average rating of the movie (0.0 to 10.0)
      * @param synopsis is a short description of the movie
-     * @param imageUrl is the url to download the movie poster image
+     * @param imageUrl is the TheMovieDb file path of the movie poster image
      * @param director is the movie director
      * @param countries are the production countries of the movie
      * @param genres are the movie genres (i.e. Action, Comedy, etc.)
-     * @param imagesList is a list of urls to download backdrops images
+     * @param imagesList is a list of TheMovieDb file paths of backdrops images
      * @param cast is a list of the main cast of the movie (name and photo)
      * @param trailers is a list of trailers to see the movie (url and thumbnail)
      * @param reviews is a list of reviews of the movie (review, url and author)
@@ -70,6 +82,104 @@ public class Movie {
         mRecommendations = recommendations;
     }
 
+    /**
+     * Create a new {@link Movie} object from a parcel written by {@link #writeToParcel}.
+     */
+    protected Movie(Parcel in) {
+        mId = in.readInt();
+        mTitle = in.readString();
+        mReleaseDate = in.readString();
+        mCountries = in.readString();
+        mGenres = in.readString();
+        mSynopsis = in.readString();
+        mImageUrl = in.readString();
+        mDirector = in.readString();
+        mVoteAverage = in.readDouble();
+        mImagesList = in.createStringArrayList();
+        mCast = readArraysList(in);
+        mTrailers = readArraysList(in);
+        mReviews = readArraysList(in);
+        mRecommendations = in.createTypedArrayList(CREATOR);
+        mLoadedSections = in.readInt();
+    }
+
+    /**
+     * Create a copy of the given {@link Movie}. The lists are shared, they are never modified once
+     * they have been set.
+     */
+    private Movie(Movie other) {
+        this(other.mId, other.mTitle, other.mReleaseDate, other.mVoteAverage, other.mSynopsis,
+                other.mImageUrl, other.mDirector, other.mCountries, other.mGenres,
+                other.mImagesList, other.mCast, other.mTrailers, other.mReviews,
+                other.mRecommendations);
+        mLoadedSections = other.mLoadedSections;
+    }
+
+    public static final Creator<Movie> CREATOR = new Creator<Movie>() {
+        @Override
+        public Movie createFromParcel(Parcel in) {
+            return new Movie(in);
+        }
+
+        @Override
+        public Movie[] newArray(int size) {
+            return new Movie[size];
+        }
+    };
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mId);
+        dest.writeString(mTitle);
+        dest.writeString(mReleaseDate);
+        dest.writeString(mCountries);
+        dest.writeString(mGenres);
+        dest.writeString(mSynopsis);
+        dest.writeString(mImageUrl);
+        dest.writeString(mDirector);
+        dest.writeDouble(mVoteAverage);
+        dest.writeStringList(mImagesList);
+        writeArraysList(dest, mCast);
+        writeArraysList(dest, mTrailers);
+        writeArraysList(dest, mReviews);
+        dest.writeTypedList(mRecommendations);
+        dest.writeInt(mLoadedSections);
+    }
+
+    /**
+     * Write a list of String arrays (or null) to the parcel.
+     */
+    private static void writeArraysList(Parcel dest, List<String[]> list) {
+        if (list == null) {
+            dest.writeInt(-1);
+            return;
+        }
+        dest.writeInt(list.size());
+        for (String[] array : list) {
+            dest.writeStringArray(array);
+        }
+    }
+
+    /**
+     * Read a list of String arrays (or null) written by {@link #writeArraysList}.
+     */
+    private static List<String[]> readArraysList(Parcel in) {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String[]> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(in.createStringArray());
+        }
+        return list;
+    }
+
     /**
      * Get the movie title
      */
@@ -92,7 +202,8 @@ public class Movie {
     }
 
     /**
-     * Get the movie poster url
+     * Get the TheMovieDb file path of the movie poster. The URL for a view is built with
+     * {@link com.example.android.pickamoo.utilities.TmdbImages}
      */
     public String getImageUrl() {
         return mImageUrl;
@@ -134,14 +245,14 @@ public class Movie {
     }
 
     /**
-     * Get a list of urls to download backdrops images
+     * Get a list of TheMovieDb file paths of backdrops images
      */
     public List<String> getImagesList() {
         return mImagesList;
     }
 
     /**
-     * Get a list of the main cast of the movie (name and photo)
+     * Get a list of the main cast of the movie (names and file paths of the photos)
      */
     public List<String[]> getCast() {
         return mCast;
@@ -265,4 +376,109 @@ public class Movie {
     public void setRecommendations(List<Movie> mRecommendations) {
         this.mRecommendations = mRecommendations;
     }
+
+    /**
+     * Return true if the values of the given section of the details have been loaded.
+     *
+     * @param section is one of the SECTION_ constants of {@link MovieJsonParser}
+     */
+    public boolean isSectionLoaded(int section) {
+        return (mLoadedSections & (1 << section)) != 0;
+    }
+
+    /**
+     * Mark the values of the given section of the details as loaded (even if they are empty).
+     */
+    public void setSectionLoaded(int section) {
+        mLoadedSections |= 1 << section;
+    }
+
+    /**
+     * Return a copy of this movie completed with the sections loaded in the other movie and not
+     * in this one. The sections this movie already has are kept.
+     */
+    public Movie withSectionsOf(Movie other) {
+        Movie movie = new Movie(this);
+        for (int section = MovieJsonParser.SECTION_IMAGES;
+             section <= MovieJsonParser.SECTION_RECOMMENDATIONS; section++) {
+            if (other.isSectionLoaded(section) && !isSectionLoaded(section)) {
+                movie.copySection(section, other);
+            }
+        }
+        return movie;
+    }
+
+    /**
+     * Copy the values of a section of the details from the other movie.
+     */
+    private void copySection(int section, Movie other) {
+        switch (section) {
+            case MovieJsonParser.SECTION_IMAGES:
+                mImagesList = other.mImagesList;
+                break;
+            case MovieJsonParser.SECTION_CREDITS:
+                mDirector = other.mDirector;
+                mCast = other.mCast;
+                break;
+            case MovieJsonParser.SECTION_VIDEOS:
+                mTrailers = other.mTrailers;
+                break;
+            case MovieJsonParser.SECTION_REVIEWS:
+                mReviews = other.mReviews;
+                break;
+            case MovieJsonParser.SECTION_RECOMMENDATIONS:
+                mRecommendations = other.mRecommendations;
+                break;
+        }
+        setSectionLoaded(section);
+    }
+
+    /**
+     * Return true if the other movie has the same information as this one. It is used to know if
+     * data downloaded again has changed.
+     */
+    public boolean hasSameContent(Movie other) {
+        if (other == this) return true;
+        if (other == null) return false;
+        return mId == other.mId
+                && mVoteAverage == other.mVoteAverage
+                && equal(mTitle, other.mTitle)
+                && equal(mReleaseDate, other.mReleaseDate)
+                && equal(mCountries, other.mCountries)
+                && equal(mGenres, other.mGenres)
+                && equal(mSynopsis, other.mSynopsis)
+                && equal(mImageUrl, other.mImageUrl)
+                && equal(mDirector, other.mDirector)
+                && equal(mImagesList, other.mImagesList)
+                && sameArrays(mCast, other.mCast)
+                && sameArrays(mTrailers, other.mTrailers)
+                && sameArrays(mReviews, other.mReviews)
+                && sameMovies(mRecommendations, other.mRecommendations)
+                && mLoadedSections == other.mLoadedSections;
+    }
+
+    /**
+     * Return true if both lists have movies with the same information in the same order.
+     */
+    public static boolean sameMovies(List<Movie> first, List<Movie> second) {
+        if (first == second) return true;
+        if (first == null || second == null || first.size() != second.size()) return false;
+        for (int i = 0; i < first.size(); i++) {
+            if (!first.get(i).hasSameContent(second.get(i))) return false;
+        }
+        return true;
+    }
+
+    private static boolean equal(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    private static boolean sameArrays(List<String[]> first, List<String[]> second) {
+        if (first == second) return true;
+        if (first == null || second == null || first.size() != second.size()) return false;
+        for (int i = 0; i < first.size(); i++) {
+            if (!Arrays.equals(first.get(i), second.get(i))) return false;
+        }
+        return true;
+    }
 }
@@ -1,31 +1,64 @@
 package com.example.android.pickamoo;
 
 import android.content.Context;
+import android.content.res.Resources;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import com.example.android.pickamoo.utilities.TmdbImages;
 import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Created by Cristina on 28/03/2018.
  * This adapter provides access to the movie items in the data set, creates views for
  * items, and replaces the content of some of the views with new data when the original item
  * is no longer visible.
+ * Each movie has a stable id (the movie id), and a new list replaces the old one by computing the
+ * differences between them in the background, so only the posters that changed are bound again.
  */
 
-public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.ViewHolder> {
+public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.ViewHolder>
+        implements ImagePreloader.Preloadable {
 
     private final Context mContext;
     private List<Movie> mMovies;
     private static MovieAdapterListener mOnClickListener;
     private int mWidth, mHeight;
 
+    /* Maximum number of movies kept in memory while scrolling through the pages of a list */
+    private static final int MAX_ITEMS = 200;
+
+    /* Number of movies of each page in the adapter, from the first to the last page */
+    private final Deque<Integer> mPageSizes = new ArrayDeque<>();
+
+    /* Number of the first page in the adapter */
+    private int mFirstPage = 1;
+
+    /* Last list submitted whose differences are still being computed, or null if there is none */
+    private List<Movie> mPendingList;
+
+    /* Incremented each time the data set changes or a list is submitted, so the differences
+    computed for an older list are not applied */
+    private int mGeneration;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
     // Handle button click
     public interface MovieAdapterListener {
         void OnClick(View v, int position);
@@ -39,6 +72,8 @@ public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.ViewHolder>
         mContext = context;
         mMovies = movies;
         mOnClickListener = listener;
+        // The movie ids let the RecyclerView keep the same view for the same movie
+        setHasStableIds(true);
     }
 
     /** Provide a reference to the views for each data item. The ViewHolder is a static
@@ -55,7 +90,10 @@ public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.ViewHolder>
             view.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    mOnClickListener.OnClick(v, getAdapterPosition());
+                    int position = getAdapterPosition();
+                    // The item may have been removed by an update that is being animated
+                    if (position == RecyclerView.NO_POSITION) return;
+                    mOnClickListener.OnClick(v, position);
                 }
             });
         }
@@ -68,48 +106,299 @@ public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.ViewHolder>
         // Create a new view
         View itemView = LayoutInflater.from(mContext)
                 .inflate(R.layout.movie_grid_item, parent, false);
-        // Calculate the image width based on the RecyclerView total width, divided by the column
-        // number and minus the margins
-        mWidth = parent.getWidth() / parent.getResources().getInteger(R.integer.column_number)
-                - (int) parent.getResources().getDimension(R.dimen.smallSeparation) * 4;
+        mWidth = getCellWidth(parent.getResources(), parent.getWidth());
         // Calculate the image height as the width multiplied by the image ratio (1.5)
         mHeight = mWidth * 3 / 2;
         return new ViewHolder(itemView);
     }
 
+    /**
+     * Calculate the image width based on the RecyclerView total width, divided by the column
+     * number and minus the margins
+     */
+    public static int getCellWidth(Resources resources, int gridWidth) {
+        return gridWidth / resources.getInteger(R.integer.column_number)
+                - (int) resources.getDimension(R.dimen.smallSeparation) * 4;
+    }
+
     // Replace the contents of a view (invoked by the layout manager)
     @Override
     public void onBindViewHolder(@NonNull MovieAdapter.ViewHolder holder, int position) {
         Movie currentMovie = mMovies.get(position);
 
-        // Get the imageLink to download the poster image
-        String imageLink = currentMovie.getImageUrl();
-        // Download the image and attach it to the ImageView. If imageLink is null, no image is
-        // assigned or is not recognized as such. Then, a default image is assigned.
-        if (imageLink != null && imageLink.length() > 0) {
-            Picasso.get().load(imageLink).resize(mWidth, mHeight).error(R.drawable.img_placeholder)
-                    .into(holder.moviePoster);
+        // Download the image and attach it to the ImageView. If there is no poster, a default
+        // image is assigned.
+        RequestCreator request = createPosterRequest(currentMovie);
+        if (request != null) {
+            request.error(R.drawable.img_placeholder).into(holder.moviePoster);
         } else {
             Picasso.get().load(R.drawable.img_placeholder).resize(mWidth, mHeight).into(holder.moviePoster);
         }
     }
 
+    // Return the request of the poster of the movie at the given position, to preload it
+    @Override
+    public RequestCreator getPreloadRequest(int position) {
+        // The size of the posters is known once the first cell is created
+        if (mWidth <= 0) return null;
+        return createPosterRequest(mMovies.get(position));
+    }
+
+    /**
+     * Return the request that downloads the poster of a movie, in the smallest size that fills
+     * the cell, or null if it has no poster.
+     */
+    private RequestCreator createPosterRequest(Movie movie) {
+        String imageLink = TmdbImages.getPosterUrl(movie.getImageUrl(), mWidth);
+        if (imageLink == null) return null;
+        return Picasso.get().load(imageLink).resize(mWidth, mHeight);
+    }
+
     // Return the size of your data set (invoked by the layout manager)
     @Override
     public int getItemCount() {
         return mMovies.size();
     }
 
+    // Return the movie id as the stable id of the item
+    @Override
+    public long getItemId(int position) {
+        return mMovies.get(position).getId();
+    }
+
+    // Return the movie at the given position
+    public Movie getItem(int position) {
+        return mMovies.get(position);
+    }
+
     // Clear the adapter data
     public void clear() {
+        mGeneration++;
+        mPendingList = null;
         int size = mMovies.size();
         mMovies.clear();
+        mPageSizes.clear();
+        mFirstPage = 1;
         notifyItemRangeRemoved(0, size);
     }
 
-    // Add new data to the adapter's data set
-    public void addAll(List<Movie> newList) {
-        mMovies.addAll(newList);
-        notifyDataSetChanged();
+    /**
+     * Replace the data set with the first page of a list. The differences between the old and the
+     * new list are computed by movie id in the background, and only the items inserted, removed,
+     * moved or with a new poster are notified, so the posters that didn't change are not bound
+     * again and the scroll position is kept.
+     *
+     * @param newList   is the first page of the new list
+     * @param onApplied runs on the main thread once the new list is in the adapter. It doesn't run
+     *                  if another list is submitted or the adapter is cleared before. Can be null
+     */
+    public void submitList(List<Movie> newList, final Runnable onApplied) {
+        final int generation = ++mGeneration;
+        final List<Movie> oldList = new ArrayList<>(mMovies);
+        final List<Movie> list = withoutDuplicates(newList, new HashSet<Integer>());
+        // Nothing to compare: insert or remove everything at once
+        if (oldList.isEmpty() || list.isEmpty()) {
+            mPendingList = null;
+            replaceList(list);
+            if (oldList.isEmpty()) {
+                notifyItemRangeInserted(0, list.size());
+            } else {
+                notifyItemRangeRemoved(0, oldList.size());
+            }
+            if (onApplied != null) onApplied.run();
+            return;
+        }
+        mPendingList = list;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result =
+                        DiffUtil.calculateDiff(new MovieDiffCallback(oldList, list));
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer list was submitted or the adapter was cleared meanwhile
+                        if (generation != mGeneration) return;
+                        mPendingList = null;
+                        replaceList(list);
+                        result.dispatchUpdatesTo(MovieAdapter.this);
+                        if (onApplied != null) onApplied.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Replace the movies of the first page with a newer version of it (i.e. the first page of the
+     * list revalidated in the background), keeping the pages loaded after it, so a user who
+     * scrolled down the list isn't taken back to the top. Nothing changes if the first page was
+     * dropped from the data set: it is loaded again when the user scrolls back to it.
+     */
+    public void updateFirstPage(List<Movie> page) {
+        if (mPendingList != null) {
+            // The pages in the adapter belong to the list being replaced
+            submitList(page, null);
+            return;
+        }
+        if (mFirstPage != 1 || mPageSizes.isEmpty()) return;
+        int oldSize = mPageSizes.peekFirst();
+        List<Movie> oldPage = new ArrayList<>(mMovies.subList(0, oldSize));
+        // The movies of the next pages keep their place
+        Set<Integer> ids = new HashSet<>();
+        for (Movie movie : mMovies.subList(oldSize, mMovies.size())) {
+            ids.add(movie.getId());
+        }
+        List<Movie> newPage = withoutDuplicates(page, ids);
+        // A single page is small enough to compare on the main thread
+        DiffUtil.DiffResult result =
+                DiffUtil.calculateDiff(new MovieDiffCallback(oldPage, newPage));
+        mMovies.subList(0, oldSize).clear();
+        mMovies.addAll(0, newPage);
+        mPageSizes.removeFirst();
+        mPageSizes.addFirst(newPage.size());
+        // The first page starts at position 0, so the updates of the page are the updates of
+        // the data set
+        result.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * Put the movies of a new list in the data set, as its only page. The same list object is
+     * kept, because the activity reads the movies from it.
+     */
+    private void replaceList(List<Movie> list) {
+        mMovies.clear();
+        mMovies.addAll(list);
+        mPageSizes.clear();
+        mPageSizes.addLast(list.size());
+        mFirstPage = 1;
+    }
+
+    /**
+     * Return the movies of a page that are not already in the data set. The lists of TheMovieDb
+     * change while they are paged, so a movie can come again in the next page, and two items
+     * can't have the same stable id.
+     *
+     * @param ids are the ids of the movies already added. The ids of the page are added to it
+     */
+    private static List<Movie> withoutDuplicates(List<Movie> page, Set<Integer> ids) {
+        List<Movie> movies = new ArrayList<>(page.size());
+        for (Movie movie : page) {
+            if (ids.add(movie.getId())) {
+                movies.add(movie);
+            }
+        }
+        return movies;
+    }
+
+    // Return the ids of the movies in the data set
+    private Set<Integer> getIds() {
+        Set<Integer> ids = new HashSet<>();
+        for (Movie movie : mMovies) {
+            ids.add(movie.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Add the next page of the list at the end of the data set. If there are too many movies,
+     * the first pages are removed.
+     */
+    public void appendPage(List<Movie> page) {
+        // The pages of the list being submitted will replace these ones
+        if (mPendingList != null) return;
+        page = withoutDuplicates(page, getIds());
+        int start = mMovies.size();
+        mMovies.addAll(page);
+        mPageSizes.addLast(page.size());
+        notifyItemRangeInserted(start, page.size());
+        // Keep a bounded window of pages, dropping the ones at the top
+        while (mMovies.size() > MAX_ITEMS && mPageSizes.size() > 1) {
+            int size = mPageSizes.removeFirst();
+            mMovies.subList(0, size).clear();
+            mFirstPage++;
+            notifyItemRangeRemoved(0, size);
+        }
+    }
+
+    /**
+     * Add the previous page of the list at the beginning of the data set. If there are too many
+     * movies, the last pages are removed.
+     */
+    public void prependPage(List<Movie> page) {
+        // The pages of the list being submitted will replace these ones
+        if (mPendingList != null) return;
+        page = withoutDuplicates(page, getIds());
+        mMovies.addAll(0, page);
+        mPageSizes.addFirst(page.size());
+        mFirstPage--;
+        notifyItemRangeInserted(0, page.size());
+        // Keep a bounded window of pages, dropping the ones at the bottom
+        while (mMovies.size() > MAX_ITEMS && mPageSizes.size() > 1) {
+            int size = mPageSizes.removeLast();
+            int start = mMovies.size() - size;
+            mMovies.subList(start, mMovies.size()).clear();
+            notifyItemRangeRemoved(start, size);
+        }
+    }
+
+    /**
+     * Empty the data set so the next page appended is the given page of the list (i.e. to load
+     * again the pages the user was looking at, without the ones dropped before them).
+     */
+    public void startAtPage(int page) {
+        clear();
+        mFirstPage = page;
+    }
+
+    /**
+     * Get the number of the first page in the data set
+     */
+    public int getFirstPage() {
+        return mFirstPage;
+    }
+
+    /**
+     * Get the number of the last page in the data set
+     */
+    public int getLastPage() {
+        return mFirstPage + mPageSizes.size() - 1;
+    }
+
+    /**
+     * Compare two lists of movies for {@link DiffUtil}: the items are the same movie if they have
+     * the same id, and the cell doesn't need to be bound again if the poster is the same, because
+     * it is all the grid shows.
+     */
+    private static class MovieDiffCallback extends DiffUtil.Callback {
+        private final List<Movie> mOldList;
+        private final List<Movie> mNewList;
+
+        MovieDiffCallback(List<Movie> oldList, List<Movie> newList) {
+            mOldList = oldList;
+            mNewList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldList.get(oldItemPosition).getId() == mNewList.get(newItemPosition).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            String oldImage = mOldList.get(oldItemPosition).getImageUrl();
+            String newImage = mNewList.get(newItemPosition).getImageUrl();
+            return oldImage == null ? newImage == null : oldImage.equals(newImage);
+        }
     }
 }
@@ -0,0 +1,61 @@
+package com.example.android.pickamoo;
+
+import android.app.Application;
+import android.os.AsyncTask;
+
+import com.example.android.pickamoo.data.CatalogCache;
+import com.example.android.pickamoo.data.FavoritesStore;
+import com.example.android.pickamoo.data.MovieMemoryCache;
+import com.example.android.pickamoo.utilities.HttpDiskCache;
+import com.example.android.pickamoo.utilities.HttpTransport;
+import com.example.android.pickamoo.utilities.ImagePipeline;
+
+import java.io.File;
+
+/**
+ * Application class. Sets up the app-wide components before any activity is created.
+ */
+
+public class PickamooApplication extends Application {
+
+    /* Name of the directory where TheMovieDb API responses are cached */
+    private static final String HTTP_CACHE_DIRECTORY = "http";
+
+    /* Maximum size of the cached responses (10 MB) */
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+
+    /* Name of the directory where the downloaded images are cached */
+    private static final String IMAGE_CACHE_DIRECTORY = "images";
+
+    /* Maximum size of the cached images (32 MB) */
+    private static final long IMAGE_CACHE_SIZE = 32 * 1024 * 1024;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Keep the connections to the API alive between requests
+        HttpTransport.install();
+        // Install the on-disk cache for the API responses
+        HttpDiskCache.install(new File(getCacheDir(), HTTP_CACHE_DIRECTORY), HTTP_CACHE_SIZE);
+        // Configure the caches and the decoding of the images before any screen loads one
+        ImagePipeline.install(this, new File(getCacheDir(), IMAGE_CACHE_DIRECTORY),
+                IMAGE_CACHE_SIZE);
+        // Read the ids of the favorite movies in the background
+        FavoritesStore.getInstance().load(this);
+        // Keep the offline catalog cache bounded
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                CatalogCache.evict(PickamooApplication.this);
+            }
+        });
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Give memory back to the system when it is running low
+        MovieMemoryCache.getInstance().trimMemory(level);
+        ImagePipeline.trimMemory(level);
+    }
+}
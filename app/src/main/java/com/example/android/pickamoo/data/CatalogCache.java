@@ -0,0 +1,483 @@
+package com.example.android.pickamoo.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.example.android.pickamoo.Movie;
+import com.example.android.pickamoo.data.MovieContract.CastEntry;
+import com.example.android.pickamoo.data.MovieContract.DetailEntry;
+import com.example.android.pickamoo.data.MovieContract.ImageEntry;
+import com.example.android.pickamoo.data.MovieContract.ListEntry;
+import com.example.android.pickamoo.data.MovieContract.MovieEntry;
+import com.example.android.pickamoo.data.MovieContract.RecommendationEntry;
+import com.example.android.pickamoo.data.MovieContract.ReviewEntry;
+import com.example.android.pickamoo.data.MovieContract.TrailerEntry;
+import com.example.android.pickamoo.utilities.MovieJsonParser;
+import com.example.android.pickamoo.utilities.QueryUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.pickamoo.MainActivity.LOG_TAG;
+import static com.example.android.pickamoo.data.MovieContract.COLUMN_FETCHED_AT;
+import static com.example.android.pickamoo.data.MovieContract.COLUMN_MOVIE_ID;
+import static com.example.android.pickamoo.data.MovieContract.COLUMN_POSITION;
+
+/**
+ * Offline catalog cache. Stores the parsed pages of the movie lists and the full details of the
+ * movies (with the sections of cast, trailers, reviews, images and recommendations that have been
+ * loaded) through the {@link MovieProvider}, so they can be shown without network. The cache is
+ * kept bounded by {@link #evict(Context)}: the lists by age and the details by age and by last
+ * use. Each page or movie is written in a single batch, so it is replaced in one transaction and
+ * readers never see it half written.
+ */
+
+public final class CatalogCache {
+
+    /* Time after which cached data is deleted */
+    private static final long LIST_TTL = TimeUnit.DAYS.toMillis(7);
+    private static final long DETAILS_TTL = TimeUnit.DAYS.toMillis(30);
+
+    /* Maximum number of movie details kept in the cache */
+    private static final int MAX_DETAILS = 200;
+
+    /* Minimum time between two updates of the last access of the same details, so reading them
+    doesn't write to the database every time */
+    private static final long ACCESS_UPDATE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    /* Query parameters that are not part of the list category */
+    private static final String API_KEY_PARAMETER = "api_key";
+    private static final String PAGE_PARAMETER = "page";
+
+    /* Order of the rows of a list */
+    private static final String POSITION_ORDER = COLUMN_POSITION + " ASC";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link CatalogCache}
+     * object. This class is only meant to hold static methods.
+     */
+    private CatalogCache() {
+    }
+
+    /**
+     * Cached data together with the time when it was downloaded.
+     */
+    public static final class Snapshot<T> {
+        public final T data;
+        public final long fetchedAt;
+
+        Snapshot(T data, long fetchedAt) {
+            this.data = data;
+            this.fetchedAt = fetchedAt;
+        }
+
+        /**
+         * Return true if the data was downloaded more than maxAge milliseconds ago.
+         */
+        public boolean isOlderThan(long maxAge) {
+            return System.currentTimeMillis() - fetchedAt > maxAge;
+        }
+    }
+
+    /**
+     * Return the cached page of the list requested with the given URL, or null if it isn't cached.
+     */
+    public static Snapshot<List<Movie>> readList(Context context, String requestUrl) {
+        String[] projection = {
+                COLUMN_MOVIE_ID,
+                ListEntry.COLUMN_MOVIE_POSTER,
+                ListEntry.COLUMN_MOVIE_TITLE,
+                ListEntry.COLUMN_MOVIE_RATING,
+                COLUMN_FETCHED_AT
+        };
+        String selection = ListEntry.COLUMN_CATEGORY + "=? AND " + ListEntry.COLUMN_PAGE + "=?";
+        String[] selectionArgs = {getCategory(requestUrl), String.valueOf(getPage(requestUrl))};
+        Cursor cursor = context.getContentResolver().query(ListEntry.CONTENT_URI, projection,
+                selection, selectionArgs, POSITION_ORDER);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            long fetchedAt = cursor.getLong(cursor.getColumnIndex(COLUMN_FETCHED_AT));
+            int idColumnIndex = cursor.getColumnIndex(COLUMN_MOVIE_ID);
+            int posterColumnIndex = cursor.getColumnIndex(ListEntry.COLUMN_MOVIE_POSTER);
+            int titleColumnIndex = cursor.getColumnIndex(ListEntry.COLUMN_MOVIE_TITLE);
+            int ratingColumnIndex = cursor.getColumnIndex(ListEntry.COLUMN_MOVIE_RATING);
+            List<Movie> movies = new ArrayList<>(cursor.getCount());
+            do {
+                Movie movie = new Movie(cursor.getInt(idColumnIndex),
+                        cursor.getString(posterColumnIndex));
+                movie.setTitle(cursor.getString(titleColumnIndex));
+                if (!cursor.isNull(ratingColumnIndex)) {
+                    movie.setVoteAverage(cursor.getDouble(ratingColumnIndex));
+                }
+                movies.add(movie);
+            } while (cursor.moveToNext());
+            return new Snapshot<>(movies, fetchedAt);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Store a page of the list requested with the given URL, replacing the previous snapshot.
+     */
+    public static void writeList(Context context, String requestUrl, List<Movie> movies) {
+        String category = getCategory(requestUrl);
+        int page = getPage(requestUrl);
+        long now = System.currentTimeMillis();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(movies.size() + 1);
+
+        // Remove the previous snapshot of the page (it may have had more movies)
+        operations.add(ContentProviderOperation.newDelete(ListEntry.CONTENT_URI)
+                .withSelection(ListEntry.COLUMN_CATEGORY + "=? AND " + ListEntry.COLUMN_PAGE + "=?",
+                        new String[] {category, String.valueOf(page)})
+                .build());
+
+        for (int i = 0; i < movies.size(); i++) {
+            Movie movie = movies.get(i);
+            ContentValues values = new ContentValues();
+            values.put(ListEntry.COLUMN_CATEGORY, category);
+            values.put(ListEntry.COLUMN_PAGE, page);
+            values.put(COLUMN_POSITION, i);
+            values.put(COLUMN_MOVIE_ID, movie.getId());
+            values.put(ListEntry.COLUMN_MOVIE_POSTER, movie.getImageUrl());
+            values.put(ListEntry.COLUMN_MOVIE_TITLE, movie.getTitle());
+            if (movie.getVoteAverage() != -1.0) {
+                values.put(ListEntry.COLUMN_MOVIE_RATING, movie.getVoteAverage());
+            }
+            values.put(COLUMN_FETCHED_AT, now);
+            operations.add(ContentProviderOperation.newInsert(ListEntry.CONTENT_URI)
+                    .withValues(values)
+                    .build());
+        }
+        applyBatch(context, operations);
+    }
+
+    /**
+     * Mark the cached page of the list requested with the given URL as downloaded now, without
+     * writing its rows again (i.e. when the server sent the same list).
+     */
+    public static void markListFetched(Context context, String requestUrl) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_FETCHED_AT, System.currentTimeMillis());
+        context.getContentResolver().update(ListEntry.CONTENT_URI, values,
+                ListEntry.COLUMN_CATEGORY + "=? AND " + ListEntry.COLUMN_PAGE + "=?",
+                new String[] {getCategory(requestUrl), String.valueOf(getPage(requestUrl))});
+    }
+
+    /**
+     * Return the cached details of a movie, or null if they aren't cached. The details are marked
+     * as used now, so they are the last to be evicted.
+     */
+    public static Snapshot<Movie> readDetails(Context context, int movieId) {
+        ContentResolver resolver = context.getContentResolver();
+        Cursor cursor = resolver.query(DetailEntry.buildUriWithMovieId(movieId), null, null, null,
+                null);
+        if (cursor == null) {
+            return null;
+        }
+        Movie movie = new Movie();
+        long fetchedAt;
+        long lastAccessed;
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            fetchedAt = cursor.getLong(cursor.getColumnIndex(COLUMN_FETCHED_AT));
+            lastAccessed = cursor.getLong(cursor.getColumnIndex(DetailEntry.COLUMN_LAST_ACCESSED));
+            movie.setId(movieId);
+            movie.setImageUrl(getString(cursor, MovieEntry.COLUMN_MOVIE_POSTER));
+            movie.setTitle(getString(cursor, MovieEntry.COLUMN_MOVIE_TITLE));
+            movie.setReleaseDate(getString(cursor, MovieEntry.COLUMN_MOVIE_DATE));
+            movie.setCountries(getString(cursor, MovieEntry.COLUMN_MOVIE_COUNTRIES));
+            movie.setGenres(getString(cursor, MovieEntry.COLUMN_MOVIE_GENRES));
+            movie.setSynopsis(getString(cursor, MovieEntry.COLUMN_MOVIE_SYNOPSIS));
+            movie.setDirector(getString(cursor, MovieEntry.COLUMN_MOVIE_DIRECTOR));
+            movie.setVoteAverage(cursor.getDouble(
+                    cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_RATING)));
+        } finally {
+            cursor.close();
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastAccessed > ACCESS_UPDATE_INTERVAL) {
+            ContentValues values = new ContentValues();
+            values.put(DetailEntry.COLUMN_LAST_ACCESSED, now);
+            resolver.update(DetailEntry.buildUriWithMovieId(movieId), values, null, null);
+        }
+
+        String selection = COLUMN_MOVIE_ID + "=?";
+        String[] selectionArgs = {String.valueOf(movieId)};
+
+        // Images
+        cursor = resolver.query(ImageEntry.CONTENT_URI, new String[] {ImageEntry.COLUMN_IMAGE_URL},
+                selection, selectionArgs, POSITION_ORDER);
+        List<String[]> images = readColumns(cursor);
+        if (images != null) {
+            List<String> imagesList = new ArrayList<>();
+            for (String url : images.get(0)) {
+                imagesList.add(url);
+            }
+            movie.setImagesList(imagesList);
+        }
+
+        // Cast (names and photos)
+        cursor = resolver.query(CastEntry.CONTENT_URI,
+                new String[] {CastEntry.COLUMN_NAME, CastEntry.COLUMN_PHOTO_URL},
+                selection, selectionArgs, POSITION_ORDER);
+        movie.setCast(readColumns(cursor));
+
+        // Trailers (keys and thumbnails)
+        cursor = resolver.query(TrailerEntry.CONTENT_URI,
+                new String[] {TrailerEntry.COLUMN_VIDEO_KEY, TrailerEntry.COLUMN_THUMBNAIL_URL},
+                selection, selectionArgs, POSITION_ORDER);
+        movie.setTrailers(readColumns(cursor));
+
+        // Reviews (contents, urls and authors)
+        cursor = resolver.query(ReviewEntry.CONTENT_URI,
+                new String[] {ReviewEntry.COLUMN_CONTENT, ReviewEntry.COLUMN_URL,
+                        ReviewEntry.COLUMN_AUTHOR},
+                selection, selectionArgs, POSITION_ORDER);
+        movie.setReviews(readColumns(cursor));
+
+        // Recommendations
+        cursor = resolver.query(RecommendationEntry.CONTENT_URI,
+                new String[] {RecommendationEntry.COLUMN_RECOMMENDED_ID,
+                        RecommendationEntry.COLUMN_POSTER_URL},
+                selection, selectionArgs, POSITION_ORDER);
+        if (cursor != null) {
+            List<Movie> recommendations = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                recommendations.add(new Movie(cursor.getInt(0), cursor.getString(1)));
+            }
+            cursor.close();
+            if (!recommendations.isEmpty()) movie.setRecommendations(recommendations);
+        }
+
+        // Only the sections with rows are known to be loaded. The empty ones are requested
+        // again, which the HTTP cache usually answers without network
+        movie.setSectionLoaded(MovieJsonParser.SECTION_HEADER);
+        if (movie.getImagesList() != null) {
+            movie.setSectionLoaded(MovieJsonParser.SECTION_IMAGES);
+        }
+        if (movie.getCast() != null
+                || (movie.getDirector() != null && !movie.getDirector().isEmpty())) {
+            movie.setSectionLoaded(MovieJsonParser.SECTION_CREDITS);
+        }
+        if (movie.getTrailers() != null) {
+            movie.setSectionLoaded(MovieJsonParser.SECTION_VIDEOS);
+        }
+        if (movie.getReviews() != null) {
+            movie.setSectionLoaded(MovieJsonParser.SECTION_REVIEWS);
+        }
+        if (movie.getRecommendations() != null) {
+            movie.setSectionLoaded(MovieJsonParser.SECTION_RECOMMENDATIONS);
+        }
+
+        return new Snapshot<>(movie, fetchedAt);
+    }
+
+    /**
+     * Store the details of a movie, replacing the previous ones.
+     */
+    public static void writeDetails(Context context, Movie movie) {
+        int movieId = movie.getId();
+        long now = System.currentTimeMillis();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+
+        // Delete the previous details (the trigger deletes their child rows)
+        operations.add(ContentProviderOperation.newDelete(DetailEntry.buildUriWithMovieId(movieId))
+                .build());
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_MOVIE_ID, movieId);
+        values.put(MovieEntry.COLUMN_MOVIE_POSTER, movie.getImageUrl());
+        values.put(MovieEntry.COLUMN_MOVIE_TITLE, movie.getTitle());
+        values.put(MovieEntry.COLUMN_MOVIE_DATE, movie.getReleaseDate());
+        values.put(MovieEntry.COLUMN_MOVIE_COUNTRIES, movie.getCountries());
+        values.put(MovieEntry.COLUMN_MOVIE_GENRES, movie.getGenres());
+        values.put(MovieEntry.COLUMN_MOVIE_SYNOPSIS, movie.getSynopsis());
+        values.put(MovieEntry.COLUMN_MOVIE_DIRECTOR, movie.getDirector());
+        values.put(MovieEntry.COLUMN_MOVIE_RATING, movie.getVoteAverage());
+        values.put(COLUMN_FETCHED_AT, now);
+        values.put(DetailEntry.COLUMN_LAST_ACCESSED, now);
+        operations.add(ContentProviderOperation.newInsert(DetailEntry.CONTENT_URI)
+                .withValues(values)
+                .build());
+
+        if (movie.getImagesList() != null) {
+            List<String> images = movie.getImagesList();
+            writeColumns(operations, ImageEntry.CONTENT_URI, movieId,
+                    new String[] {ImageEntry.COLUMN_IMAGE_URL},
+                    new String[][] {images.toArray(new String[images.size()])});
+        }
+        if (movie.getCast() != null) {
+            writeColumns(operations, CastEntry.CONTENT_URI, movieId,
+                    new String[] {CastEntry.COLUMN_NAME, CastEntry.COLUMN_PHOTO_URL},
+                    movie.getCast().toArray(new String[0][]));
+        }
+        if (movie.getTrailers() != null) {
+            writeColumns(operations, TrailerEntry.CONTENT_URI, movieId,
+                    new String[] {TrailerEntry.COLUMN_VIDEO_KEY, TrailerEntry.COLUMN_THUMBNAIL_URL},
+                    movie.getTrailers().toArray(new String[0][]));
+        }
+        if (movie.getReviews() != null) {
+            writeColumns(operations, ReviewEntry.CONTENT_URI, movieId,
+                    new String[] {ReviewEntry.COLUMN_CONTENT, ReviewEntry.COLUMN_URL,
+                            ReviewEntry.COLUMN_AUTHOR},
+                    movie.getReviews().toArray(new String[0][]));
+        }
+        if (movie.getRecommendations() != null) {
+            List<Movie> recommendations = movie.getRecommendations();
+            for (int i = 0; i < recommendations.size(); i++) {
+                ContentValues row = new ContentValues();
+                row.put(COLUMN_MOVIE_ID, movieId);
+                row.put(COLUMN_POSITION, i);
+                row.put(RecommendationEntry.COLUMN_RECOMMENDED_ID, recommendations.get(i).getId());
+                row.put(RecommendationEntry.COLUMN_POSTER_URL,
+                        recommendations.get(i).getImageUrl());
+                operations.add(ContentProviderOperation.newInsert(RecommendationEntry.CONTENT_URI)
+                        .withValues(row)
+                        .build());
+            }
+        }
+        applyBatch(context, operations);
+    }
+
+    /**
+     * Mark the cached details of a movie as downloaded now, without writing them again (i.e. when
+     * the server sent the same details).
+     */
+    public static void markDetailsFetched(Context context, int movieId) {
+        long now = System.currentTimeMillis();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_FETCHED_AT, now);
+        values.put(DetailEntry.COLUMN_LAST_ACCESSED, now);
+        context.getContentResolver().update(DetailEntry.buildUriWithMovieId(movieId), values,
+                null, null);
+    }
+
+    /**
+     * Delete the lists downloaded too long ago, the details not used for too long, and the least
+     * recently used details over the maximum number. It should be called from a background
+     * thread.
+     */
+    public static void evict(Context context) {
+        long now = System.currentTimeMillis();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(3);
+
+        // Expired list snapshots
+        operations.add(ContentProviderOperation.newDelete(ListEntry.CONTENT_URI)
+                .withSelection(COLUMN_FETCHED_AT + "<?",
+                        new String[] {String.valueOf(now - LIST_TTL)})
+                .build());
+
+        // Expired details (the trigger deletes their child rows)
+        operations.add(ContentProviderOperation.newDelete(DetailEntry.CONTENT_URI)
+                .withSelection(DetailEntry.COLUMN_LAST_ACCESSED + "<?",
+                        new String[] {String.valueOf(now - DETAILS_TTL)})
+                .build());
+
+        // Details over the maximum number
+        operations.add(ContentProviderOperation.newDelete(DetailEntry.CONTENT_URI)
+                .withSelection(COLUMN_MOVIE_ID + " IN (SELECT "
+                                + COLUMN_MOVIE_ID + " FROM " + DetailEntry.TABLE_NAME + " ORDER BY "
+                                + DetailEntry.COLUMN_LAST_ACCESSED + " DESC LIMIT -1 OFFSET ?)",
+                        new String[] {String.valueOf(MAX_DETAILS)})
+                .build());
+
+        applyBatch(context, operations);
+    }
+
+    /**
+     * Return the category of a list: its request URL without the api_key and page parameters.
+     */
+    static String getCategory(String requestUrl) {
+        return QueryUtils.removeQueryParameters(requestUrl, API_KEY_PARAMETER, PAGE_PARAMETER);
+    }
+
+    /**
+     * Return the page requested by a list URL (1 if it isn't present).
+     */
+    static int getPage(String requestUrl) {
+        String page = QueryUtils.getQueryParameter(requestUrl, PAGE_PARAMETER);
+        if (page == null) return 1;
+        try {
+            return Integer.parseInt(page);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private static String getString(Cursor cursor, String column) {
+        return cursor.getString(cursor.getColumnIndex(column));
+    }
+
+    /**
+     * Read every column of the cursor as an array of strings (one array per column, in the same
+     * order as the projection), or return null if it has no rows. The cursor is closed.
+     */
+    private static List<String[]> readColumns(Cursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            int rows = cursor.getCount();
+            if (rows == 0) return null;
+            List<String[]> columns = new ArrayList<>();
+            for (int column = 0; column < cursor.getColumnCount(); column++) {
+                columns.add(new String[rows]);
+            }
+            for (int row = 0; cursor.moveToNext(); row++) {
+                for (int column = 0; column < columns.size(); column++) {
+                    columns.get(column)[row] = cursor.getString(column);
+                }
+            }
+            return columns;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Add the insertion of one row per position of the given parallel arrays (one array per
+     * column) to the operations.
+     */
+    private static void writeColumns(ArrayList<ContentProviderOperation> operations, Uri uri,
+                                     int movieId, String[] columnNames, String[][] columns) {
+        int rows = columns[0].length;
+        for (int row = 0; row < rows; row++) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_MOVIE_ID, movieId);
+            values.put(COLUMN_POSITION, row);
+            for (int column = 0; column < columnNames.length; column++) {
+                values.put(columnNames[column], columns[column][row]);
+            }
+            operations.add(ContentProviderOperation.newInsert(uri).withValues(values).build());
+        }
+    }
+
+    /**
+     * Apply the operations in a single transaction of the {@link MovieProvider}. A failure is
+     * logged and leaves the previous data in the cache.
+     */
+    private static void applyBatch(Context context,
+                                   ArrayList<ContentProviderOperation> operations) {
+        try {
+            context.getContentResolver().applyBatch(MovieContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Problem writing the catalog cache", e);
+        }
+    }
+}
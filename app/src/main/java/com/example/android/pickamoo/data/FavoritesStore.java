@@ -0,0 +1,155 @@
+package com.example.android.pickamoo.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.pickamoo.data.MovieContract.MovieEntry;
+import com.example.android.pickamoo.utilities.IntHashSet;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory index of the ids of the favorite movies. It is loaded once from the
+ * {@link MovieProvider} in a background thread and kept up to date by the provider on every insert
+ * and delete, so any screen can check if a movie is a favorite without querying the database.
+ * Reads are lock-free: every change publishes a new copy of the set.
+ */
+
+public final class FavoritesStore {
+
+    /**
+     * Interface to be notified on the main thread when the favorites change or finish loading.
+     */
+    public interface OnFavoritesChangedListener {
+        void onFavoritesChanged();
+    }
+
+    private static final FavoritesStore sInstance = new FavoritesStore();
+
+    /* Current set of favorite ids. It is never modified once published */
+    private volatile IntHashSet mIds = new IntHashSet();
+
+    /* Boolean to know whether or not the favorites have been read from the database */
+    private volatile boolean mLoaded = false;
+
+    private boolean mLoadStarted = false;
+
+    private final List<OnFavoritesChangedListener> mListeners = new CopyOnWriteArrayList<>();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private FavoritesStore() {
+    }
+
+    /**
+     * Get the unique instance of the store
+     */
+    public static FavoritesStore getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Read the favorite ids from the database in a background thread. Only the first call has
+     * effect.
+     */
+    public void load(Context context) {
+        synchronized (this) {
+            if (mLoadStarted) return;
+            mLoadStarted = true;
+        }
+        final Context appContext = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Hold the lock while reading, so changes made by the provider meanwhile are not
+                // overwritten by an older copy
+                synchronized (FavoritesStore.this) {
+                    String[] projection = {MovieEntry.COLUMN_MOVIE_ID};
+                    Cursor cursor = appContext.getContentResolver().query(MovieEntry.CONTENT_URI,
+                            projection, null, null, null);
+                    IntHashSet ids;
+                    if (cursor != null) {
+                        ids = new IntHashSet(cursor.getCount());
+                        int idColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_ID);
+                        while (cursor.moveToNext()) {
+                            ids.add(cursor.getInt(idColumnIndex));
+                        }
+                        cursor.close();
+                    } else {
+                        ids = new IntHashSet();
+                    }
+                    mIds = ids;
+                    mLoaded = true;
+                }
+                notifyListeners();
+            }
+        });
+    }
+
+    /**
+     * Return true if the favorites have been read from the database.
+     */
+    public boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * Return true if the movie is one of the user's favorites. It can be called from any thread.
+     */
+    public boolean contains(int movieId) {
+        return mIds.contains(movieId);
+    }
+
+    /**
+     * Register a listener. Call {@link #removeListener} when it is no longer needed.
+     */
+    public void addListener(OnFavoritesChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Unregister a listener.
+     */
+    public void removeListener(OnFavoritesChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Add and remove movies with a single copy of the set, and notify the listeners once. Called
+     * by the {@link MovieProvider} after an insert or a delete, or once after a transaction.
+     *
+     * @param movieIds are the movies added or removed, in order
+     * @param added    tells, for each movie, if it was added (true) or removed (false)
+     */
+    void applyChanges(List<Integer> movieIds, List<Boolean> added) {
+        if (movieIds.isEmpty()) return;
+        synchronized (this) {
+            IntHashSet ids = new IntHashSet(mIds);
+            boolean changed = false;
+            for (int i = 0; i < movieIds.size(); i++) {
+                int movieId = movieIds.get(i);
+                if (added.get(i) ? ids.add(movieId) : ids.remove(movieId)) {
+                    changed = true;
+                }
+            }
+            if (!changed) return;
+            mIds = ids;
+        }
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnFavoritesChangedListener listener : mListeners) {
+                    listener.onFavoritesChanged();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.pickamoo.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import static com.example.android.pickamoo.MainActivity.LOG_TAG;
+
+/**
+ * A step that upgrades the database schema from one version to the next one, keeping the data
+ * (the user's favorites and the offline catalog). Each step only knows about its two versions, so
+ * a database of any old version is upgraded by running the steps in order with
+ * {@link #runMigrations(SQLiteDatabase, Migration[], int, int)}.
+ *
+ * Steps alter the tables in place whenever SQLite allows it (ALTER TABLE ... ADD COLUMN, new
+ * tables and indices, UPDATE).
+ */
+
+public abstract class Migration {
+
+    private final int mStartVersion;
+    private final int mEndVersion;
+
+    /**
+     * @param startVersion is the version the step upgrades from
+     * @param endVersion   is the version of the database after the step
+     */
+    public Migration(int startVersion, int endVersion) {
+        mStartVersion = startVersion;
+        mEndVersion = endVersion;
+    }
+
+    public int getStartVersion() {
+        return mStartVersion;
+    }
+
+    public int getEndVersion() {
+        return mEndVersion;
+    }
+
+    /**
+     * Change the schema (and the data if needed) of a database of the start version. It runs
+     * inside the transaction of the upgrade: if it throws, the database is left untouched.
+     */
+    public abstract void migrate(SQLiteDatabase db);
+
+    /**
+     * Run the steps that upgrade a database from oldVersion to newVersion, in order.
+     *
+     * @param migrations are all the steps, sorted by start version
+     * @throws IllegalStateException if there is no step for one of the versions in between
+     */
+    public static void runMigrations(SQLiteDatabase db, Migration[] migrations, int oldVersion,
+                                     int newVersion) {
+        int version = oldVersion;
+        for (Migration migration : migrations) {
+            if (version >= newVersion) {
+                break;
+            }
+            if (migration.mStartVersion != version) {
+                continue;
+            }
+            long start = System.nanoTime();
+            migration.migrate(db);
+            version = migration.mEndVersion;
+            Log.i(LOG_TAG, "Database upgraded from version " + migration.mStartVersion + " to "
+                    + version + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        if (version != newVersion) {
+            throw new IllegalStateException("No migration from version " + version + " to "
+                    + newVersion);
+        }
+    }
+}
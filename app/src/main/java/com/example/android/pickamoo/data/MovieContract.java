@@ -6,7 +6,8 @@ import android.provider.BaseColumns;
 
 /**
  * Created by Cristina on 11/06/2018.
- * Contract class. Defines table and column names for the favorite movies database.
+ * Contract class. Defines table and column names for the favorite movies database and for the
+ * offline catalog cache (list snapshots and movie details).
  */
 
 public class MovieContract {
@@ -31,6 +32,31 @@ public class MovieContract {
      * Possible path (appended to base content URI for possible URI's).
      */
     public static final String PATH_FAVORITES = "favorites";
+    public static final String PATH_LISTS = "lists";
+    public static final String PATH_DETAILS = "details";
+    public static final String PATH_CAST = "cast";
+    public static final String PATH_TRAILERS = "trailers";
+    public static final String PATH_REVIEWS = "reviews";
+    public static final String PATH_IMAGES = "images";
+    public static final String PATH_RECOMMENDATIONS = "recommendations";
+
+    /**
+     * Column shared by the detail tables. Movie ID from theMovieDb API.
+     * Type: INTEGER
+     */
+    public final static String COLUMN_MOVIE_ID = "movie_id";
+
+    /**
+     * Column shared by the child tables. Position of the row in its list, starting at 0.
+     * Type: INTEGER
+     */
+    public final static String COLUMN_POSITION = "position";
+
+    /**
+     * Column shared by the cache tables. Time when the data was downloaded, in milliseconds.
+     * Type: INTEGER
+     */
+    public final static String COLUMN_FETCHED_AT = "fetched_at";
 
     /**
      * Inner class that defines constant values for the favorite movies database table.
@@ -80,7 +106,7 @@ public class MovieContract {
         public final static String COLUMN_MOVIE_ID = "movie_id";
 
         /**
-         * Url of the movie poster.
+         * TheMovieDb file path of the movie poster.
          * Type: TEXT
          */
         public final static String COLUMN_MOVIE_POSTER = "poster_url";
@@ -140,4 +166,197 @@ public class MovieContract {
         }
 
     }
+
+    /**
+     * Inner class that defines the cached snapshots of the movie lists. Each entry represents a
+     * movie at a position of a page of a list (popular, top rated or a genre).
+     */
+    public static final class ListEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the table data in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_LISTS);
+
+        /**
+         * Name of the database table
+         */
+        public final static String TABLE_NAME = "list_snapshots";
+
+        /**
+         * Request URL of the list, without api_key and page parameters.
+         * Type: TEXT
+         */
+        public final static String COLUMN_CATEGORY = "category";
+
+        /**
+         * Page of the list.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PAGE = "page";
+
+        /**
+         * TheMovieDb file path of the movie poster.
+         * Type: TEXT
+         */
+        public final static String COLUMN_MOVIE_POSTER = "poster_url";
+
+        /**
+         * Movie title.
+         * Type: TEXT
+         */
+        public final static String COLUMN_MOVIE_TITLE = "title";
+
+        /**
+         * Movie vote average.
+         * Type: REAL
+         */
+        public final static String COLUMN_MOVIE_RATING = "vote_average";
+    }
+
+    /**
+     * Inner class that defines the cached details of the movies. Each entry represents a single
+     * movie with the same columns as {@link MovieEntry}, and its cast, trailers, reviews, images
+     * and recommendations are stored in the child tables.
+     */
+    public static final class DetailEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the table data in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_DETAILS);
+
+        /**
+         * Name of the database table
+         */
+        public final static String TABLE_NAME = "details";
+
+        /**
+         * Time when the details were last read, in milliseconds.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_LAST_ACCESSED = "last_accessed";
+
+        /**
+         * Builds a URI that adds the movie id to the end of the content URI path.
+         *
+         * @param movieId is the movie id
+         */
+        public static Uri buildUriWithMovieId(int movieId) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(Integer.toString(movieId))
+                    .build();
+        }
+    }
+
+    /**
+     * Inner class that defines the cached cast of the movies.
+     */
+    public static final class CastEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_CAST);
+
+        public final static String TABLE_NAME = "cast_members";
+
+        /**
+         * Name of the actor/actress.
+         * Type: TEXT
+         */
+        public final static String COLUMN_NAME = "name";
+
+        /**
+         * TheMovieDb file path of the actor/actress photo.
+         * Type: TEXT
+         */
+        public final static String COLUMN_PHOTO_URL = "photo_url";
+    }
+
+    /**
+     * Inner class that defines the cached trailers of the movies.
+     */
+    public static final class TrailerEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_TRAILERS);
+
+        public final static String TABLE_NAME = "trailers";
+
+        /**
+         * Youtube key of the video.
+         * Type: TEXT
+         */
+        public final static String COLUMN_VIDEO_KEY = "video_key";
+
+        /**
+         * Url of the video thumbnail.
+         * Type: TEXT
+         */
+        public final static String COLUMN_THUMBNAIL_URL = "thumbnail_url";
+    }
+
+    /**
+     * Inner class that defines the cached reviews of the movies.
+     */
+    public static final class ReviewEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_REVIEWS);
+
+        public final static String TABLE_NAME = "reviews";
+
+        /**
+         * Text of the review.
+         * Type: TEXT
+         */
+        public final static String COLUMN_CONTENT = "content";
+
+        /**
+         * Url of the full review.
+         * Type: TEXT
+         */
+        public final static String COLUMN_URL = "url";
+
+        /**
+         * Author of the review.
+         * Type: TEXT
+         */
+        public final static String COLUMN_AUTHOR = "author";
+    }
+
+    /**
+     * Inner class that defines the cached backdrops of the movies.
+     */
+    public static final class ImageEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_IMAGES);
+
+        public final static String TABLE_NAME = "images";
+
+        /**
+         * TheMovieDb file path of the image.
+         * Type: TEXT
+         */
+        public final static String COLUMN_IMAGE_URL = "image_url";
+    }
+
+    /**
+     * Inner class that defines the cached recommendations of the movies.
+     */
+    public static final class RecommendationEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                Uri.withAppendedPath(BASE_CONTENT_URI, PATH_RECOMMENDATIONS);
+
+        public final static String TABLE_NAME = "recommendations";
+
+        /**
+         * Movie ID of the recommended movie.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_RECOMMENDED_ID = "recommended_id";
+
+        /**
+         * TheMovieDb file path of the recommended movie poster.
+         * Type: TEXT
+         */
+        public final static String COLUMN_POSTER_URL = "poster_url";
+    }
 }
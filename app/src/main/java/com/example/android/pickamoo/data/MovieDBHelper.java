@@ -1,15 +1,26 @@
 package com.example.android.pickamoo.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.pickamoo.data.MovieContract.CastEntry;
+import com.example.android.pickamoo.data.MovieContract.DetailEntry;
+import com.example.android.pickamoo.data.MovieContract.ImageEntry;
+import com.example.android.pickamoo.data.MovieContract.ListEntry;
 import com.example.android.pickamoo.data.MovieContract.MovieEntry;
+import com.example.android.pickamoo.data.MovieContract.RecommendationEntry;
+import com.example.android.pickamoo.data.MovieContract.ReviewEntry;
+import com.example.android.pickamoo.data.MovieContract.TrailerEntry;
 
 
 /**
  * Created by Cristina on 11/06/2018.
  * Manages database creation and version management.
+ * The database uses write-ahead logging: writes go to a separate log, so the queries of the
+ * loaders run on their own connections and don't wait for a write (i.e. a cached list being
+ * stored) to finish.
  */
 public class MovieDBHelper extends SQLiteOpenHelper {
 
@@ -17,7 +28,23 @@ public class MovieDBHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "favorites.db";
 
     // Database version
-    private static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 4;
+
+    // With write-ahead logging a commit only has to wait for the log to be written, not synced.
+    // A crash can lose the last transactions but never corrupts the database
+    private static final String PRAGMA_SYNCHRONOUS = "PRAGMA synchronous = NORMAL";
+
+    // Size of the page cache of the connection, in KiB (negative values are KiB, not pages)
+    private static final String PRAGMA_CACHE_SIZE = "PRAGMA cache_size = -4096";
+
+    // Read the database file through memory mapping, up to 16 MB, instead of copying its pages
+    private static final String PRAGMA_MMAP_SIZE = "PRAGMA mmap_size = 16777216";
+
+    // Beginning of the image URLs saved by the versions before 4 (over http by the first versions
+    // of the app, then over https). The file path, which starts with "/", follows them
+    private static final String[] OLD_IMAGE_URL_PREFIXES = {
+            "http://image.tmdb.org/t/p/w342/", "http://image.tmdb.org/t/p/w500/",
+            "https://image.tmdb.org/t/p/w342/", "https://image.tmdb.org/t/p/w500/"};
 
     // SQL statement to create the products table
     private static final String SQL_CREATE_FAVORITES_TABLE =
@@ -35,12 +62,158 @@ public class MovieDBHelper extends SQLiteOpenHelper {
                     // This table can only contain one entry per movie id
                     " UNIQUE (" + MovieEntry.COLUMN_MOVIE_ID + ") ON CONFLICT REPLACE);";
 
+    // SQL statement to create the list snapshots table
+    private static final String SQL_CREATE_LISTS_TABLE =
+            "CREATE TABLE " + ListEntry.TABLE_NAME + " (" +
+                    ListEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    ListEntry.COLUMN_CATEGORY + " TEXT NOT NULL," +
+                    ListEntry.COLUMN_PAGE + " INTEGER NOT NULL," +
+                    MovieContract.COLUMN_POSITION + " INTEGER NOT NULL," +
+                    MovieContract.COLUMN_MOVIE_ID + " INTEGER NOT NULL," +
+                    ListEntry.COLUMN_MOVIE_POSTER + " TEXT," +
+                    ListEntry.COLUMN_MOVIE_TITLE + " TEXT," +
+                    ListEntry.COLUMN_MOVIE_RATING + " REAL," +
+                    MovieContract.COLUMN_FETCHED_AT + " INTEGER NOT NULL," +
+                    // Only one movie per position of a page
+                    " UNIQUE (" + ListEntry.COLUMN_CATEGORY + ", " + ListEntry.COLUMN_PAGE + ", "
+                    + MovieContract.COLUMN_POSITION + ") ON CONFLICT REPLACE);";
+
+    // SQL statement to create the movie details table
+    private static final String SQL_CREATE_DETAILS_TABLE =
+            "CREATE TABLE " + DetailEntry.TABLE_NAME + " (" +
+                    DetailEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    MovieEntry.COLUMN_MOVIE_ID + " INTEGER NOT NULL," +
+                    MovieEntry.COLUMN_MOVIE_POSTER + " TEXT," +
+                    MovieEntry.COLUMN_MOVIE_TITLE + " TEXT," +
+                    MovieEntry.COLUMN_MOVIE_DATE + " TEXT," +
+                    MovieEntry.COLUMN_MOVIE_COUNTRIES + " TEXT," +
+                    MovieEntry.COLUMN_MOVIE_GENRES + " TEXT," +
+                    MovieEntry.COLUMN_MOVIE_SYNOPSIS + " TEXT," +
+                    MovieEntry.COLUMN_MOVIE_DIRECTOR + " TEXT," +
+                    MovieEntry.COLUMN_MOVIE_RATING + " REAL NOT NULL DEFAULT -1.0," +
+                    MovieContract.COLUMN_FETCHED_AT + " INTEGER NOT NULL," +
+                    DetailEntry.COLUMN_LAST_ACCESSED + " INTEGER NOT NULL," +
+                    " UNIQUE (" + MovieEntry.COLUMN_MOVIE_ID + ") ON CONFLICT REPLACE);";
+
+    // SQL statements to create the child tables of the movie details
+    private static final String SQL_CREATE_CAST_TABLE =
+            "CREATE TABLE " + CastEntry.TABLE_NAME + " (" +
+                    CastEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    MovieContract.COLUMN_MOVIE_ID + " INTEGER NOT NULL," +
+                    MovieContract.COLUMN_POSITION + " INTEGER NOT NULL," +
+                    CastEntry.COLUMN_NAME + " TEXT," +
+                    CastEntry.COLUMN_PHOTO_URL + " TEXT);";
+
+    private static final String SQL_CREATE_TRAILERS_TABLE =
+            "CREATE TABLE " + TrailerEntry.TABLE_NAME + " (" +
+                    TrailerEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    MovieContract.COLUMN_MOVIE_ID + " INTEGER NOT NULL," +
+                    MovieContract.COLUMN_POSITION + " INTEGER NOT NULL," +
+                    TrailerEntry.COLUMN_VIDEO_KEY + " TEXT," +
+                    TrailerEntry.COLUMN_THUMBNAIL_URL + " TEXT);";
+
+    private static final String SQL_CREATE_REVIEWS_TABLE =
+            "CREATE TABLE " + ReviewEntry.TABLE_NAME + " (" +
+                    ReviewEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    MovieContract.COLUMN_MOVIE_ID + " INTEGER NOT NULL," +
+                    MovieContract.COLUMN_POSITION + " INTEGER NOT NULL," +
+                    ReviewEntry.COLUMN_CONTENT + " TEXT," +
+                    ReviewEntry.COLUMN_URL + " TEXT," +
+                    ReviewEntry.COLUMN_AUTHOR + " TEXT);";
+
+    private static final String SQL_CREATE_IMAGES_TABLE =
+            "CREATE TABLE " + ImageEntry.TABLE_NAME + " (" +
+                    ImageEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    MovieContract.COLUMN_MOVIE_ID + " INTEGER NOT NULL," +
+                    MovieContract.COLUMN_POSITION + " INTEGER NOT NULL," +
+                    ImageEntry.COLUMN_IMAGE_URL + " TEXT);";
+
+    private static final String SQL_CREATE_RECOMMENDATIONS_TABLE =
+            "CREATE TABLE " + RecommendationEntry.TABLE_NAME + " (" +
+                    RecommendationEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    MovieContract.COLUMN_MOVIE_ID + " INTEGER NOT NULL," +
+                    MovieContract.COLUMN_POSITION + " INTEGER NOT NULL," +
+                    RecommendationEntry.COLUMN_RECOMMENDED_ID + " INTEGER NOT NULL," +
+                    RecommendationEntry.COLUMN_POSTER_URL + " TEXT);";
+
+    // SQL statements to create the indices of the columns used by the selections and sort orders
+    // of the provider. The movie ids of the favorites and the details, and the category and page
+    // of the lists, are already indexed by their UNIQUE constraints
+    private static final String SQL_CREATE_LISTS_FETCHED_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + ListEntry.TABLE_NAME + "_fetched_at_index ON "
+                    + ListEntry.TABLE_NAME + " (" + MovieContract.COLUMN_FETCHED_AT + ");";
+
+    private static final String SQL_CREATE_DETAILS_ACCESSED_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + DetailEntry.TABLE_NAME + "_last_accessed_index ON "
+                    + DetailEntry.TABLE_NAME + " (" + DetailEntry.COLUMN_LAST_ACCESSED + ");";
+
+    // SQL statement to delete the child rows of a movie when its details are deleted
+    private static final String SQL_CREATE_DETAILS_DELETE_TRIGGER =
+            "CREATE TRIGGER delete_details_children AFTER DELETE ON " + DetailEntry.TABLE_NAME +
+                    " BEGIN " +
+                    deleteChildren(CastEntry.TABLE_NAME) +
+                    deleteChildren(TrailerEntry.TABLE_NAME) +
+                    deleteChildren(ReviewEntry.TABLE_NAME) +
+                    deleteChildren(ImageEntry.TABLE_NAME) +
+                    deleteChildren(RecommendationEntry.TABLE_NAME) +
+                    " END;";
+
+    /**
+     * Steps that upgrade the database one version at a time, sorted by version. A new version
+     * adds its step at the end; the old ones are never changed, since databases of every old
+     * version are still out there.
+     */
+    static final Migration[] MIGRATIONS = {
+            // Version 2: tables of the offline catalog cache
+            new Migration(1, 2) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    createCacheTables(db);
+                }
+            },
+            // Version 3: indices of the cache tables
+            new Migration(2, 3) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    createIndices(db);
+                }
+            },
+            // Version 4: the images are stored as file paths instead of URLs
+            new Migration(3, 4) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    convertImageUrlsToPaths(db);
+                }
+            }
+    };
+
     /**
      * Constructs a new instance of {@link MovieDBHelper}.
      * @param context of the app
      */
     public MovieDBHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Constructs a new instance of {@link MovieDBHelper} for the database with the given name
+     * (i.e. a test database).
+     */
+    MovieDBHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // Readers and the writer use different connections and don't block each other
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * This is called when the connection is opened, before the database is created or upgraded.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        executePragma(db, PRAGMA_SYNCHRONOUS);
+        executePragma(db, PRAGMA_CACHE_SIZE);
+        executePragma(db, PRAGMA_MMAP_SIZE);
     }
 
     /**
@@ -48,18 +221,102 @@ public class MovieDBHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // Execute the SQL statement
+        // Execute the SQL statements
         db.execSQL(SQL_CREATE_FAVORITES_TABLE);
-        }
+        createCacheTables(db);
+        createIndices(db);
+    }
 
     /**
-     * This method is called when the database needs to be upgraded. This database is only a cache
-     * for online data, so its upgrade policy is simply to discard the data and call through to
-     * onCreate to recreate the table.
+     * This method is called when the database needs to be upgraded. The steps of
+     * {@link #MIGRATIONS} change the tables in place, so the favorites and the cached data are
+     * kept. It runs in a single transaction: if a step fails nothing changes. The database is
+     * first opened from a background thread (see FavoritesStore), so the upgrade doesn't block
+     * the start of the app.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + MovieEntry.TABLE_NAME);
-        onCreate(db);
+        Migration.runMigrations(db, MIGRATIONS, oldVersion, newVersion);
+    }
+
+    /**
+     * Create the tables of the offline catalog cache (version 2).
+     */
+    static void createCacheTables(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_LISTS_TABLE);
+        db.execSQL(SQL_CREATE_DETAILS_TABLE);
+        db.execSQL(SQL_CREATE_CAST_TABLE);
+        db.execSQL(SQL_CREATE_TRAILERS_TABLE);
+        db.execSQL(SQL_CREATE_REVIEWS_TABLE);
+        db.execSQL(SQL_CREATE_IMAGES_TABLE);
+        db.execSQL(SQL_CREATE_RECOMMENDATIONS_TABLE);
+        db.execSQL(SQL_CREATE_DETAILS_DELETE_TRIGGER);
+    }
+
+    /**
+     * Create the indices of the cache tables (version 3). The rows of the child tables are always
+     * selected by movie id and sorted by position, which is also how the delete trigger finds
+     * them.
+     */
+    static void createIndices(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_LISTS_FETCHED_INDEX);
+        db.execSQL(SQL_CREATE_DETAILS_ACCESSED_INDEX);
+        db.execSQL(createChildIndex(CastEntry.TABLE_NAME));
+        db.execSQL(createChildIndex(TrailerEntry.TABLE_NAME));
+        db.execSQL(createChildIndex(ReviewEntry.TABLE_NAME));
+        db.execSQL(createChildIndex(ImageEntry.TABLE_NAME));
+        db.execSQL(createChildIndex(RecommendationEntry.TABLE_NAME));
+    }
+
+    /**
+     * Keep only the file path of the TheMovieDb images saved with their full URL, so their size
+     * is chosen when they are shown (version 4). Older versions saved the URLs of the w342 and
+     * w500 sizes; other links (i.e. the trailer thumbnails of YouTube) are not changed.
+     */
+    static void convertImageUrlsToPaths(SQLiteDatabase db) {
+        String[][] imageColumns = {
+                {MovieEntry.TABLE_NAME, MovieEntry.COLUMN_MOVIE_POSTER},
+                {ListEntry.TABLE_NAME, ListEntry.COLUMN_MOVIE_POSTER},
+                {CastEntry.TABLE_NAME, CastEntry.COLUMN_PHOTO_URL},
+                {ImageEntry.TABLE_NAME, ImageEntry.COLUMN_IMAGE_URL},
+                {RecommendationEntry.TABLE_NAME, RecommendationEntry.COLUMN_POSTER_URL}};
+        for (String[] imageColumn : imageColumns) {
+            String column = imageColumn[1];
+            for (String prefix : OLD_IMAGE_URL_PREFIXES) {
+                db.execSQL("UPDATE " + imageColumn[0] + " SET " + column + " = substr(" + column
+                        + ", ?) WHERE substr(" + column + ", 1, ?) = ?",
+                        new Object[]{prefix.length() + 1, prefix.length(), prefix});
+            }
+        }
+    }
+
+    /**
+     * Return the statement that indexes a child table of the details by movie id and position.
+     */
+    private static String createChildIndex(String tableName) {
+        return "CREATE INDEX IF NOT EXISTS " + tableName + "_movie_position_index ON " + tableName
+                + " (" + MovieContract.COLUMN_MOVIE_ID + ", " + MovieContract.COLUMN_POSITION
+                + ");";
+    }
+
+    /**
+     * Run a PRAGMA statement. Some of them return a row with the new value, which execSQL doesn't
+     * allow, so it is run as a query and the row is ignored.
+     */
+    private static void executePragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the statement of the details delete trigger that deletes the rows of a child table.
+     */
+    private static String deleteChildren(String tableName) {
+        return "DELETE FROM " + tableName + " WHERE " + MovieContract.COLUMN_MOVIE_ID + " = OLD."
+                + MovieContract.COLUMN_MOVIE_ID + "; ";
     }
 }
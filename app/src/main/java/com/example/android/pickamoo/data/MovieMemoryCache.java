@@ -0,0 +1,172 @@
+package com.example.android.pickamoo.data;
+
+import android.content.ComponentCallbacks2;
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+
+import com.example.android.pickamoo.Movie;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide in-memory cache of parsed {@link Movie} objects, keyed by TheMovieDb movie id and
+ * bounded by an estimate of their size in bytes. It is shared by the list and detail screens, so
+ * going back and forth between related movies doesn't download and parse them again.
+ * Entries expire after {@link #TIME_TO_LIVE} and the cache shrinks when the system is low on memory.
+ */
+
+public final class MovieMemoryCache {
+
+    /* Maximum estimated size of the cached movies (2 MB) */
+    private static final int MAX_SIZE = 2 * 1024 * 1024;
+
+    /* Time after which a cached movie is not served any more */
+    private static final long TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(30);
+
+    /* Rough size of an object header plus its fields, in bytes */
+    private static final int OBJECT_OVERHEAD = 32;
+
+    private static final MovieMemoryCache sInstance = new MovieMemoryCache();
+
+    /**
+     * A cached movie together with the time when it was stored.
+     */
+    private static final class Entry {
+        final Movie mMovie;
+        final boolean mDetailed;
+        final long mStoredAt;
+
+        Entry(Movie movie, boolean detailed) {
+            mMovie = movie;
+            mDetailed = detailed;
+            mStoredAt = SystemClock.elapsedRealtime();
+        }
+
+        boolean isExpired() {
+            return SystemClock.elapsedRealtime() - mStoredAt > TIME_TO_LIVE;
+        }
+    }
+
+    private final LruCache<Integer, Entry> mCache = new LruCache<Integer, Entry>(MAX_SIZE) {
+        @Override
+        protected int sizeOf(Integer key, Entry entry) {
+            return estimateSize(entry.mMovie);
+        }
+    };
+
+    private MovieMemoryCache() {
+    }
+
+    /**
+     * Get the unique instance of the cache
+     */
+    public static MovieMemoryCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Return the full details of the movie, or null if they aren't cached or have expired.
+     */
+    public Movie getDetails(int movieId) {
+        Entry entry = getEntry(movieId);
+        return entry != null && entry.mDetailed ? entry.mMovie : null;
+    }
+
+    /**
+     * Return whatever is cached about the movie (maybe only what the list shows), or null.
+     */
+    public Movie getSummary(int movieId) {
+        Entry entry = getEntry(movieId);
+        return entry != null ? entry.mMovie : null;
+    }
+
+    /**
+     * Store the full details of a movie.
+     */
+    public void putDetails(Movie movie) {
+        if (movie == null) return;
+        mCache.put(movie.getId(), new Entry(movie, true));
+    }
+
+    /**
+     * Store the movies of a list. Cached details are not replaced by the shorter list data.
+     */
+    public void putSummaries(List<Movie> movies) {
+        if (movies == null) return;
+        for (Movie movie : movies) {
+            Entry entry = mCache.get(movie.getId());
+            if (entry == null || !entry.mDetailed || entry.isExpired()) {
+                mCache.put(movie.getId(), new Entry(movie, false));
+            }
+        }
+    }
+
+    /**
+     * Release memory depending on the level given by
+     * {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // The process is likely to be killed soon, free everything
+            mCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            // Keep only the most recently used half
+            mCache.trimToSize(MAX_SIZE / 2);
+        }
+    }
+
+    private Entry getEntry(int movieId) {
+        Entry entry = mCache.get(movieId);
+        if (entry != null && entry.isExpired()) {
+            mCache.remove(movieId);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Return an estimate of the memory used by the movie, in bytes. Strings take two bytes per
+     * character plus the overhead of the objects.
+     */
+    private static int estimateSize(Movie movie) {
+        int size = OBJECT_OVERHEAD * 2;
+        size += sizeOf(movie.getTitle()) + sizeOf(movie.getReleaseDate())
+                + sizeOf(movie.getSynopsis()) + sizeOf(movie.getImageUrl())
+                + sizeOf(movie.getDirector()) + sizeOf(movie.getCountries())
+                + sizeOf(movie.getGenres());
+        List<String> images = movie.getImagesList();
+        if (images != null) {
+            for (String image : images) {
+                size += sizeOf(image);
+            }
+        }
+        size += sizeOfArrays(movie.getCast()) + sizeOfArrays(movie.getTrailers())
+                + sizeOfArrays(movie.getReviews());
+        List<Movie> recommendations = movie.getRecommendations();
+        if (recommendations != null) {
+            for (Movie recommendation : recommendations) {
+                size += estimateSize(recommendation);
+            }
+        }
+        return size;
+    }
+
+    private static int sizeOf(String value) {
+        return value == null ? 0 : OBJECT_OVERHEAD + value.length() * 2;
+    }
+
+    private static int sizeOfArrays(List<String[]> arrays) {
+        if (arrays == null) return 0;
+        int size = OBJECT_OVERHEAD;
+        for (String[] array : arrays) {
+            size += OBJECT_OVERHEAD;
+            for (String value : array) {
+                size += sizeOf(value);
+            }
+        }
+        return size;
+    }
+}
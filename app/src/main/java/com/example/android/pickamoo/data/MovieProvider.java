@@ -1,22 +1,46 @@
 package com.example.android.pickamoo.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.example.android.pickamoo.data.MovieContract.CastEntry;
+import com.example.android.pickamoo.data.MovieContract.DetailEntry;
+import com.example.android.pickamoo.data.MovieContract.ImageEntry;
+import com.example.android.pickamoo.data.MovieContract.ListEntry;
 import com.example.android.pickamoo.data.MovieContract.MovieEntry;
+import com.example.android.pickamoo.data.MovieContract.RecommendationEntry;
+import com.example.android.pickamoo.data.MovieContract.ReviewEntry;
+import com.example.android.pickamoo.data.MovieContract.TrailerEntry;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Created by Cristina on 11/06/2018.
  * {@link ContentProvider} for Pickamoo app.
+ * {@link #bulkInsert} and {@link #applyBatch} run all their writes in a single transaction and
+ * notify each changed URI and update the favorites once, after the transaction has been
+ * committed. Only bulkInsert reuses a compiled statement for its rows; applyBatch runs each
+ * operation through insert, update or delete. The transactions are not exclusive: with
+ * write-ahead logging the queries go on while they run.
  */
 public class MovieProvider extends ContentProvider {
 
@@ -28,12 +52,37 @@ public class MovieProvider extends ContentProvider {
     /** URI matcher code for the content URI for a single movie in the table */
     public static final int MOVIE_ID = 101;
 
+    /** URI matcher codes for the content URIs of the offline catalog cache tables */
+    public static final int LISTS = 200;
+    public static final int DETAILS = 300;
+    public static final int DETAIL_ID = 301;
+    public static final int CAST = 400;
+    public static final int TRAILERS = 500;
+    public static final int REVIEWS = 600;
+    public static final int IMAGES = 700;
+    public static final int RECOMMENDATIONS = 800;
+
     /** URI matcher object to match a content URI to a corresponding code */
     private static final UriMatcher sUriMatcher = buildUriMatcher();
 
     /** Database helper that will provide access to the database */
     private MovieDBHelper mDbHelper;
 
+    /**
+     * Side effects of the writes made inside a batch. They are applied once its transaction is
+     * committed, and dropped if it is rolled back.
+     */
+    private static final class PendingChanges {
+        /* URIs to notify, each one once */
+        final Set<Uri> mUris = new LinkedHashSet<>();
+        /* Movies added to (true) or removed from (false) the favorites, in order */
+        final List<Integer> mFavoriteIds = new ArrayList<>();
+        final List<Boolean> mFavoriteAdded = new ArrayList<>();
+    }
+
+    /** Changes of the batch that is running in the current thread, or null */
+    private final ThreadLocal<PendingChanges> mPendingChanges = new ThreadLocal<>();
+
     /**
      * Creates the UriMatcher.
      * @return A UriMatcher that correctly matches the constants for MOVIES and MOVIE_ID
@@ -52,6 +101,19 @@ public class MovieProvider extends ContentProvider {
         matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_FAVORITES + "/#",
                 MOVIE_ID);
 
+        /* URIs of the offline catalog cache. The details of a single movie are accessed by its
+        movie id, the rest of the tables only with a selection. */
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_LISTS, LISTS);
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_DETAILS, DETAILS);
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_DETAILS + "/#",
+                DETAIL_ID);
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_CAST, CAST);
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_TRAILERS, TRAILERS);
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_REVIEWS, REVIEWS);
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_IMAGES, IMAGES);
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_RECOMMENDATIONS,
+                RECOMMENDATIONS);
+
         return matcher;
     }
 
@@ -79,7 +141,8 @@ public class MovieProvider extends ContentProvider {
         Cursor cursor;
 
         // Figure out if the URI matcher can match the URI to a specific code
-        switch (sUriMatcher.match(uri)) {
+        int match = sUriMatcher.match(uri);
+        switch (match) {
             case MOVIES:
                 // Query the whole table
                 cursor = database.query(MovieEntry.TABLE_NAME, projection, selection, selectionArgs,
@@ -96,6 +159,24 @@ public class MovieProvider extends ContentProvider {
                 cursor = database.query(MovieEntry.TABLE_NAME, projection, selection, selectionArgs,
                         null, null, sortOrder);
                 break;
+            case DETAIL_ID:
+                // Return the cached details of a particular movie given its id
+                selection = DetailEntry.COLUMN_MOVIE_ID + "=?";
+                selectionArgs = new String[] {uri.getLastPathSegment()};
+                cursor = database.query(DetailEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder);
+                break;
+            case LISTS:
+            case DETAILS:
+            case CAST:
+            case TRAILERS:
+            case REVIEWS:
+            case IMAGES:
+            case RECOMMENDATIONS:
+                // Query a cache table with the given selection
+                cursor = database.query(getCacheTableName(match), projection, selection,
+                        selectionArgs, null, null, sortOrder);
+                break;
             default:
                 throw new UnsupportedOperationException("Cannot query unknown URI " + uri);
         }
@@ -110,7 +191,8 @@ public class MovieProvider extends ContentProvider {
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
-        switch (sUriMatcher.match(uri)) {
+        int match = sUriMatcher.match(uri);
+        switch (match) {
             case MOVIES:
                 // Get the data repository in write mode
                 SQLiteDatabase db = mDbHelper.getWritableDatabase();
@@ -124,11 +206,33 @@ public class MovieProvider extends ContentProvider {
                     return null;
                 }
 
+                // Keep the in-memory index of favorites up to date
+                Integer movieId = values.getAsInteger(MovieEntry.COLUMN_MOVIE_ID);
+                if (movieId != null) {
+                    onFavoriteChanged(movieId, true);
+                }
+
                 // Notify all listeners that the data has changed for the content URI
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyChange(uri);
 
                 // Return the URI with the ID of the inserted row appended to its end
                 return ContentUris.withAppendedId(uri, id);
+            case LISTS:
+            case DETAILS:
+            case CAST:
+            case TRAILERS:
+            case REVIEWS:
+            case IMAGES:
+            case RECOMMENDATIONS:
+                // Insert a row in a cache table
+                long rowId = mDbHelper.getWritableDatabase()
+                        .insert(getCacheTableName(match), null, values);
+                if (rowId == -1) {
+                    Log.e(LOG_TAG, "Failed to insert row for " + uri);
+                    return null;
+                }
+                notifyChange(uri);
+                return ContentUris.withAppendedId(uri, rowId);
             default:
                 throw new UnsupportedOperationException("Insertion is not supported for " + uri);
         }
@@ -145,12 +249,33 @@ public class MovieProvider extends ContentProvider {
         // Track the number of rows that were deleted
         int rowsDeleted;
 
-        switch (sUriMatcher.match(uri)) {
+        int match = sUriMatcher.match(uri);
+        switch (match) {
             case MOVIE_ID:
                 // Delete a single row given by the movie ID in the URI
                 selection = MovieEntry.COLUMN_MOVIE_ID + "=?";
                 selectionArgs = new String[] {uri.getLastPathSegment()};
                 rowsDeleted = database.delete(MovieEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    // Keep the in-memory index of favorites up to date
+                    onFavoriteChanged(Integer.parseInt(uri.getLastPathSegment()), false);
+                }
+                break;
+            case DETAIL_ID:
+                // Delete the cached details of a movie (the trigger deletes its child rows)
+                selection = DetailEntry.COLUMN_MOVIE_ID + "=?";
+                selectionArgs = new String[] {uri.getLastPathSegment()};
+                rowsDeleted = database.delete(DetailEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case LISTS:
+            case DETAILS:
+            case CAST:
+            case TRAILERS:
+            case REVIEWS:
+            case IMAGES:
+            case RECOMMENDATIONS:
+                // Delete the rows of a cache table that match the selection
+                rowsDeleted = database.delete(getCacheTableName(match), selection, selectionArgs);
                 break;
             default:
                 throw new UnsupportedOperationException("Deletion is not supported for " + uri);
@@ -159,17 +284,184 @@ public class MovieProvider extends ContentProvider {
         // If 1 or more rows were deleted, then notify all listeners that the data at the
         // given URI has changed
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         // Return the number of rows deleted
         return rowsDeleted;
     }
 
+    /**
+     * Update the data at the given selection and selection arguments with the given values (i.e.
+     * to refresh the time a cached row was downloaded without writing it again).
+     */
     @Override
     public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
                       @Nullable String[] selectionArgs) {
-        throw new RuntimeException("Update is not supported in Pickamoo.");
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        // Track the number of rows that were updated
+        int rowsUpdated;
+
+        int match = sUriMatcher.match(uri);
+        switch (match) {
+            case MOVIES:
+                rowsUpdated = database.update(MovieEntry.TABLE_NAME, values, selection,
+                        selectionArgs);
+                break;
+            case MOVIE_ID:
+                // Update a single row given by the movie ID in the URI
+                selection = MovieEntry.COLUMN_MOVIE_ID + "=?";
+                selectionArgs = new String[] {uri.getLastPathSegment()};
+                rowsUpdated = database.update(MovieEntry.TABLE_NAME, values, selection,
+                        selectionArgs);
+                break;
+            case DETAIL_ID:
+                // Update the cached details of a movie
+                selection = DetailEntry.COLUMN_MOVIE_ID + "=?";
+                selectionArgs = new String[] {uri.getLastPathSegment()};
+                rowsUpdated = database.update(DetailEntry.TABLE_NAME, values, selection,
+                        selectionArgs);
+                break;
+            case LISTS:
+            case DETAILS:
+            case CAST:
+            case TRAILERS:
+            case REVIEWS:
+            case IMAGES:
+            case RECOMMENDATIONS:
+                // Update the rows of a cache table that match the selection
+                rowsUpdated = database.update(getCacheTableName(match), values, selection,
+                        selectionArgs);
+                break;
+            default:
+                throw new UnsupportedOperationException("Update is not supported for " + uri);
+        }
+
+        // If 1 or more rows were updated, then notify all listeners that the data at the
+        // given URI has changed
+        if (rowsUpdated != 0) {
+            notifyChange(uri);
+        }
+
+        // Return the number of rows updated
+        return rowsUpdated;
+    }
+
+    /**
+     * Insert many rows in the table of the given URI in a single transaction. The INSERT
+     * statement is compiled once and reused for every row with the same columns as the first
+     * one. Listeners are notified once at the end.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        int match = sUriMatcher.match(uri);
+        String tableName;
+        switch (match) {
+            case MOVIES:
+                tableName = MovieEntry.TABLE_NAME;
+                break;
+            case LISTS:
+            case DETAILS:
+            case CAST:
+            case TRAILERS:
+            case REVIEWS:
+            case IMAGES:
+            case RECOMMENDATIONS:
+                tableName = getCacheTableName(match);
+                break;
+            default:
+                throw new UnsupportedOperationException("Insertion is not supported for " + uri);
+        }
+        if (values.length == 0) {
+            return 0;
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        String[] columns = values[0].keySet().toArray(new String[0]);
+        List<Integer> favoriteIds = new ArrayList<>();
+        int rowsInserted = 0;
+        database.beginTransactionNonExclusive();
+        SQLiteStatement statement = null;
+        try {
+            statement = database.compileStatement(buildInsertSql(tableName, columns));
+            for (ContentValues rowValues : values) {
+                long id;
+                if (hasColumns(rowValues, columns)) {
+                    statement.clearBindings();
+                    for (int i = 0; i < columns.length; i++) {
+                        DatabaseUtils.bindObjectToProgram(statement, i + 1,
+                                rowValues.get(columns[i]));
+                    }
+                    try {
+                        id = statement.executeInsert();
+                    } catch (SQLException e) {
+                        Log.e(LOG_TAG, "Failed to insert row for " + uri, e);
+                        id = -1;
+                    }
+                } else {
+                    // A row with other columns, it needs its own statement
+                    id = database.insert(tableName, null, rowValues);
+                }
+                if (id == -1) {
+                    Log.e(LOG_TAG, "Failed to insert row for " + uri);
+                    continue;
+                }
+                rowsInserted++;
+                if (match == MOVIES) {
+                    Integer movieId = rowValues.getAsInteger(MovieEntry.COLUMN_MOVIE_ID);
+                    if (movieId != null) {
+                        favoriteIds.add(movieId);
+                    }
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            if (statement != null) {
+                statement.close();
+            }
+            database.endTransaction();
+        }
+
+        // The rows are committed, now keep the favorites up to date and notify the listeners
+        onFavoritesChanged(favoriteIds, Collections.nCopies(favoriteIds.size(), true));
+        if (rowsInserted != 0) {
+            notifyChange(uri);
+        }
+        return rowsInserted;
+    }
+
+    /**
+     * Apply the operations in a single transaction: either all of them are stored or none is.
+     * Each operation still runs its own statement (see {@link #insert}, {@link #update} and
+     * {@link #delete}); what the batch saves is the commit of every operation, and the
+     * notifications: each changed URI is notified once, after the transaction has been committed.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        PendingChanges outerChanges = mPendingChanges.get();
+        PendingChanges changes = new PendingChanges();
+        mPendingChanges.set(changes);
+        ContentProviderResult[] results;
+        database.beginTransactionNonExclusive();
+        try {
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mPendingChanges.set(outerChanges);
+        }
+
+        // The transaction is committed (or belongs to an outer batch, which gets the changes)
+        onFavoritesChanged(changes.mFavoriteIds, changes.mFavoriteAdded);
+        for (Uri uri : changes.mUris) {
+            notifyChange(uri);
+        }
+        return results;
     }
 
     /**
@@ -184,8 +476,114 @@ public class MovieProvider extends ContentProvider {
                 return MovieEntry.CONTENT_LIST_TYPE;
             case MOVIE_ID:
                 return MovieEntry.CONTENT_ITEM_TYPE;
+            case DETAIL_ID:
+                return ContentResolver.CURSOR_ITEM_BASE_TYPE + "/"
+                        + MovieContract.CONTENT_AUTHORITY + "/" + MovieContract.PATH_DETAILS;
+            case LISTS:
+            case DETAILS:
+            case CAST:
+            case TRAILERS:
+            case REVIEWS:
+            case IMAGES:
+            case RECOMMENDATIONS:
+                return ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                        + MovieContract.CONTENT_AUTHORITY + "/" + uri.getLastPathSegment();
             default:
                 throw new UnsupportedOperationException("Unknown URI " + uri + " with match " + match);
         }
     }
+
+    /**
+     * Notify the listeners of the given URI, or wait until the end of the batch that is running.
+     */
+    private void notifyChange(Uri uri) {
+        PendingChanges changes = mPendingChanges.get();
+        if (changes != null) {
+            changes.mUris.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Keep the in-memory index of favorites up to date, or wait until the end of the batch that is
+     * running.
+     */
+    private void onFavoriteChanged(int movieId, boolean added) {
+        onFavoritesChanged(Collections.singletonList(movieId), Collections.singletonList(added));
+    }
+
+    /**
+     * Keep the in-memory index of favorites up to date with several changes at once, so the set
+     * is copied and its listeners are notified only once, or wait until the end of the batch that
+     * is running.
+     *
+     * @param movieIds are the movies added or removed, in order
+     * @param added    tells, for each movie, if it was added (true) or removed (false)
+     */
+    private void onFavoritesChanged(List<Integer> movieIds, List<Boolean> added) {
+        PendingChanges changes = mPendingChanges.get();
+        if (changes != null) {
+            changes.mFavoriteIds.addAll(movieIds);
+            changes.mFavoriteAdded.addAll(added);
+        } else {
+            FavoritesStore.getInstance().applyChanges(movieIds, added);
+        }
+    }
+
+    /**
+     * Return the SQL of an INSERT statement for the given columns, with one parameter per column.
+     */
+    private static String buildInsertSql(String tableName, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) sql.append(',');
+            sql.append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ",?" : "?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Return true if the values have exactly the given columns.
+     */
+    private static boolean hasColumns(ContentValues values, String[] columns) {
+        if (values.size() != columns.length) {
+            return false;
+        }
+        for (String column : columns) {
+            if (!values.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the name of the cache table for the given URI matcher code.
+     */
+    private static String getCacheTableName(int match) {
+        switch (match) {
+            case LISTS:
+                return ListEntry.TABLE_NAME;
+            case DETAILS:
+            case DETAIL_ID:
+                return DetailEntry.TABLE_NAME;
+            case CAST:
+                return CastEntry.TABLE_NAME;
+            case TRAILERS:
+                return TrailerEntry.TABLE_NAME;
+            case REVIEWS:
+                return ReviewEntry.TABLE_NAME;
+            case IMAGES:
+                return ImageEntry.TABLE_NAME;
+            case RECOMMENDATIONS:
+                return RecommendationEntry.TABLE_NAME;
+            default:
+                throw new IllegalArgumentException("Not a cache table code: " + match);
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package com.example.android.pickamoo.loaders;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines how long cached data of each category is considered fresh. The loaders deliver cached
+ * data right away and, once it is older than its maximum age, revalidate it with the network in
+ * the background.
+ */
+
+public final class CachePolicy {
+
+    /**
+     * Categories of data with different refresh rates.
+     */
+    public enum Category {
+        POPULAR,
+        TOP_RATED,
+        GENRE,
+        DETAILS
+    }
+
+    /* Paths of the list request URLs */
+    private static final String POPULAR_PATH = "/movie/popular";
+    private static final String TOP_RATED_PATH = "/movie/top_rated";
+    private static final String DISCOVER_PATH = "/discover/movie";
+
+    /* Maximum age of the data of each category, in milliseconds */
+    private static final Map<Category, Long> sMaxAges = new EnumMap<>(Category.class);
+
+    static {
+        // Popularity changes every day, top rated movies and genres much less often
+        sMaxAges.put(Category.POPULAR, TimeUnit.HOURS.toMillis(1));
+        sMaxAges.put(Category.TOP_RATED, TimeUnit.HOURS.toMillis(24));
+        sMaxAges.put(Category.GENRE, TimeUnit.HOURS.toMillis(6));
+        sMaxAges.put(Category.DETAILS, TimeUnit.HOURS.toMillis(6));
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link CachePolicy}
+     * object. This class is only meant to hold static methods.
+     */
+    private CachePolicy() {
+    }
+
+    /**
+     * Change the maximum age of the data of a category.
+     */
+    public static synchronized void setMaxAge(Category category, long maxAgeMillis) {
+        sMaxAges.put(category, maxAgeMillis);
+    }
+
+    /**
+     * Return the maximum age of the data of a category, in milliseconds.
+     */
+    public static synchronized long getMaxAge(Category category) {
+        return sMaxAges.get(category);
+    }
+
+    /**
+     * Return the category of a list request URL.
+     */
+    public static Category getListCategory(String requestUrl) {
+        if (requestUrl.contains(POPULAR_PATH)) {
+            return Category.POPULAR;
+        } else if (requestUrl.contains(TOP_RATED_PATH)) {
+            return Category.TOP_RATED;
+        } else if (requestUrl.contains(DISCOVER_PATH)) {
+            return Category.GENRE;
+        }
+        // Unknown lists are refreshed as often as the popular movies
+        return Category.POPULAR;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.android.pickamoo.loaders;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.example.android.pickamoo.DetailActivity;
+import com.example.android.pickamoo.Movie;
+import com.example.android.pickamoo.MovieAdapter;
+import com.example.android.pickamoo.data.CatalogCache;
+import com.example.android.pickamoo.data.CatalogCache.Snapshot;
+import com.example.android.pickamoo.data.MovieMemoryCache;
+import com.example.android.pickamoo.utilities.QueryUtils;
+import com.example.android.pickamoo.utilities.RequestScheduler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads in advance the details of the first movies visible in the grid, so they are already in
+ * the caches when the user taps one of them. It only works while the grid is idle and the network
+ * is unmetered, runs its requests with {@link RequestScheduler.Priority#PREFETCH} priority and
+ * stops once the bytes prefetched in this session reach {@link #MAX_BYTES_PER_SESSION}. When the
+ * user opens a movie that is being prefetched, the detail screen joins the running request.
+ */
+
+public class DetailsPrefetcher {
+
+    /* Number of visible movies whose details are prefetched */
+    private static final int MAX_PREFETCHED_MOVIES = 4;
+
+    /* Time the grid has to stay idle before prefetching starts, in milliseconds */
+    private static final long IDLE_DELAY = 500;
+
+    /* Maximum number of bytes prefetched while the app process lives (2 MB) */
+    private static final long MAX_BYTES_PER_SESSION = 2 * 1024 * 1024;
+
+    /* Bytes prefetched so far in this session */
+    private static final AtomicLong sBytesPrefetched = new AtomicLong();
+
+    private final Context mContext;
+    private final RecyclerView mRecyclerView;
+    private final GridLayoutManager mLayoutManager;
+    private final MovieAdapter mAdapter;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private boolean isEnabled = true;
+
+    private final Runnable mPrefetchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            prefetchVisibleMovies();
+        }
+    };
+
+    public DetailsPrefetcher(Context context, RecyclerView recyclerView,
+                             GridLayoutManager layoutManager, MovieAdapter adapter) {
+        mContext = context.getApplicationContext();
+        mRecyclerView = recyclerView;
+        mLayoutManager = layoutManager;
+        mAdapter = adapter;
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    schedule();
+                } else {
+                    // The visible movies are changing, wait until the grid stops
+                    mMainHandler.removeCallbacks(mPrefetchRunnable);
+                }
+            }
+        });
+    }
+
+    /**
+     * Enable or disable prefetching (i.e. it is useless for the favorites, which are stored).
+     */
+    public void setEnabled(boolean enabled) {
+        isEnabled = enabled;
+        if (!enabled) {
+            cancel();
+        }
+    }
+
+    /**
+     * Prefetch the visible movies once the grid has been idle for a moment. Call it when new data
+     * is displayed.
+     */
+    public void schedule() {
+        mMainHandler.removeCallbacks(mPrefetchRunnable);
+        if (isEnabled) {
+            mMainHandler.postDelayed(mPrefetchRunnable, IDLE_DELAY);
+        }
+    }
+
+    /**
+     * Drop the prefetches that nobody else is waiting for. Call it when the user starts a request,
+     * so the scheduler is free for it.
+     */
+    public void cancel() {
+        mMainHandler.removeCallbacks(mPrefetchRunnable);
+        RequestScheduler.getInstance().cancel(this);
+    }
+
+    /**
+     * Drop the prefetches that nobody else is waiting for, except the one of the given movie.
+     * Call it when the user opens a movie: its detail screen joins the prefetch if it is still
+     * running, instead of downloading the details again.
+     */
+    public void cancelExcept(int movieId) {
+        mMainHandler.removeCallbacks(mPrefetchRunnable);
+        String url = DetailActivity.buildRequestUrl(mContext, movieId);
+        RequestScheduler.getInstance().cancelExcept(this, QueryUtils.getRequestKey(url));
+    }
+
+    private void prefetchVisibleMovies() {
+        if (!isEnabled || mRecyclerView.getScrollState() != RecyclerView.SCROLL_STATE_IDLE
+                || !canPrefetch()) {
+            return;
+        }
+        int first = mLayoutManager.findFirstCompletelyVisibleItemPosition();
+        int last = mLayoutManager.findLastCompletelyVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return;
+        }
+        last = Math.min(last, Math.min(first + MAX_PREFETCHED_MOVIES, mAdapter.getItemCount())
+                - 1);
+        for (int position = first; position <= last; position++) {
+            final int movieId = mAdapter.getItem(position).getId();
+            if (MovieMemoryCache.getInstance().getDetails(movieId) != null) {
+                continue;
+            }
+            // Use the key of the detail screen request, so it joins this one if it is opened
+            final String url = DetailActivity.buildRequestUrl(mContext, movieId);
+            RequestScheduler.getInstance().submit(QueryUtils.getRequestKey(url),
+                    RequestScheduler.Priority.PREFETCH, this,
+                    new Callable<Movie>() {
+                        @Override
+                        public Movie call() {
+                            return prefetch(movieId, url);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Put the details of the movie in the memory cache, reading them from the offline catalog if
+     * they are recent enough or downloading them otherwise, and return them. Runs in a thread of
+     * the {@link RequestScheduler}.
+     */
+    private Movie prefetch(int movieId, String url) {
+        Snapshot<Movie> snapshot = CatalogCache.readDetails(mContext, movieId);
+        long maxAge = CachePolicy.getMaxAge(CachePolicy.Category.DETAILS);
+        if (snapshot != null && !snapshot.isOlderThan(maxAge)) {
+            MovieMemoryCache.getInstance().putDetails(snapshot.data);
+            return snapshot.data;
+        }
+        // The request runs in this same thread, so its bytes are counted here
+        long bytesBefore = QueryUtils.getBytesReceived();
+        // A prefetch is never retried, it isn't worth adding load to a failing API
+        Movie movie = QueryUtils.fetchMovieData(url, null, RequestScheduler.Priority.PREFETCH,
+                null);
+        sBytesPrefetched.addAndGet(QueryUtils.getBytesReceived() - bytesBefore);
+        if (movie != null) {
+            CatalogCache.writeDetails(mContext, movie);
+            MovieMemoryCache.getInstance().putDetails(movie);
+        }
+        return movie;
+    }
+
+    /**
+     * Return true if the budget isn't exhausted, the API isn't failing and the device is on an
+     * unmetered network.
+     */
+    private boolean canPrefetch() {
+        if (sBytesPrefetched.get() >= MAX_BYTES_PER_SESSION
+                || QueryUtils.getCircuitBreaker().isOpen()) {
+            return false;
+        }
+        ConnectivityManager cm =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return false;
+        }
+        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+        return activeNetwork != null && activeNetwork.isConnected()
+                && !cm.isActiveNetworkMetered();
+    }
+}
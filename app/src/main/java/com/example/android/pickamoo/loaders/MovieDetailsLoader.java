@@ -2,30 +2,168 @@ package com.example.android.pickamoo.loaders;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.content.AsyncTaskLoader;
 
+import com.example.android.pickamoo.DetailActivity;
 import com.example.android.pickamoo.Movie;
+import com.example.android.pickamoo.data.CatalogCache;
+import com.example.android.pickamoo.data.CatalogCache.Snapshot;
 import com.example.android.pickamoo.data.MovieContract.MovieEntry;
+import com.example.android.pickamoo.data.MovieMemoryCache;
+import com.example.android.pickamoo.utilities.MovieJsonParser;
 import com.example.android.pickamoo.utilities.QueryUtils;
+import com.example.android.pickamoo.utilities.RequestScheduler;
+
+import java.util.concurrent.Callable;
 
 /**
  * Created by Cristina on 02/06/2018.
  * This class loads the details of a movie by using an AsyncTask to perform the network request to
- * the given URL.
+ * the given URL. Details in the offline catalog cache are delivered right away and, if they are
+ * older than {@link CachePolicy.Category#DETAILS} allows, revalidated with the network in the
+ * background. Without network, the cached details (or else the favorites database) are used.
+ * The sections that were not appended to the request can be loaded later, one by one, with
+ * {@link #loadSection(int)}.
  */
 public class MovieDetailsLoader extends AsyncTaskLoader<Movie> {
 
+    /**
+     * Interface to be notified on the main thread each time a section of the details has been
+     * downloaded, before the whole movie is delivered.
+     */
+    public interface OnSectionLoadedListener {
+        /**
+         * @param section is one of the SECTION_ constants of {@link MovieJsonParser}
+         * @param movie   is the movie being downloaded, with the given section complete
+         */
+        void onSectionLoaded(int section, Movie movie);
+    }
+
     private String mUrl;
 
-    /* Member variable that will store the Movie data */
-    private Movie mMovie;
+    /* Id of the movie to load */
+    private int mMovieId;
+
+    /* Member variable that will store the Movie data. It is replaced when a section is loaded */
+    private volatile Movie mMovie;
+
+    /* Guards the replacements of mMovie */
+    private final Object mMovieLock = new Object();
+
+    /* True if the delivered details came from the cache and are too old */
+    private volatile boolean mNeedsRevalidation;
+
+    /* True while the details are being downloaded again after delivering the cached ones */
+    private volatile boolean mRevalidating;
 
-    public MovieDetailsLoader(@NonNull Context context, String url) {
+    private OnSectionLoadedListener mSectionListener;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Posts each parsed section to the main thread */
+    private final MovieJsonParser.OnSectionParsedListener mSectionParsedListener =
+            new MovieJsonParser.OnSectionParsedListener() {
+                @Override
+                public void onSectionParsed(int section, Movie movie) {
+                    postSection(section, movie);
+                }
+            };
+
+    public MovieDetailsLoader(@NonNull Context context, String url, int movieId) {
         super(context);
         mUrl = url;
+        mMovieId = movieId;
+    }
+
+    /**
+     * Set the listener for the sections of the details, or null to remove it.
+     */
+    public void setOnSectionLoadedListener(OnSectionLoadedListener listener) {
+        mSectionListener = listener;
+    }
+
+    /**
+     * Download a section of the details that the delivered movie doesn't have yet. When it is
+     * ready, the delivered movie is replaced by a copy that includes it, which is cached and given
+     * to the {@link OnSectionLoadedListener}. Nothing happens if no movie has been delivered or the
+     * download fails.
+     *
+     * @param section is one of the SECTION_ constants of {@link MovieJsonParser}, except the
+     *                header
+     */
+    public void loadSection(final int section) {
+        Movie movie = mMovie;
+        if (movie == null) {
+            return;
+        }
+        if (movie.isSectionLoaded(section)) {
+            postSection(section, movie);
+            return;
+        }
+        final String url = DetailActivity.buildSectionUrl(getContext(), mMovieId, section);
+        final int movieId = mMovieId;
+        // Other loaders of the same movie (i.e. a screen recreated or opened again from the back
+        // stack) can join this request, so it only returns the section and each loader adds it
+        // to its own movie
+        RequestScheduler.getInstance().submit(QueryUtils.getRequestKey(url),
+                RequestScheduler.Priority.USER_VISIBLE, this, new Callable<Movie>() {
+                    @Override
+                    public Movie call() {
+                        // Another screen of the same movie may have loaded it already
+                        Movie sectionMovie = MovieMemoryCache.getInstance().getDetails(movieId);
+                        if (sectionMovie != null && sectionMovie.isSectionLoaded(section)) {
+                            return sectionMovie;
+                        }
+                        return QueryUtils.fetchMovieSection(url, section,
+                                RequestScheduler.Priority.USER_VISIBLE, null);
+                    }
+                }, new RequestScheduler.Callback<Movie>() {
+                    @Override
+                    public void onResult(Movie sectionMovie) {
+                        addSection(section, sectionMovie);
+                    }
+                });
+    }
+
+    /**
+     * Replace the delivered movie by a copy that includes the downloaded section, cache it and
+     * give it to the listener. Nothing happens if the download failed or the loader was reset.
+     */
+    private void addSection(int section, Movie sectionMovie) {
+        if (sectionMovie == null) {
+            return;
+        }
+        Movie movie;
+        synchronized (mMovieLock) {
+            if (mMovie == null) {
+                // The loader was reset meanwhile
+                return;
+            }
+            movie = mMovie.withSectionsOf(sectionMovie);
+            mMovie = movie;
+        }
+        // Keep the section for offline use and for the next visits
+        CatalogCache.writeDetails(getContext(), movie);
+        MovieMemoryCache.getInstance().putDetails(movie);
+        postSection(section, movie);
+    }
+
+    /**
+     * Give a loaded section to the listener on the main thread.
+     */
+    private void postSection(final int section, final Movie movie) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mSectionListener != null && isStarted()) {
+                    mSectionListener.onSectionLoaded(section, movie);
+                }
+            }
+        });
     }
 
     /*
@@ -34,7 +172,7 @@ public class MovieDetailsLoader extends AsyncTaskLoader<Movie> {
     @Override
     protected void onStartLoading() {
         if (mMovie != null) {
-            deliverResult(mMovie);
+            super.deliverResult(mMovie);
         } else {
             forceLoad();
         }
@@ -46,59 +184,161 @@ public class MovieDetailsLoader extends AsyncTaskLoader<Movie> {
         if (mUrl == null) {
             return null;
         }
-        Movie movie = new Movie();
-        if (mUrl.contains(MovieEntry.CONTENT_URI.toString())) {
-            // Data is in database
-            String[] projection = {
-                    MovieEntry._ID,
-                    MovieEntry.COLUMN_MOVIE_ID,
-                    MovieEntry.COLUMN_MOVIE_POSTER,
-                    MovieEntry.COLUMN_MOVIE_TITLE,
-                    MovieEntry.COLUMN_MOVIE_DATE,
-                    MovieEntry.COLUMN_MOVIE_COUNTRIES,
-                    MovieEntry.COLUMN_MOVIE_GENRES,
-                    MovieEntry.COLUMN_MOVIE_SYNOPSIS,
-                    MovieEntry.COLUMN_MOVIE_DIRECTOR,
-                    MovieEntry.COLUMN_MOVIE_RATING
-            };
-            Cursor cursor = getContext().getContentResolver().query(Uri.parse(mUrl), projection,
-                    null, null, null, null);
-            if (cursor != null) {
-                cursor.moveToFirst();
-                int idColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_ID);
-                movie.setId(cursor.getInt(idColumnIndex));
-                int posterColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_POSTER);
-                movie.setImageUrl(cursor.getString(posterColumnIndex));
-                int titleColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_TITLE);
-                movie.setTitle(cursor.getString(titleColumnIndex));
-                int dateColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_DATE);
-                movie.setReleaseDate(cursor.getString(dateColumnIndex));
-                int countriesColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_COUNTRIES);
-                movie.setCountries(cursor.getString(countriesColumnIndex));
-                int genresColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_GENRES);
-                movie.setGenres(cursor.getString(genresColumnIndex));
-                int synopsisColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_SYNOPSIS);
-                movie.setSynopsis(cursor.getString(synopsisColumnIndex));
-                int directorColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_DIRECTOR);
-                movie.setDirector(cursor.getString(directorColumnIndex));
-                int ratingColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_RATING);
-                movie.setVoteAverage(cursor.getDouble(ratingColumnIndex));
-                cursor.close();
+        if (mRevalidating) {
+            return revalidate();
+        }
+        // Movies seen a moment ago are still in memory
+        Movie movie = MovieMemoryCache.getInstance().getDetails(mMovieId);
+        if (movie != null) {
+            return movie;
+        }
+        // Deliver the cached details at once, even if they are old
+        Snapshot<Movie> snapshot = CatalogCache.readDetails(getContext(), mMovieId);
+        if (snapshot != null) {
+            long maxAge = CachePolicy.getMaxAge(CachePolicy.Category.DETAILS);
+            mNeedsRevalidation = snapshot.isOlderThan(maxAge);
+            if (!mNeedsRevalidation) {
+                MovieMemoryCache.getInstance().putDetails(snapshot.data);
             }
-        } else {
-            // Perform the HTTP request and process the response.
-            movie = QueryUtils.fetchMovieData(mUrl);
+            return snapshot.data;
+        }
+        // Perform the HTTP request and display each part of the response as soon as it is parsed
+        movie = QueryUtils.fetchMovieData(mUrl, mSectionParsedListener,
+                RequestScheduler.Priority.USER_VISIBLE, this);
+        if (movie != null) {
+            // Store the details for offline use and for the next visits
+            CatalogCache.writeDetails(getContext(), movie);
+            MovieMemoryCache.getInstance().putDetails(movie);
+            return movie;
+        }
+        // Without network, fall back on the favorites database
+        return readFavorite();
+    }
+
+    /**
+     * Download the details again after the cached ones have been delivered. Return the delivered
+     * movie itself if the download failed or nothing changed, so it is not delivered twice. The
+     * sections added meanwhile by {@link #loadSection(int)} are merged again on delivery.
+     */
+    private Movie revalidate() {
+        Movie movie = QueryUtils.fetchMovieData(mUrl, null,
+                RequestScheduler.Priority.BACKGROUND, this);
+        Movie delivered = mMovie;
+        if (movie == null || delivered == null) {
+            // Keep showing the cached details
+            return delivered;
+        }
+        // Keep the sections that were loaded on demand
+        movie = movie.withSectionsOf(delivered);
+        if (movie.hasSameContent(delivered)) {
+            // Nothing changed, only the age of the cached details starts again
+            CatalogCache.markDetailsFetched(getContext(), movie.getId());
+            MovieMemoryCache.getInstance().putDetails(delivered);
+            return delivered;
+        }
+        CatalogCache.writeDetails(getContext(), movie);
+        MovieMemoryCache.getInstance().putDetails(movie);
+        return movie;
+    }
+
+    /**
+     * Read the details of the movie stored in the favorites database, or return null if it isn't
+     * one of the user's favorites.
+     */
+    private Movie readFavorite() {
+        String[] projection = {
+                MovieEntry._ID,
+                MovieEntry.COLUMN_MOVIE_ID,
+                MovieEntry.COLUMN_MOVIE_POSTER,
+                MovieEntry.COLUMN_MOVIE_TITLE,
+                MovieEntry.COLUMN_MOVIE_DATE,
+                MovieEntry.COLUMN_MOVIE_COUNTRIES,
+                MovieEntry.COLUMN_MOVIE_GENRES,
+                MovieEntry.COLUMN_MOVIE_SYNOPSIS,
+                MovieEntry.COLUMN_MOVIE_DIRECTOR,
+                MovieEntry.COLUMN_MOVIE_RATING
+        };
+        Cursor cursor = getContext().getContentResolver().query(
+                MovieEntry.buildUriWithMovieId(mMovieId), projection, null, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        Movie movie = null;
+        if (cursor.moveToFirst()) {
+            movie = new Movie();
+            int idColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_ID);
+            movie.setId(cursor.getInt(idColumnIndex));
+            int posterColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_POSTER);
+            movie.setImageUrl(cursor.getString(posterColumnIndex));
+            int titleColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_TITLE);
+            movie.setTitle(cursor.getString(titleColumnIndex));
+            int dateColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_DATE);
+            movie.setReleaseDate(cursor.getString(dateColumnIndex));
+            int countriesColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_COUNTRIES);
+            movie.setCountries(cursor.getString(countriesColumnIndex));
+            int genresColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_GENRES);
+            movie.setGenres(cursor.getString(genresColumnIndex));
+            int synopsisColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_SYNOPSIS);
+            movie.setSynopsis(cursor.getString(synopsisColumnIndex));
+            int directorColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_DIRECTOR);
+            movie.setDirector(cursor.getString(directorColumnIndex));
+            int ratingColumnIndex = cursor.getColumnIndex(MovieEntry.COLUMN_MOVIE_RATING);
+            movie.setVoteAverage(cursor.getDouble(ratingColumnIndex));
         }
+        cursor.close();
         return movie;
     }
 
     /*
      * If the user navigates away from the activity and then returns, avoid extra load by caching
-     * existent data.
+     * existent data. If the delivered details came from the cache and are too old, start
+     * downloading them again.
      */
     @Override
     public void deliverResult(@Nullable Movie data) {
-        mMovie = data;
+        boolean revalidated = mRevalidating;
+        mRevalidating = false;
+        synchronized (mMovieLock) {
+            if (revalidated && data != null && mMovie != null) {
+                // Keep the sections added on demand while the details were being downloaded
+                data = data.withSectionsOf(mMovie);
+                if (data.hasSameContent(mMovie)) {
+                    // Nothing new to show
+                    return;
+                }
+                MovieMemoryCache.getInstance().putDetails(data);
+            } else if (revalidated && data == mMovie) {
+                return;
+            }
+            mMovie = data;
+        }
         super.deliverResult(data);
+        if (mNeedsRevalidation && isStarted()) {
+            mNeedsRevalidation = false;
+            mRevalidating = true;
+            forceLoad();
+        }
+    }
+
+    /*
+     * Drop the network request of this loader when its load is cancelled (i.e. when it is
+     * restarted), so it doesn't keep a thread of the scheduler busy. The next load starts from
+     * the cache again.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        mRevalidating = false;
+        RequestScheduler.getInstance().cancel(this);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        RequestScheduler.getInstance().cancel(this);
+        synchronized (mMovieLock) {
+            mMovie = null;
+        }
+        mNeedsRevalidation = false;
+        mRevalidating = false;
     }
 }
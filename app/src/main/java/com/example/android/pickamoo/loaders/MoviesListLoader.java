@@ -6,8 +6,12 @@ import android.net.Uri;
 import android.support.v4.content.AsyncTaskLoader;
 
 import com.example.android.pickamoo.Movie;
+import com.example.android.pickamoo.data.CatalogCache;
+import com.example.android.pickamoo.data.CatalogCache.Snapshot;
 import com.example.android.pickamoo.data.MovieContract.MovieEntry;
+import com.example.android.pickamoo.data.MovieMemoryCache;
 import com.example.android.pickamoo.utilities.QueryUtils;
+import com.example.android.pickamoo.utilities.RequestScheduler;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,21 +19,49 @@ import java.util.List;
 /**
  * Created by Cristina on 28/03/2018.
  * This class loads a list of movies by using an AsyncTask to perform the network request to
- * the given URL.
+ * the given URL. Lists in the offline catalog cache are delivered right away; if they are older than
+ * the maximum age of their {@link CachePolicy.Category}, they are revalidated with the network in
+ * the background and delivered again only if they changed.
  */
 
 public class MoviesListLoader extends AsyncTaskLoader<List<Movie>> {
 
     private String mUrl;
 
+    /* True if cached responses must be revalidated with the server (i.e. on user refresh) */
+    private boolean mForceRefresh;
+
+    /* Member variable that will store the last delivered list */
+    private List<Movie> mMovies;
+
+    /* True if the delivered list came from the cache and is too old */
+    private volatile boolean mNeedsRevalidation;
+
+    /* True while the list is being downloaded again after delivering the cached one */
+    private volatile boolean mRevalidating;
+
     public MoviesListLoader(Context context, String url) {
+        this(context, url, false);
+    }
+
+    public MoviesListLoader(Context context, String url, boolean forceRefresh) {
         super(context);
         mUrl = url;
+        mForceRefresh = forceRefresh;
     }
 
+    /*
+     * If there already are loaded results, deliver them at once. Load again if there aren't any or
+     * if the content changed while the loader was stopped.
+     */
     @Override
     protected void onStartLoading() {
-        forceLoad();
+        if (mMovies != null) {
+            super.deliverResult(mMovies);
+        }
+        if (mMovies == null || takeContentChanged()) {
+            forceLoad();
+        }
     }
 
     @Override
@@ -59,10 +91,97 @@ public class MoviesListLoader extends AsyncTaskLoader<List<Movie>> {
                 }
                 cursor.close();
             }
+        } else if (mRevalidating) {
+            movies = revalidate();
         } else {
+            // Deliver the cached list at once, even if it is old
+            Snapshot<List<Movie>> snapshot = null;
+            if (!mForceRefresh) {
+                snapshot = CatalogCache.readList(getContext(), mUrl);
+                if (snapshot != null) {
+                    long maxAge = CachePolicy.getMaxAge(CachePolicy.getListCategory(mUrl));
+                    mNeedsRevalidation = snapshot.isOlderThan(maxAge);
+                    MovieMemoryCache.getInstance().putSummaries(snapshot.data);
+                    return snapshot.data;
+                }
+            }
             // Perform the HTTP request and process the response.
-            movies = QueryUtils.fetchMoviesListData(mUrl);
+            movies = QueryUtils.fetchMoviesListData(mUrl, mForceRefresh,
+                    RequestScheduler.Priority.USER_VISIBLE, this);
+            if (movies != null && !movies.isEmpty()) {
+                // Store the list for offline use
+                CatalogCache.writeList(getContext(), mUrl, movies);
+                MovieMemoryCache.getInstance().putSummaries(movies);
+            } else {
+                // Without network, fall back on the last cached list
+                snapshot = CatalogCache.readList(getContext(), mUrl);
+                if (snapshot != null) {
+                    movies = snapshot.data;
+                }
+            }
         }
         return movies;
     }
+
+    /**
+     * Download the list again after the cached one has been delivered. Return the delivered list
+     * itself if the download failed or nothing changed, so it is not delivered twice.
+     */
+    private List<Movie> revalidate() {
+        List<Movie> movies = QueryUtils.fetchMoviesListData(mUrl, true,
+                RequestScheduler.Priority.BACKGROUND, this);
+        if (movies == null || movies.isEmpty()) {
+            // Keep showing the cached list
+            return mMovies;
+        }
+        MovieMemoryCache.getInstance().putSummaries(movies);
+        if (Movie.sameMovies(movies, mMovies)) {
+            // Nothing changed, only the age of the cached list starts again
+            CatalogCache.markListFetched(getContext(), mUrl);
+            return mMovies;
+        }
+        CatalogCache.writeList(getContext(), mUrl, movies);
+        return movies;
+    }
+
+    /*
+     * Deliver the list and, if it came from the cache and is too old, start downloading it again.
+     */
+    @Override
+    public void deliverResult(List<Movie> data) {
+        if (mRevalidating) {
+            mRevalidating = false;
+            if (data == mMovies) {
+                // Nothing new to show
+                return;
+            }
+        }
+        mMovies = data;
+        super.deliverResult(data);
+        if (mNeedsRevalidation && isStarted()) {
+            mNeedsRevalidation = false;
+            mRevalidating = true;
+            forceLoad();
+        }
+    }
+
+    /*
+     * Drop the network request of this loader when its load is cancelled (i.e. when it is
+     * restarted), so it doesn't keep a thread of the scheduler busy. The next load starts from
+     * the cache again.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        mRevalidating = false;
+        RequestScheduler.getInstance().cancel(this);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        RequestScheduler.getInstance().cancel(this);
+        mMovies = null;
+        mNeedsRevalidation = false;
+        mRevalidating = false;
+    }
 }
@@ -0,0 +1,116 @@
+package com.example.android.pickamoo.utilities;
+
+import android.util.Log;
+
+import static com.example.android.pickamoo.MainActivity.LOG_TAG;
+
+/**
+ * Stops sending requests to TheMovieDb API for a while when it keeps failing, so a server that is
+ * already struggling (or a missing network) isn't hammered by every refresh and prefetch:
+ * - Closed: requests are sent. After {@link #getFailureThreshold()} failures in a row it opens.
+ * - Open: requests fail at once, without network, until the cooldown time has passed.
+ * - Half open: a single trial request is sent. If it succeeds the breaker closes, otherwise it
+ * opens again for another cooldown.
+ * The server can also open it for a given time (i.e. with a long Retry-After).
+ */
+
+public final class CircuitBreaker {
+
+    /* Breaker used by the app: it opens after 5 failures in a row, for 30 seconds */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_COOLDOWN_MILLIS = 30000;
+
+    private final int mFailureThreshold;
+    private final long mCooldownMillis;
+
+    /* Failures in a row since the last success */
+    private int mFailureCount;
+
+    /* Time (System.nanoTime) until which requests are rejected, valid while it is open */
+    private boolean mOpen;
+    private long mOpenUntil;
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_COOLDOWN_MILLIS);
+    }
+
+    /**
+     * @param failureThreshold is the number of failures in a row that opens the breaker
+     * @param cooldownMillis   is the time it stays open
+     */
+    public CircuitBreaker(int failureThreshold, long cooldownMillis) {
+        mFailureThreshold = failureThreshold;
+        mCooldownMillis = cooldownMillis;
+    }
+
+    public int getFailureThreshold() {
+        return mFailureThreshold;
+    }
+
+    /**
+     * Return true if a request can be sent now. Once the cooldown has passed only one caller gets
+     * true (the trial request): the others are rejected for another cooldown, which also lets a
+     * new trial go if this one never records its result (i.e. it was cancelled).
+     */
+    public synchronized boolean allowRequest() {
+        if (!mOpen) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - mOpenUntil < 0) {
+            return false;
+        }
+        mOpenUntil = now + mCooldownMillis * 1000000L;
+        return true;
+    }
+
+    /**
+     * Return true if requests are being rejected (the trial request may be running).
+     */
+    public synchronized boolean isOpen() {
+        return mOpen;
+    }
+
+    /**
+     * The server answered: close the breaker.
+     */
+    public synchronized void recordSuccess() {
+        if (mOpen) {
+            Log.i(LOG_TAG, "TheMovieDb API is available again");
+        }
+        mFailureCount = 0;
+        mOpen = false;
+    }
+
+    /**
+     * A request failed (no network, timeout or server error). Open the breaker if there were too
+     * many failures in a row, or for another cooldown if it was the trial request.
+     */
+    public synchronized void recordFailure() {
+        mFailureCount++;
+        if (mOpen || mFailureCount >= mFailureThreshold) {
+            open(mCooldownMillis);
+        }
+    }
+
+    /**
+     * Reject the requests for the given time, even if there were not enough failures (i.e. when
+     * the server asks to wait longer than the retries can).
+     */
+    public synchronized void openFor(long millis) {
+        open(Math.max(millis, mCooldownMillis));
+    }
+
+    private void open(long millis) {
+        long until = System.nanoTime() + millis * 1000000L;
+        // Don't shorten a longer wait asked before
+        if (!mOpen || until - mOpenUntil > 0) {
+            mOpenUntil = until;
+        }
+        if (!mOpen) {
+            Log.w(LOG_TAG, "Too many failed requests, TheMovieDb API is not called for "
+                    + millis + " ms");
+        }
+        mOpen = true;
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.android.pickamoo.utilities;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+import static com.example.android.pickamoo.MainActivity.LOG_TAG;
+
+/**
+ * Bounded on-disk cache for the responses of TheMovieDb API. Each entry stores the response body
+ * together with its validators (ETag and Last-Modified) and its expiration time, so fresh entries
+ * are served without network and stale ones can be revalidated with a conditional request.
+ * Entries are keyed by the request URL without the api_key parameter and with sorted parameters.
+ */
+
+public final class HttpDiskCache {
+
+    /* Extensions of the files that store an entry */
+    private static final String BODY_EXTENSION = ".body";
+    private static final String META_EXTENSION = ".meta";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /* Cache-Control directives */
+    private static final String NO_STORE = "no-store";
+    private static final String NO_CACHE = "no-cache";
+    private static final String MAX_AGE = "max-age=";
+
+    /* Unique instance of the cache, null until it is installed */
+    private static volatile HttpDiskCache sInstance;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+
+    private HttpDiskCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Create the cache in the given directory. It should be called once when the app starts.
+     *
+     * @param directory is the directory where responses are stored
+     * @param maxSize   is the maximum size of the stored bodies in bytes
+     */
+    public static synchronized void install(File directory, long maxSize) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Unable to create the HTTP cache directory " + directory);
+            return;
+        }
+        sInstance = new HttpDiskCache(directory, maxSize);
+    }
+
+    /**
+     * Return the installed cache, or null if there isn't any.
+     */
+    public static HttpDiskCache get() {
+        return sInstance;
+    }
+
+    /**
+     * A cached response.
+     */
+    public static final class Entry {
+        final String mKey;
+        final String mUrl;
+        String mETag;
+        String mLastModified;
+        long mExpires;
+
+        Entry(String key, String url) {
+            mKey = key;
+            mUrl = url;
+        }
+
+        /**
+         * Return true if the entry can be served without asking the server.
+         */
+        public boolean isFresh() {
+            return System.currentTimeMillis() < mExpires;
+        }
+
+        /**
+         * Value for the If-None-Match header, or null.
+         */
+        public String getETag() {
+            return mETag;
+        }
+
+        /**
+         * Value for the If-Modified-Since header, or null.
+         */
+        public String getLastModified() {
+            return mLastModified;
+        }
+    }
+
+    /**
+     * Return the cached entry for the given URL, or null if there isn't any.
+     */
+    public Entry get(String url) {
+        String normalizedUrl = normalizeUrl(url);
+        String key = hashKey(normalizedUrl);
+        File metaFile = new File(mDirectory, key + META_EXTENSION);
+        File bodyFile = new File(mDirectory, key + BODY_EXTENSION);
+        if (!metaFile.exists() || !bodyFile.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(metaFile)));
+            Entry entry = new Entry(key, in.readUTF());
+            // Protect against (very unlikely) hash collisions
+            if (!entry.mUrl.equals(normalizedUrl)) {
+                return null;
+            }
+            entry.mETag = readNullableString(in);
+            entry.mLastModified = readNullableString(in);
+            entry.mExpires = in.readLong();
+            // Mark the entry as recently used
+            metaFile.setLastModified(System.currentTimeMillis());
+            return entry;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the cached response of " + normalizedUrl, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Open the stored body of an entry.
+     */
+    public InputStream openBody(Entry entry) throws IOException {
+        return new FileInputStream(new File(mDirectory, entry.mKey + BODY_EXTENSION));
+    }
+
+    /**
+     * Update the expiration time of an entry after the server answered "304 Not Modified".
+     */
+    public void updateFreshness(Entry entry, String cacheControl, long expiration) {
+        entry.mExpires = computeExpires(cacheControl, expiration);
+        try {
+            writeMeta(entry);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem updating the cached response of " + entry.mUrl, e);
+        }
+    }
+
+    /**
+     * Return true if a response with the given Cache-Control header can be stored.
+     */
+    public static boolean isCacheable(String cacheControl) {
+        return cacheControl == null
+                || !cacheControl.toLowerCase(Locale.US).contains(NO_STORE);
+    }
+
+    /**
+     * Start storing a new response for the given URL. The body is written while it is read
+     * through {@link Editor#wrap(InputStream)}, and the entry only becomes visible after
+     * {@link Editor#commit()}.
+     */
+    public Editor edit(String url, String eTag, String lastModified, String cacheControl,
+                       long expiration) {
+        String normalizedUrl = normalizeUrl(url);
+        Entry entry = new Entry(hashKey(normalizedUrl), normalizedUrl);
+        entry.mETag = eTag;
+        entry.mLastModified = lastModified;
+        entry.mExpires = computeExpires(cacheControl, expiration);
+        return new Editor(entry);
+    }
+
+    /**
+     * Writes the body of a response to a temporary file while it is consumed.
+     */
+    public final class Editor {
+        private final Entry mEntry;
+        private final File mTempFile;
+        private OutputStream mOutput;
+        private InputStream mSource;
+
+        Editor(Entry entry) {
+            mEntry = entry;
+            mTempFile = new File(mDirectory, entry.mKey + "." + Thread.currentThread().getId()
+                    + TEMP_EXTENSION);
+        }
+
+        /**
+         * Return a stream that copies to the cache everything that is read from the source.
+         */
+        public InputStream wrap(InputStream source) throws IOException {
+            mOutput = new BufferedOutputStream(new FileOutputStream(mTempFile));
+            mSource = new FilterInputStream(source) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) mOutput.write(b);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    int read = super.read(buffer, offset, count);
+                    if (read > 0) mOutput.write(buffer, offset, read);
+                    return read;
+                }
+
+                @Override
+                public long skip(long byteCount) throws IOException {
+                    // Skipped bytes must also be stored, so read them instead
+                    byte[] buffer = new byte[(int) Math.min(byteCount, 4096)];
+                    return Math.max(read(buffer, 0, buffer.length), 0);
+                }
+            };
+            return mSource;
+        }
+
+        /**
+         * Read what is left of the body and publish the entry.
+         */
+        public void commit() throws IOException {
+            // The parser may stop before the end of the body, read the rest so it is complete
+            byte[] buffer = new byte[4096];
+            while (mSource.read(buffer) != -1) {
+                // Keep reading
+            }
+            mOutput.close();
+            synchronized (HttpDiskCache.this) {
+                File bodyFile = new File(mDirectory, mEntry.mKey + BODY_EXTENSION);
+                if (!mTempFile.renameTo(bodyFile)) {
+                    abort();
+                    return;
+                }
+                writeMeta(mEntry);
+                trimToSize();
+            }
+        }
+
+        /**
+         * Discard the partially written body.
+         */
+        public void abort() {
+            closeQuietly(mOutput);
+            mTempFile.delete();
+        }
+    }
+
+    /**
+     * Write the metadata file of an entry.
+     */
+    private synchronized void writeMeta(Entry entry) throws IOException {
+        File tempFile = new File(mDirectory, entry.mKey + META_EXTENSION + TEMP_EXTENSION);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeUTF(entry.mUrl);
+            writeNullableString(out, entry.mETag);
+            writeNullableString(out, entry.mLastModified);
+            out.writeLong(entry.mExpires);
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(new File(mDirectory, entry.mKey + META_EXTENSION))) {
+            throw new IOException("Unable to write the metadata of " + entry.mUrl);
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the stored bodies fit in the maximum size.
+     */
+    private synchronized void trimToSize() {
+        File[] metaFiles = mDirectory.listFiles();
+        if (metaFiles == null) return;
+        long size = 0;
+        for (File file : metaFiles) {
+            if (file.getName().endsWith(BODY_EXTENSION)) size += file.length();
+        }
+        if (size <= mMaxSize) return;
+
+        // Sort the files from the least to the most recently used
+        Arrays.sort(metaFiles, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long firstModified = first.lastModified();
+                long secondModified = second.lastModified();
+                return firstModified < secondModified ? -1
+                        : (firstModified == secondModified ? 0 : 1);
+            }
+        });
+        for (File metaFile : metaFiles) {
+            if (size <= mMaxSize) break;
+            String name = metaFile.getName();
+            if (!name.endsWith(META_EXTENSION)) continue;
+            String key = name.substring(0, name.length() - META_EXTENSION.length());
+            File bodyFile = new File(mDirectory, key + BODY_EXTENSION);
+            size -= bodyFile.length();
+            bodyFile.delete();
+            metaFile.delete();
+        }
+    }
+
+    /**
+     * Return the time in milliseconds until which a response can be served without revalidation.
+     */
+    private static long computeExpires(String cacheControl, long expiration) {
+        long now = System.currentTimeMillis();
+        if (cacheControl != null) {
+            String directives = cacheControl.toLowerCase(Locale.US);
+            if (directives.contains(NO_CACHE)) {
+                return 0;
+            }
+            int index = directives.indexOf(MAX_AGE);
+            if (index != -1) {
+                int start = index + MAX_AGE.length();
+                int end = start;
+                while (end < directives.length() && Character.isDigit(directives.charAt(end))) {
+                    end++;
+                }
+                if (end > start) {
+                    try {
+                        return now + Long.parseLong(directives.substring(start, end)) * 1000;
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        // Fall back on the Expires header (0 if it isn't present)
+        return expiration;
+    }
+
+    /**
+     * Remove the api_key parameter from the URL, so the key doesn't end up in the cache, and sort
+     * the rest of the parameters.
+     */
+    private static String normalizeUrl(String url) {
+        return QueryUtils.normalizeUrl(url);
+    }
+
+    /**
+     * Return the name of the files of an entry, a SHA-1 hash of its URL.
+     */
+    private static String hashKey(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(String.format(Locale.US, "%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return String.valueOf(url.hashCode());
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.android.pickamoo.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link Transport} that opens the HTTP connections to TheMovieDb API with the same settings for
+ * every request. The connections are never disconnected: once a body has been read to the end and
+ * closed, the system keeps the socket alive and reuses it (and its TLS session) for the next
+ * request to the same host. Bodies are requested compressed with gzip and decompressed while they
+ * are read.
+ */
+
+public final class HttpTransport implements Transport {
+
+    /* Maximum number of idle connections kept alive per host */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    private static final int READ_TIMEOUT = 10000; /* milliseconds */
+    private static final int CONNECT_TIMEOUT = 15000; /* milliseconds */
+
+    private static final String GZIP = "gzip";
+
+    /**
+     * Configure the connection pool of the system. It should be called once when the app starts.
+     */
+    public static void install() {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+    }
+
+    @Override
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setReadTimeout(READ_TIMEOUT);
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT);
+        urlConnection.setRequestMethod("GET");
+        // Setting the header ourselves turns off the transparent decompression of the system,
+        // so the compressed bytes can be counted before they are decompressed in getBody
+        urlConnection.setRequestProperty("Accept-Encoding", GZIP);
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        return new ConnectionResponse(urlConnection);
+    }
+
+    /**
+     * Response read from an {@link HttpURLConnection}.
+     */
+    private static final class ConnectionResponse implements Response {
+        private final HttpURLConnection mConnection;
+        private InputStream mBody;
+
+        ConnectionResponse(HttpURLConnection connection) {
+            mConnection = connection;
+        }
+
+        @Override
+        public int getCode() throws IOException {
+            return mConnection.getResponseCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        @Override
+        public long getExpiration() {
+            return mConnection.getExpiration();
+        }
+
+        @Override
+        public InputStream getBody(StreamWrapper wrapper) throws IOException {
+            InputStream inputStream = mConnection.getInputStream();
+            if (wrapper != null) {
+                inputStream = wrapper.wrap(inputStream);
+            }
+            String encoding = mConnection.getContentEncoding();
+            if (encoding != null && encoding.toLowerCase(Locale.US).contains(GZIP)) {
+                inputStream = new GZIPInputStream(inputStream);
+            }
+            mBody = new BufferedInputStream(inputStream);
+            return mBody;
+        }
+
+        /**
+         * Read what is left of the body and close it, so the connection goes back to the pool.
+         * Error bodies are released too. Problems are ignored: the connection is just not reused.
+         */
+        @Override
+        public void release() {
+            InputStream body = mBody != null ? mBody : mConnection.getErrorStream();
+            if (body == null) {
+                return;
+            }
+            try {
+                byte[] buffer = new byte[4096];
+                while (body.read(buffer) != -1) {
+                    // Keep reading
+                }
+            } catch (IOException e) {
+                // Ignore
+            } finally {
+                try {
+                    body.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.android.pickamoo.utilities;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.v4.app.ActivityManagerCompat;
+import android.util.Log;
+
+import com.example.android.pickamoo.BuildConfig;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.OkHttp3Downloader;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+import com.squareup.picasso.RequestHandler;
+import com.squareup.picasso.StatsSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static com.example.android.pickamoo.MainActivity.LOG_TAG;
+
+/**
+ * Configures the Picasso instance used by the whole app (Picasso.get()) and measures how the
+ * images are loaded:
+ * - The memory cache is sized from the memory class of the device, smaller on low-RAM devices.
+ * - The downloaded images are kept in a bounded disk cache of their own.
+ * - JPEG images (the posters, backdrops and photos) have no transparency, so they are decoded
+ * with two bytes per pixel (RGB_565) instead of four. Half the memory per bitmap means twice as
+ * many posters fit in the memory cache, and less garbage to collect while the grid scrolls.
+ * - Each image loaded from disk or network is logged (in debug builds) with its source and the
+ * time spent downloading and decoding it, and a summary with the cache hit ratios is logged
+ * every {@link #REPORT_INTERVAL} images and when the app goes to the background.
+ */
+
+public final class ImagePipeline {
+
+    /* Part of the memory class of the app used by the memory cache of the images */
+    private static final int MEMORY_CACHE_DIVIDER = 6;
+    private static final int LOW_RAM_MEMORY_CACHE_DIVIDER = 10;
+
+    /* Number of images loaded from disk or network between two summaries */
+    private static final int REPORT_INTERVAL = 50;
+
+    private static LruCache sMemoryCache;
+
+    /* Images loaded from the disk cache and from the network, and total time decoding them */
+    private static final AtomicInteger sDiskLoads = new AtomicInteger();
+    private static final AtomicInteger sNetworkLoads = new AtomicInteger();
+    private static final AtomicLong sDecodeNanos = new AtomicLong();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link ImagePipeline}
+     * object. This class is only meant to hold static methods.
+     */
+    private ImagePipeline() {
+    }
+
+    /**
+     * Set up the Picasso instance of the app. It has to be called before the first Picasso.get(),
+     * from Application.onCreate.
+     *
+     * @param directory is the directory of the disk cache of the images
+     * @param maxSize   is the maximum size of the disk cache, in bytes
+     */
+    public static void install(Context context, File directory, long maxSize) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int divider = ActivityManagerCompat.isLowRamDevice(activityManager)
+                ? LOW_RAM_MEMORY_CACHE_DIVIDER : MEMORY_CACHE_DIVIDER;
+        int memoryCacheSize = activityManager.getMemoryClass() * 1024 * 1024 / divider;
+        sMemoryCache = new LruCache(memoryCacheSize);
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .cache(new Cache(directory, maxSize))
+                .build();
+        Picasso picasso = new Picasso.Builder(context)
+                .memoryCache(sMemoryCache)
+                .downloader(new OkHttp3Downloader(client))
+                // Runs before the network handler of Picasso, so it loads every image URL
+                .addRequestHandler(new InstrumentedNetworkRequestHandler(client))
+                .build();
+        Picasso.setSingletonInstance(picasso);
+        Log.i(LOG_TAG, "Image caches: " + memoryCacheSize / 1024 + " KB in memory, "
+                + maxSize / 1024 + " KB on disk");
+    }
+
+    /**
+     * Free the memory cache of the images when the system is running low on memory, and log the
+     * summary of the session when the app goes to the background.
+     */
+    public static void trimMemory(int level) {
+        if (sMemoryCache == null) return;
+        if (level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            logSummary();
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            // The bitmaps are the biggest objects of the app, they can be downloaded again
+            sMemoryCache.clear();
+        }
+    }
+
+    /**
+     * Log the hit ratio of the memory cache (images found without decoding), the hit ratio of the
+     * disk cache (images decoded without downloading) and the average decode time.
+     */
+    private static void logSummary() {
+        StatsSnapshot stats = Picasso.get().getSnapshot();
+        int disk = sDiskLoads.get();
+        int network = sNetworkLoads.get();
+        int requests = stats.cacheHits + stats.cacheMisses;
+        if (requests == 0) return;
+        int loads = disk + network;
+        Log.i(LOG_TAG, "Images: " + requests + " requests, memory hit ratio "
+                + stats.cacheHits * 100 / requests + "%, disk hit ratio "
+                + (loads == 0 ? 0 : disk * 100 / loads) + "% (" + disk + " from disk, " + network
+                + " from network), average decode time "
+                + (loads == 0 ? 0 : sDecodeNanos.get() / loads / 1000) + " us, memory cache "
+                + stats.size / 1024 + " of " + stats.maxSize / 1024 + " KB");
+    }
+
+    /**
+     * Record an image loaded from disk or network.
+     */
+    private static void record(Picasso.LoadedFrom loadedFrom, long loadNanos, long decodeNanos,
+                               Bitmap bitmap, String url) {
+        (loadedFrom == Picasso.LoadedFrom.DISK ? sDiskLoads : sNetworkLoads).incrementAndGet();
+        sDecodeNanos.addAndGet(decodeNanos);
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, "Image from " + loadedFrom + ": loaded in " + loadNanos / 1000000
+                    + " ms, decoded in " + decodeNanos / 1000 + " us (" + bitmap.getWidth() + "x"
+                    + bitmap.getHeight() + " " + bitmap.getConfig() + ") " + url);
+        }
+        if ((sDiskLoads.get() + sNetworkLoads.get()) % REPORT_INTERVAL == 0) {
+            logSummary();
+        }
+    }
+
+    /**
+     * Loads the http and https images with the OkHttp client of the disk cache and decodes them,
+     * measuring both steps. It returns the bitmap to Picasso, which then applies the resize and
+     * the crop of the request and puts it in the memory cache.
+     */
+    private static final class InstrumentedNetworkRequestHandler extends RequestHandler {
+
+        private final OkHttpClient mClient;
+
+        InstrumentedNetworkRequestHandler(OkHttpClient client) {
+            mClient = client;
+        }
+
+        @Override
+        public boolean canHandleRequest(Request data) {
+            String scheme = data.uri.getScheme();
+            return "http".equals(scheme) || "https".equals(scheme);
+        }
+
+        @Override
+        public Result load(Request request, int networkPolicy) throws IOException {
+            okhttp3.Request.Builder builder = new okhttp3.Request.Builder()
+                    .url(request.uri.toString());
+            if (NetworkPolicy.isOfflineOnly(networkPolicy)) {
+                builder.cacheControl(CacheControl.FORCE_CACHE);
+            }
+
+            long start = System.nanoTime();
+            Response response = mClient.newCall(builder.build()).execute();
+            ResponseBody body = response.body();
+            byte[] bytes;
+            try {
+                if (!response.isSuccessful() || body == null) {
+                    throw new IOException("HTTP " + response.code() + " loading " + request.uri);
+                }
+                bytes = body.bytes();
+            } finally {
+                if (body != null) body.close();
+            }
+            // The response was served by the disk cache if there is no network response at all
+            Picasso.LoadedFrom loadedFrom = response.cacheResponse() == null
+                    ? Picasso.LoadedFrom.NETWORK : Picasso.LoadedFrom.DISK;
+
+            long loaded = System.nanoTime();
+            Bitmap bitmap = decode(bytes, request);
+            if (bitmap == null) {
+                throw new IOException("Failed to decode " + request.uri);
+            }
+            record(loadedFrom, loaded - start, System.nanoTime() - loaded, bitmap,
+                    request.uri.toString());
+            return new Result(bitmap, loadedFrom);
+        }
+
+        /**
+         * Decode the image, skipping pixels if it is much bigger than the size of the request.
+         */
+        private static Bitmap decode(byte[] bytes, Request request) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            if (request.config != null) {
+                options.inPreferredConfig = request.config;
+            } else if (isJpeg(bytes)) {
+                // JPEG has no transparency, so there is no alpha channel to keep
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+            }
+            if (request.hasSize()) {
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+                options.inSampleSize = calculateInSampleSize(request.targetWidth,
+                        request.targetHeight, options.outWidth, options.outHeight,
+                        request.centerInside);
+                options.inJustDecodeBounds = false;
+            }
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+
+        /**
+         * Return how many pixels are skipped in each dimension, the same way Picasso does it: the
+         * decoded image is never smaller than the size of the request (a size of 0 keeps the
+         * aspect ratio of the other one).
+         */
+        private static int calculateInSampleSize(int requestWidth, int requestHeight, int width,
+                                                 int height, boolean centerInside) {
+            if (width <= 0 || height <= 0
+                    || (height <= requestHeight || requestHeight == 0)
+                    && (width <= requestWidth || requestWidth == 0)) {
+                return 1;
+            }
+            if (requestHeight == 0) {
+                return Math.max(1, width / requestWidth);
+            }
+            if (requestWidth == 0) {
+                return Math.max(1, height / requestHeight);
+            }
+            int heightRatio = height / requestHeight;
+            int widthRatio = width / requestWidth;
+            return Math.max(1, centerInside
+                    ? Math.max(heightRatio, widthRatio) : Math.min(heightRatio, widthRatio));
+        }
+
+        /**
+         * Return true if the data starts with the marker of a JPEG file.
+         */
+        private static boolean isJpeg(byte[] bytes) {
+            return bytes.length > 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xD8;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.android.pickamoo.utilities;
+
+/**
+ * Set of positive int values (i.e. movie ids) backed by an open addressing hash table, so values
+ * are neither boxed nor wrapped in entries. This class is not synchronized.
+ */
+
+public final class IntHashSet {
+
+    /* Value that marks an empty slot. Movie ids are always positive */
+    private static final int EMPTY = 0;
+
+    /* Maximum load factor of the table before it grows */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] mTable;
+    private int mSize;
+
+    /**
+     * Create an empty set.
+     */
+    public IntHashSet() {
+        this(8);
+    }
+
+    /**
+     * Create an empty set that can hold the given number of values without growing.
+     */
+    public IntHashSet(int expectedSize) {
+        int capacity = 8;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        mTable = new int[capacity];
+    }
+
+    /**
+     * Create a copy of the given set.
+     */
+    public IntHashSet(IntHashSet other) {
+        mTable = other.mTable.clone();
+        mSize = other.mSize;
+    }
+
+    /**
+     * Return true if the set contains the value.
+     */
+    public boolean contains(int value) {
+        if (value <= EMPTY) return false;
+        int mask = mTable.length - 1;
+        int index = mix(value) & mask;
+        while (mTable[index] != EMPTY) {
+            if (mTable[index] == value) return true;
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Add the value to the set. Return true if it wasn't already in it.
+     */
+    public boolean add(int value) {
+        if (value <= EMPTY) {
+            throw new IllegalArgumentException("Only positive values are allowed: " + value);
+        }
+        if (contains(value)) return false;
+        if (mSize + 1 > mTable.length * LOAD_FACTOR) {
+            rehash(mTable.length << 1);
+        }
+        insert(mTable, value);
+        mSize++;
+        return true;
+    }
+
+    /**
+     * Remove the value from the set. Return true if it was in it.
+     */
+    public boolean remove(int value) {
+        if (value <= EMPTY) return false;
+        int mask = mTable.length - 1;
+        int index = mix(value) & mask;
+        while (mTable[index] != value) {
+            if (mTable[index] == EMPTY) return false;
+            index = (index + 1) & mask;
+        }
+        mTable[index] = EMPTY;
+        mSize--;
+        // Re-insert the values of the same cluster so lookups don't stop at the new gap
+        index = (index + 1) & mask;
+        while (mTable[index] != EMPTY) {
+            int moved = mTable[index];
+            mTable[index] = EMPTY;
+            insert(mTable, moved);
+            index = (index + 1) & mask;
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of values in the set.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    private void rehash(int capacity) {
+        int[] table = new int[capacity];
+        for (int value : mTable) {
+            if (value != EMPTY) insert(table, value);
+        }
+        mTable = table;
+    }
+
+    private static void insert(int[] table, int value) {
+        int mask = table.length - 1;
+        int index = mix(value) & mask;
+        while (table[index] != EMPTY) {
+            index = (index + 1) & mask;
+        }
+        table[index] = value;
+    }
+
+    /**
+     * Spread the bits of the value, as consecutive ids would otherwise fill consecutive slots.
+     */
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
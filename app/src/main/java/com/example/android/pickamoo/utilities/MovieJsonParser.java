@@ -0,0 +1,676 @@
+package com.example.android.pickamoo.utilities;
+
+import com.example.android.pickamoo.Movie;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for TheMovieDb API responses. The JSON is read token by token straight from the
+ * network stream and the {@link Movie} objects are built as it goes, so no intermediate String or
+ * JSON tree is created. Values that are not displayed are skipped and every list stops being read
+ * once it reaches its limit. It uses the Gson streaming reader (same API as android.util.JsonReader)
+ * so it also runs in the JVM tests.
+ */
+
+public final class MovieJsonParser {
+
+    /* Key value for the "results" array.*/
+    private static final String RESULTS_KEY = "results";
+
+    /* Key value for the "id" integer.*/
+    private static final String ID_KEY = "id";
+
+    /* Key value for the "poster_path" string. This string is the file path of the poster, see
+    {@link TmdbImages}.*/
+    private static final String POSTER_KEY = "poster_path";
+
+    /* Key value for the "title" string.*/
+    private static final String TITLE_KEY = "title";
+
+    /* Key value for the "release_date" string.*/
+    private static final String RELEASE_DATE_KEY = "release_date";
+
+    /* Key value for the "vote_average" double.*/
+    private static final String VOTE_AVERAGE_KEY = "vote_average";
+
+    /* Key value for the "overview" string.*/
+    private static final String SYNOPSIS_KEY = "overview";
+
+    /* Key value for the "genres" array.*/
+    private static final String GENRE_KEY = "genres";
+
+    /* Key value for the "production_countries" array.*/
+    private static final String COUNTRY_KEY = "production_countries";
+
+    /* Key value for the country iso code string.*/
+    private static final String COUNTRY_CODE = "iso_3166_1";
+
+    /* Key value for the "images" object.*/
+    private static final String IMAGES_KEY = "images";
+
+    /* Key value for the "backdrops" array.*/
+    private static final String BACKDROPS_KEY = "backdrops";
+
+    /* Key value for the image "file_path" string. It is the url to download the image.*/
+    private static final String IMAGE_PATH_KEY = "file_path";
+
+    /* Key value for the "credits" object.*/
+    private static final String CREDITS_KEY = "credits";
+
+    /* Key value for the "cast" array.*/
+    private static final String CAST_KEY = "cast";
+
+    /* Key value for the cast image "profile_path" string. It is the file path of the cast
+    person photo.*/
+    private static final String PROFILE_IMAGE_KEY = "profile_path";
+
+    /* Key value for the "crew" array.*/
+    private static final String CREW_KEY = "crew";
+
+    /* Key value for the "job" string.*/
+    private static final String JOB_KEY = "job";
+
+    /* Key value for the "videos" array.*/
+    private static final String VIDEOS_KEY = "videos";
+
+    /* Key value for the video "key" string.*/
+    private static final String VIDEO_KEY_KEY = "key";
+
+    /* Key value for the "reviews" object.*/
+    private static final String REVIEWS_KEY = "reviews";
+
+    /* Key value for the "author" string. It is the author of the review*/
+    private static final String REVIEW_AUTHOR_KEY = "author";
+
+    /* Key value for the review "content" string.*/
+    private static final String REVIEW_CONTENT_KEY = "content";
+
+    /* Key value for the review "url" string.*/
+    private static final String REVIEW_URL_KEY = "url";
+
+    /* Key value for the "recommendations" object.*/
+    private static final String RECOMMENDATIONS_KEY = "recommendations";
+
+    /* Key value for the "name" string.*/
+    private static final String NAME_KEY = "name";
+
+    /* Admitted crew job - Director.*/
+    private static final String DIRECTING_JOB = "Director";
+
+    /* Base video thumbnail link.*/
+    private static final String BASE_VIDEO_THUMBNAIL_URL = "https://img.youtube.com/vi/";
+
+    /* Video thumbnail quality.*/
+    private static final String VIDEO_THUMBNAIL_QUALITY_URL = "/mqdefault.jpg";
+
+    /* Maximum number of items kept for each list of details.*/
+    private static final int MAX_IMAGES = 10;
+    private static final int MAX_CAST = 10;
+    private static final int MAX_TRAILERS = 10;
+    private static final int MAX_REVIEWS = 3;
+    private static final int MAX_RECOMMENDATIONS = 10;
+
+    /* Sections of the details response, in the order they are usually received */
+    public static final int SECTION_HEADER = 0;
+    public static final int SECTION_IMAGES = 1;
+    public static final int SECTION_CREDITS = 2;
+    public static final int SECTION_VIDEOS = 3;
+    public static final int SECTION_REVIEWS = 4;
+    public static final int SECTION_RECOMMENDATIONS = 5;
+
+    /**
+     * Interface to be notified each time a section of the details of a movie has been parsed, so it
+     * can be displayed before the rest of the response is received. It is called on the thread
+     * that parses the response.
+     */
+    public interface OnSectionParsedListener {
+        /**
+         * @param section is one of the SECTION_ constants
+         * @param movie   is the movie being parsed. Only the values of the given section (and of
+         *                the sections notified before) are complete
+         */
+        void onSectionParsed(int section, Movie movie);
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link MovieJsonParser}
+     * object. This class is only meant to hold static methods.
+     */
+    private MovieJsonParser() {
+    }
+
+    /**
+     * Return a list of {@link Movie} objects read from a list response (popular, top rated or
+     * discover).
+     */
+    public static List<Movie> parseMoviesList(InputStream inputStream) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+
+        // Create an empty ArrayList that we can start adding movies to
+        List<Movie> movies = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(RESULTS_KEY) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                readMoviesArray(reader, movies, Integer.MAX_VALUE);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // Return the list of movies
+        return movies;
+    }
+
+    /**
+     * Return a {@link Movie} object with detailed information read from a details response
+     * (requested with append_to_response=images,credits,videos,reviews,recommendations or some of
+     * them). The sections that are not in the response are not marked as loaded.
+     */
+    public static Movie parseMovieDetails(InputStream inputStream) throws IOException {
+        return parseMovieDetails(inputStream, null);
+    }
+
+    /**
+     * Return a {@link Movie} object with detailed information read from a details response,
+     * notifying the listener (if it isn't null) after each section is parsed. The header (title,
+     * poster, rating, etc.) is notified as soon as the first appended object starts.
+     */
+    public static Movie parseMovieDetails(InputStream inputStream,
+                                          OnSectionParsedListener listener) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+
+        // Create an empty Movie Object so that we can start adding information about it
+        Movie movie = new Movie();
+        boolean headerNotified = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            // Null values are treated as missing keys
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            int section = getSection(name);
+            if (section != SECTION_HEADER && !headerNotified) {
+                // The appended objects come after the main values of the movie
+                headerNotified = true;
+                notifySection(listener, SECTION_HEADER, movie);
+            }
+            switch (name) {
+                case ID_KEY:
+                    movie.setId(reader.nextInt());
+                    break;
+                case TITLE_KEY:
+                    movie.setTitle(reader.nextString());
+                    break;
+                case RELEASE_DATE_KEY:
+                    // Release date is returned in format yyyy-mm-dd
+                    movie.setReleaseDate(reader.nextString());
+                    break;
+                case VOTE_AVERAGE_KEY:
+                    movie.setVoteAverage(reader.nextDouble());
+                    break;
+                case SYNOPSIS_KEY:
+                    movie.setSynopsis(reader.nextString());
+                    break;
+                case POSTER_KEY:
+                    movie.setImageUrl(reader.nextString());
+                    break;
+                case GENRE_KEY:
+                    movie.setGenres(readJoinedNames(reader, NAME_KEY));
+                    break;
+                case COUNTRY_KEY:
+                    movie.setCountries(readJoinedNames(reader, COUNTRY_CODE));
+                    break;
+                case IMAGES_KEY:
+                    readImages(reader, movie);
+                    break;
+                case CREDITS_KEY:
+                    readCredits(reader, movie);
+                    break;
+                case VIDEOS_KEY:
+                    readTrailers(reader, movie);
+                    break;
+                case REVIEWS_KEY:
+                    readReviews(reader, movie);
+                    break;
+                case RECOMMENDATIONS_KEY:
+                    readRecommendations(reader, movie);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+            if (section != SECTION_HEADER) {
+                notifySection(listener, section, movie);
+            }
+        }
+        reader.endObject();
+        if (!headerNotified) {
+            notifySection(listener, SECTION_HEADER, movie);
+        }
+
+        // Return the movie object with the detailed information
+        return movie;
+    }
+
+    /**
+     * Return a {@link Movie} object with only the values of one section, read from the response
+     * of the sub-resource of the movie that provides it (i.e. /movie/{id}/credits). These responses
+     * have the same content as the objects appended to the details response.
+     *
+     * @param section is one of the SECTION_ constants, except {@link #SECTION_HEADER}
+     */
+    public static Movie parseMovieSection(InputStream inputStream, int section)
+            throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+        Movie movie = new Movie();
+        switch (section) {
+            case SECTION_IMAGES:
+                readImages(reader, movie);
+                break;
+            case SECTION_CREDITS:
+                readCredits(reader, movie);
+                break;
+            case SECTION_VIDEOS:
+                readTrailers(reader, movie);
+                break;
+            case SECTION_REVIEWS:
+                readReviews(reader, movie);
+                break;
+            case SECTION_RECOMMENDATIONS:
+                readRecommendations(reader, movie);
+                break;
+            default:
+                throw new IllegalArgumentException("Not a section of its own: " + section);
+        }
+        movie.setSectionLoaded(section);
+        return movie;
+    }
+
+    /**
+     * Return the section of the details response a key belongs to.
+     */
+    private static int getSection(String key) {
+        switch (key) {
+            case IMAGES_KEY:
+                return SECTION_IMAGES;
+            case CREDITS_KEY:
+                return SECTION_CREDITS;
+            case VIDEOS_KEY:
+                return SECTION_VIDEOS;
+            case REVIEWS_KEY:
+                return SECTION_REVIEWS;
+            case RECOMMENDATIONS_KEY:
+                return SECTION_RECOMMENDATIONS;
+            default:
+                return SECTION_HEADER;
+        }
+    }
+
+    /**
+     * Mark a section of the movie as loaded and notify the listener, if there is one.
+     */
+    private static void notifySection(OnSectionParsedListener listener, int section,
+                                      Movie movie) {
+        movie.setSectionLoaded(section);
+        if (listener != null) {
+            listener.onSectionParsed(section, movie);
+        }
+    }
+
+    /**
+     * Read an array of movies (id, poster, title and rating, which is what the lists can show)
+     * adding at most maxItems to the given list. The rest of the array is skipped.
+     */
+    private static void readMoviesArray(JsonReader reader, List<Movie> movies, int maxItems)
+            throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (movies.size() >= maxItems) {
+                reader.skipValue();
+                continue;
+            }
+            // Create an empty Movie Object so that we can start adding information about it
+            Movie movie = new Movie();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                } else if (name.equals(ID_KEY)) {
+                    movie.setId(reader.nextInt());
+                } else if (name.equals(POSTER_KEY)) {
+                    movie.setImageUrl(reader.nextString());
+                } else if (name.equals(TITLE_KEY)) {
+                    movie.setTitle(reader.nextString());
+                } else if (name.equals(VOTE_AVERAGE_KEY)) {
+                    movie.setVoteAverage(reader.nextDouble());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            // Add movie Object to list of movies
+            movies.add(movie);
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Read an array of objects and return the values of the given key separated by a comma
+     * (used for genres and production countries).
+     */
+    private static String readJoinedNames(JsonReader reader, String key) throws IOException {
+        // Create an empty StringBuilder to add the names
+        StringBuilder namesList = new StringBuilder();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals(key) && reader.peek() == JsonToken.STRING) {
+                    if (namesList.length() > 0) namesList.append(", ");
+                    namesList.append(reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return namesList.toString();
+    }
+
+    /**
+     * Read the "images" object and set the list of backdrops urls.
+     */
+    private static void readImages(JsonReader reader, Movie movie) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!name.equals(BACKDROPS_KEY) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            // Create an empty ArrayList of image paths
+            List<String> imagesList = new ArrayList<>();
+            int count = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                // Limit the list to 10 images
+                if (count++ >= MAX_IMAGES) {
+                    reader.skipValue();
+                    continue;
+                }
+                String path = readStringField(reader, IMAGE_PATH_KEY);
+                if (path != null) {
+                    imagesList.add(path);
+                }
+            }
+            reader.endArray();
+            if (count > 0) movie.setImagesList(imagesList);
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "credits" object and set the main cast and the directors of the movie.
+     */
+    private static void readCredits(JsonReader reader, Movie movie) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+            } else if (name.equals(CAST_KEY)) {
+                readCast(reader, movie);
+            } else if (name.equals(CREW_KEY)) {
+                readDirectors(reader, movie);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "cast" array and set the list of names and photos of the first actors/actresses.
+     */
+    private static void readCast(JsonReader reader, Movie movie) throws IOException {
+        // Create an empty list of actor/actress names
+        List<String> castNames = new ArrayList<>();
+        // Create an empty list of actor/actress photos urls
+        List<String> castPhotos = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            // Limit the list to 10 person
+            if (castNames.size() >= MAX_CAST) {
+                reader.skipValue();
+                continue;
+            }
+            String personName = null;
+            String photoUrl = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() != JsonToken.STRING) {
+                    reader.skipValue();
+                } else if (name.equals(NAME_KEY)) {
+                    personName = reader.nextString();
+                } else if (name.equals(PROFILE_IMAGE_KEY)) {
+                    photoUrl = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            castNames.add(personName);
+            castPhotos.add(personName != null ? photoUrl : null);
+        }
+        reader.endArray();
+        if (!castNames.isEmpty()) {
+            List<String[]> castList = new ArrayList<>();
+            castList.add(castNames.toArray(new String[castNames.size()]));
+            castList.add(castPhotos.toArray(new String[castPhotos.size()]));
+            movie.setCast(castList);
+        }
+    }
+
+    /**
+     * Read the "crew" array and set the names of the directors separated by a comma. Every person
+     * is examined, since the directors can appear anywhere in the array, so the cost grows with
+     * the size of the crew. It is kept low by decoding only the name and the job: once the job
+     * shows the person is not a director, the rest of the object is skipped.
+     */
+    private static void readDirectors(JsonReader reader, Movie movie) throws IOException {
+        // Create an empty StringBuilder to add the directors names
+        StringBuilder directors = new StringBuilder();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            // Null until the job is read, then true only for directors
+            Boolean isDirector = null;
+            String personName = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() != JsonToken.STRING || Boolean.FALSE.equals(isDirector)) {
+                    // Once the person is known not to be a director the rest is skipped
+                    reader.skipValue();
+                } else if (name.equals(JOB_KEY)) {
+                    isDirector = DIRECTING_JOB.equals(reader.nextString());
+                } else if (name.equals(NAME_KEY)) {
+                    personName = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            // Check if it's a director
+            if (Boolean.TRUE.equals(isDirector) && personName != null) {
+                if (directors.length() > 0) directors.append(", ");
+                directors.append(personName);
+            }
+        }
+        reader.endArray();
+        movie.setDirector(directors.toString());
+    }
+
+    /**
+     * Read the "videos" object and set the list of trailers keys and thumbnails urls.
+     */
+    private static void readTrailers(JsonReader reader, Movie movie) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!name.equals(RESULTS_KEY) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            // Create an empty list for video keys
+            List<String> videoUrls = new ArrayList<>();
+            // Create an empty list for thumbnail urls
+            List<String> videoThumbnails = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                // Limit the list to 10 trailers
+                if (videoUrls.size() >= MAX_TRAILERS) {
+                    reader.skipValue();
+                    continue;
+                }
+                String key = readStringField(reader, VIDEO_KEY_KEY);
+                videoUrls.add(key);
+                if (key != null) {
+                    videoThumbnails.add(BASE_VIDEO_THUMBNAIL_URL + encodePathSegment(key)
+                            + VIDEO_THUMBNAIL_QUALITY_URL);
+                } else {
+                    videoThumbnails.add(null);
+                }
+            }
+            reader.endArray();
+            if (!videoUrls.isEmpty()) {
+                List<String[]> videosList = new ArrayList<>();
+                videosList.add(videoUrls.toArray(new String[videoUrls.size()]));
+                videosList.add(videoThumbnails.toArray(new String[videoThumbnails.size()]));
+                movie.setTrailers(videosList);
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "reviews" object and set the list of contents, urls and authors of the first
+     * reviews.
+     */
+    private static void readReviews(JsonReader reader, Movie movie) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!name.equals(RESULTS_KEY) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            // Create empty lists for reviews contents, urls and authors
+            List<String> contents = new ArrayList<>();
+            List<String> urls = new ArrayList<>();
+            List<String> authors = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                // Limit the list to 3 reviews
+                if (contents.size() >= MAX_REVIEWS) {
+                    reader.skipValue();
+                    continue;
+                }
+                String content = null;
+                String url = null;
+                String author = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if (reader.peek() != JsonToken.STRING) {
+                        reader.skipValue();
+                    } else if (field.equals(REVIEW_CONTENT_KEY)) {
+                        content = reader.nextString();
+                    } else if (field.equals(REVIEW_URL_KEY)) {
+                        url = reader.nextString();
+                    } else if (field.equals(REVIEW_AUTHOR_KEY)) {
+                        author = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                contents.add(content);
+                urls.add(content != null ? url : null);
+                authors.add(content != null ? author : null);
+            }
+            reader.endArray();
+            if (!contents.isEmpty()) {
+                List<String[]> reviewsList = new ArrayList<>();
+                reviewsList.add(contents.toArray(new String[contents.size()]));
+                reviewsList.add(urls.toArray(new String[urls.size()]));
+                reviewsList.add(authors.toArray(new String[authors.size()]));
+                movie.setReviews(reviewsList);
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "recommendations" object and set the list of recommended movies.
+     */
+    private static void readRecommendations(JsonReader reader, Movie movie) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!name.equals(RESULTS_KEY) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            // Create an empty ArrayList that we can start adding recommendations to
+            List<Movie> recommendedMovies = new ArrayList<>();
+            // Limit the list to 10 movies
+            readMoviesArray(reader, recommendedMovies, MAX_RECOMMENDATIONS);
+            if (!recommendedMovies.isEmpty()) movie.setRecommendations(recommendedMovies);
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Encode a value to be used as a segment of a URL path.
+     */
+    private static String encodePathSegment(String value) throws IOException {
+        // URLEncoder encodes for forms, where spaces are "+"
+        return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+    }
+
+    /**
+     * Read an object and return the string value of the given key, or null if it isn't present.
+     * The rest of the values of the object are skipped.
+     */
+    private static String readStringField(JsonReader reader, String key) throws IOException {
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(key) && reader.peek() == JsonToken.STRING) {
+                value = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+}
@@ -1,25 +1,22 @@
 package com.example.android.pickamoo.utilities;
 
-import android.net.Uri;
-import android.text.TextUtils;
 import android.util.Log;
 
 import com.example.android.pickamoo.Movie;
+import com.google.gson.stream.MalformedJsonException;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import static com.example.android.pickamoo.MainActivity.LOG_TAG;
 
@@ -38,589 +35,578 @@ public final class QueryUtils {
     private QueryUtils() {
     }
 
-    /**
-     * Query the TheMovieDb dataset and return a List of {@link Movie}.
-     */
-    public static List<Movie> fetchMoviesListData(String requestUrl) {
-
-        // Create URL object
-        URL url = createUrl(requestUrl);
+    /* Query parameter that is left out of the request keys */
+    private static final String API_KEY_PARAMETER = "api_key";
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
-        try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem making the HTTP request", e);
+    /* Number of bytes of response bodies received from the network by each thread */
+    private static final ThreadLocal<long[]> sBytesReceived = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
         }
+    };
 
-        // Extract relevant fields from the JSON response and create an List<Movie> object
-        List<Movie> movies = extractListDataFromJson(jsonResponse);
+    /* Sends the requests. The default one keeps connections alive and negotiates gzip */
+    private static volatile Transport sTransport = new HttpTransport();
 
-        // Return the List
-        return movies;
-    }
+    /* Decides how many times failed requests are sent again and how long to wait in between */
+    private static volatile RetryPolicy sRetryPolicy = RetryPolicy.DEFAULT;
+
+    /* Stops calling the API for a while when it keeps failing */
+    private static volatile CircuitBreaker sCircuitBreaker = new CircuitBreaker();
 
     /**
-     * Query the TheMovieDb dataset and return the details of a {@link Movie}.
+     * A response with an error code that may go away if the request is sent again (see
+     * {@link RetryPolicy#isRetryable(int)}).
      */
-    public static Movie fetchMovieData(String requestUrl) {
+    private static final class ServerErrorException extends IOException {
+        private static final long serialVersionUID = 1L;
 
-        // Create URL object
-        URL url = createUrl(requestUrl);
+        final int mResponseCode;
+        /* Wait asked by the server in milliseconds, or -1 */
+        final long mRetryAfter;
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
-        try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem making the HTTP request", e);
+        ServerErrorException(int responseCode, long retryAfter) {
+            super("Error response code: " + responseCode);
+            mResponseCode = responseCode;
+            mRetryAfter = retryAfter;
         }
-
-        // Extract relevant fields from the JSON response and create an List<Movie> object
-        Movie movie = extractMovieDetailsFromJson(jsonResponse);
-
-        // Return the List
-        return movie;
     }
 
     /**
-     * Returns new URL object from the given string URL.
+     * Parses the body of a response while it is being read from the network.
      */
-    private static URL createUrl(String stringUrl) {
-        URL url = null;
-        try {
-            url = new URL(stringUrl);
-        } catch (MalformedURLException e) {
-            Log.e(LOG_TAG, "Error with creating URL ", e);
-        }
-        return url;
+    private interface ResponseParser<T> {
+        T parse(InputStream inputStream) throws IOException;
     }
 
+    /* Parser for the responses that contain a list of movies */
+    private static final ResponseParser<List<Movie>> MOVIES_LIST_PARSER =
+            new ResponseParser<List<Movie>>() {
+                @Override
+                public List<Movie> parse(InputStream inputStream) throws IOException {
+                    return MovieJsonParser.parseMoviesList(inputStream);
+                }
+            };
+
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Return a parser for the responses that contain the details of a movie.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
-
-        // If the URL is null, then return early.
-        if (url == null) {
-            return jsonResponse;
-        }
-
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
-        try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
-            } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
-            }
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving the JSON results.", e);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+    private static ResponseParser<Movie> createMovieDetailsParser(
+            final MovieJsonParser.OnSectionParsedListener listener) {
+        return new ResponseParser<Movie>() {
+            @Override
+            public Movie parse(InputStream inputStream) throws IOException {
+                return MovieJsonParser.parseMovieDetails(inputStream, listener);
             }
-            if (inputStream != null) {
-                inputStream.close();
-            }
-        }
-        return jsonResponse;
+        };
     }
 
     /**
-     * Convert the {@link InputStream} into a String which contains the whole JSON response from
-     * the server.
+     * Return a parser for the responses that contain one section of the details of a movie.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream,
-                    Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+    private static ResponseParser<Movie> createMovieSectionParser(final int section) {
+        return new ResponseParser<Movie>() {
+            @Override
+            public Movie parse(InputStream inputStream) throws IOException {
+                return MovieJsonParser.parseMovieSection(inputStream, section);
             }
-        }
-        return output.toString();
+        };
     }
 
     /**
-     * Return a list of {@link Movie} objects that has been built up from parsing a JSON response.
+     * Replace the transport used to send the requests (i.e. by a fake one in tests).
      */
-    private static List<Movie> extractListDataFromJson(String movieJSON) {
-
-        /* Key value for the "results" array.*/
-        final String RESULTS_KEY = "results";
+    public static void setTransport(Transport transport) {
+        sTransport = transport;
+    }
 
-        /* Key value for the "id" integer.*/
-        final String ID_KEY = "id";
+    /**
+     * Replace the policy used to retry the failed requests (i.e. by one without waits in tests).
+     */
+    public static void setRetryPolicy(RetryPolicy retryPolicy) {
+        sRetryPolicy = retryPolicy;
+    }
 
-        /* Key value for the "poster_path" string. This string is the url to download the poster.*/
-        final String POSTER_KEY = "poster_path";
+    /**
+     * Replace the circuit breaker of the requests (i.e. to start every test with a closed one).
+     */
+    public static void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        sCircuitBreaker = circuitBreaker;
+    }
 
-        /* Base image link.*/
-        final String BASE_IMAGE_URL_342 = "http://image.tmdb.org/t/p/w342/";
+    /**
+     * Return the circuit breaker of the requests. While it is open no request is sent, so work
+     * that can wait (i.e. prefetching) shouldn't even start.
+     */
+    public static CircuitBreaker getCircuitBreaker() {
+        return sCircuitBreaker;
+    }
 
-        // If the JSON string is empty or null, then return early.
-        if (TextUtils.isEmpty(movieJSON)) {
-            return null;
+    /**
+     * Return the number of times a request of the given priority can be sent. Only the requests
+     * the user is waiting for are retried: the others would just add load to a struggling API.
+     * It is checked again before each attempt, because a coalesced request takes the priority of
+     * the most urgent caller that joined it (i.e. the user opens a movie being prefetched).
+     */
+    private static int getMaxAttempts(RequestScheduler.Priority priority) {
+        RequestScheduler.Priority current = RequestScheduler.getInstance().getCurrentPriority();
+        if (priority == RequestScheduler.Priority.USER_VISIBLE
+                || current == RequestScheduler.Priority.USER_VISIBLE) {
+            return sRetryPolicy.getMaxAttempts();
         }
+        return 1;
+    }
 
-        // Create an empty ArrayList that we can start adding movies to
-        List<Movie> movies = new ArrayList<>();
+    /**
+     * Query the TheMovieDb dataset and return a List of {@link Movie}.
+     */
+    public static List<Movie> fetchMoviesListData(String requestUrl) {
+        return fetchMoviesListData(requestUrl, false);
+    }
 
-        try {
-            JSONObject baseJsonResponse = new JSONObject(movieJSON);
-            if (baseJsonResponse.has(RESULTS_KEY)) {
-                JSONArray results = baseJsonResponse.getJSONArray(RESULTS_KEY);
-
-                // Loop through each feature in the array
-                for (int i = 0; i < results.length(); i++) {
-                    // Create an empty Movie Object so that we can start adding information about it
-                    Movie movie = new Movie();
-
-                    // Get movie JSONObject at position i
-                    JSONObject movieObject = results.getJSONObject(i);
-
-                    // Extract "id"
-                    if (movieObject.has(ID_KEY)) {
-                        int id = movieObject.getInt(ID_KEY);
-                        movie.setId(id);
-                    }
+    /**
+     * Query the TheMovieDb dataset and return a List of {@link Movie}.
+     *
+     * @param forceRevalidate is true to ask the server even if the cached response is fresh (i.e.
+     *                        when the user refreshes the list)
+     */
+    public static List<Movie> fetchMoviesListData(String requestUrl, boolean forceRevalidate) {
+        return fetchMoviesListData(requestUrl, forceRevalidate,
+                RequestScheduler.Priority.USER_VISIBLE, null);
+    }
 
-                    // Extract "poster image"
-                    if (movieObject.has(POSTER_KEY)) {
-                        String imageUrl = BASE_IMAGE_URL_342 + movieObject.getString(POSTER_KEY);
-                        movie.setImageUrl(imageUrl);
+    /**
+     * Query the TheMovieDb dataset and return a List of {@link Movie}. The request runs in the
+     * {@link RequestScheduler} and the calling thread waits for it. Concurrent calls for the same
+     * request (see {@link #getRequestKey(String)}) share a single download and parse.
+     *
+     * @param forceRevalidate is true to ask the server even if the cached response is fresh
+     * @param priority        is the priority class of the request
+     * @param owner           is the object that can cancel the request, or null
+     */
+    public static List<Movie> fetchMoviesListData(final String requestUrl,
+                                                  final boolean forceRevalidate,
+                                                  final RequestScheduler.Priority priority,
+                                                  Object owner) {
+        // A forced revalidation also joins a request in flight: its response is being received now
+        return RequestScheduler.getInstance().execute(getRequestKey(requestUrl), priority, owner,
+                new Callable<List<Movie>>() {
+                    @Override
+                    public List<Movie> call() {
+                        return requestMoviesList(requestUrl, forceRevalidate, priority);
                     }
-
-                    // Add movie Object to list of movies
-                    movies.add(movie);
-                }
-            }
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Problem parsing the JSON results", e);
-        }
-
-        // Return the list of movies
-        return movies;
+                });
     }
 
     /**
-     * Return a {@link Movie} object with detailed information that has been built up from parsing
-     * a JSON response.
+     * Query the TheMovieDb dataset and return the details of a {@link Movie}.
      */
-    private static Movie extractMovieDetailsFromJson(String movieJSON) {
-
-        /* Key value for the "results" array.*/
-        final String RESULTS_KEY = "results";
-
-        /* Key value for the "id" integer.*/
-        final String ID_KEY = "id";
-
-        /* Key value for the "poster_path" string. This string is the url to download the poster.*/
-        final String POSTER_KEY = "poster_path";
-
-        /* Key value for the "title" string.*/
-        final String TITLE_KEY = "title";
-
-        /* Key value for the "release_date" string.*/
-        final String RELEASE_DATE_KEY = "release_date";
-
-        /* Key value for the "vote_average" double.*/
-        final String VOTE_AVERAGE_KEY = "vote_average";
-
-        /* Key value for the "overview" string.*/
-        final String SYNOPSIS_KEY = "overview";
-
-        /* Key value for the "genres" array.*/
-        final String GENRE_KEY = "genres";
-
-        /* Key value for the "production_countries" array.*/
-        final String COUNTRY_KEY = "production_countries";
-
-        /* Key value for the country iso code string.*/
-        final String COUNTRY_CODE = "iso_3166_1";
-
-        /* Key value for the "images" object.*/
-        final String IMAGES_KEY = "images";
-
-        /* Key value for the "backdrops" array.*/
-        final String BACKDROPS_KEY = "backdrops";
-
-        /* Key value for the image "file_path" string. It is the url to download the image.*/
-        final String IMAGE_PATH_KEY = "file_path";
-
-        /* Key value for the "credits" object.*/
-        final String CREDITS_KEY = "credits";
-
-        /* Key value for the "cast" array.*/
-        final String CAST_KEY = "cast";
-
-        /* Key value for the cast image "profile_path" string. It is the url to download the cast
-        person photo.*/
-        final String PROFILE_IMAGE_KEY = "profile_path";
-
-        /* Key value for the "crew" array.*/
-        final String CREW_KEY = "crew";
+    public static Movie fetchMovieData(String requestUrl) {
+        return fetchMovieData(requestUrl, null);
+    }
 
-        /* Key value for the "job" string.*/
-        final String JOB_KEY = "job";
+    /**
+     * Query the TheMovieDb dataset and return the details of a {@link Movie}.
+     *
+     * @param listener is notified each time a section of the details has been parsed, or null
+     */
+    public static Movie fetchMovieData(String requestUrl,
+                                       MovieJsonParser.OnSectionParsedListener listener) {
+        return fetchMovieData(requestUrl, listener, RequestScheduler.Priority.USER_VISIBLE, null);
+    }
 
-        /* Key value for the "videos" array.*/
-        final String VIDEOS_KEY = "videos";
+    /**
+     * Query the TheMovieDb dataset and return the details of a {@link Movie}. The request runs in
+     * the {@link RequestScheduler} and the calling thread waits for it. Concurrent calls for the
+     * same request (see {@link #getRequestKey(String)}) share a single download and parse.
+     *
+     * @param listener is notified each time a section of the details has been parsed, or null.
+     *                 It isn't notified if the request joins one that is already running
+     * @param priority is the priority class of the request
+     * @param owner    is the object that can cancel the request, or null
+     */
+    public static Movie fetchMovieData(final String requestUrl,
+                                       final MovieJsonParser.OnSectionParsedListener listener,
+                                       final RequestScheduler.Priority priority,
+                                       Object owner) {
+        return RequestScheduler.getInstance().execute(getRequestKey(requestUrl), priority, owner,
+                new Callable<Movie>() {
+                    @Override
+                    public Movie call() {
+                        return requestMovie(requestUrl, listener, priority);
+                    }
+                });
+    }
 
-        /* Key value for the video "key" string.*/
-        final String VIDEO_KEY_KEY = "key";
+    /**
+     * Query the TheMovieDb dataset and return a {@link Movie} with only one section of its
+     * details (see {@link MovieJsonParser#parseMovieSection(InputStream, int)}). The request runs
+     * in the {@link RequestScheduler} and the calling thread waits for it.
+     *
+     * @param section  is one of the SECTION_ constants of {@link MovieJsonParser}
+     * @param priority is the priority class of the request
+     * @param owner    is the object that can cancel the request, or null
+     */
+    public static Movie fetchMovieSection(final String requestUrl, final int section,
+                                          final RequestScheduler.Priority priority,
+                                          Object owner) {
+        return RequestScheduler.getInstance().execute(getRequestKey(requestUrl), priority, owner,
+                new Callable<Movie>() {
+                    @Override
+                    public Movie call() {
+                        return requestMovieSection(requestUrl, section, priority);
+                    }
+                });
+    }
 
-        /* Key value for the "reviews" object.*/
-        final String REVIEWS_KEY = "reviews";
+    /**
+     * Perform the request of a list of movies in the calling thread.
+     */
+    private static List<Movie> requestMoviesList(String requestUrl, boolean forceRevalidate,
+                                                 RequestScheduler.Priority priority) {
 
-        /* Key value for the "author" string. It is the author of the review*/
-        final String REVIEW_AUTHOR_KEY = "author";
+        // Create URL object
+        URL url = createUrl(requestUrl);
 
-        /* Key value for the review "content" string.*/
-        final String REVIEW_CONTENT_KEY = "content";
+        // Perform HTTP request to the URL and parse the JSON response while it is received
+        List<Movie> movies = makeHttpRequest(url, MOVIES_LIST_PARSER, forceRevalidate,
+                priority);
 
-        /* Key value for the review "url" string.*/
-        final String REVIEW_URL_KEY = "url";
+        // Return the List
+        return movies;
+    }
 
-        /* Key value for the "recommendations" object.*/
-        final String RECOMMENDATIONS_KEY = "recommendations";
+    /**
+     * Perform the request of the details of a movie in the calling thread.
+     */
+    private static Movie requestMovie(String requestUrl,
+                                      MovieJsonParser.OnSectionParsedListener listener,
+                                      RequestScheduler.Priority priority) {
 
-        /* Key value for the "name" string.*/
-        final String NAME_KEY = "name";
+        // Create URL object
+        URL url = createUrl(requestUrl);
 
-        /* Admitted crew job - Director.*/
-        final String DIRECTING_JOB = "Director";
+        // Perform HTTP request to the URL and parse the JSON response while it is received
+        Movie movie = makeHttpRequest(url, createMovieDetailsParser(listener), false,
+                priority);
 
-        /* Base image link.*/
-        final String BASE_IMAGE_URL_342 = "http://image.tmdb.org/t/p/w342/";
-        final String BASE_IMAGE_URL_500 = "http://image.tmdb.org/t/p/w500/";
+        // Return the Movie
+        return movie;
+    }
 
-        /* Base video thumbnail link.*/
-        final String BASE_VIDEO_THUMBNAIL_URL = "//img.youtube.com/vi";
+    /**
+     * Perform the request of a section of the details of a movie in the calling thread.
+     */
+    private static Movie requestMovieSection(String requestUrl, int section,
+                                             RequestScheduler.Priority priority) {
+        return makeHttpRequest(createUrl(requestUrl), createMovieSectionParser(section), false,
+                priority);
+    }
 
-        /* Video thumbnail quality.*/
-        final String VIDEO_THUMBNAIL_QUALITY_URL = "mqdefault.jpg";
+    /**
+     * Return the key that identifies a request in the {@link RequestScheduler}: its URL without
+     * the api_key and with the query parameters sorted, so URLs that only differ in the order of
+     * their parameters are the same request.
+     */
+    public static String getRequestKey(String requestUrl) {
+        return normalizeUrl(requestUrl);
+    }
 
-        // If the JSON string is empty or null, then return early.
-        if (TextUtils.isEmpty(movieJSON)) {
-            return null;
+    /**
+     * Return the given URL without the api_key parameter and with its query parameters sorted.
+     */
+    public static String normalizeUrl(String url) {
+        String withoutKey = removeQueryParameters(url, API_KEY_PARAMETER);
+        int queryStart = withoutKey.indexOf('?');
+        if (queryStart == -1) return withoutKey;
+        String[] parameters = withoutKey.substring(queryStart + 1).split("&");
+        Arrays.sort(parameters);
+        StringBuilder result = new StringBuilder(withoutKey.length());
+        result.append(withoutKey, 0, queryStart);
+        char separator = '?';
+        for (String parameter : parameters) {
+            result.append(separator).append(parameter);
+            separator = '&';
         }
+        return result.toString();
+    }
 
-        // Create an empty Movie Object so that we can start adding information about it
-        Movie movie = new Movie();
+    /**
+     * Return the given URL without the query parameters with the given names.
+     */
+    public static String removeQueryParameters(String url, String... names) {
+        int queryStart = url.indexOf('?');
+        if (queryStart == -1) return url;
+        StringBuilder result = new StringBuilder(url.length());
+        result.append(url, 0, queryStart);
+        char separator = '?';
+        for (String parameter : url.substring(queryStart + 1).split("&")) {
+            if (parameter.isEmpty() || hasName(parameter, names)) continue;
+            result.append(separator).append(parameter);
+            separator = '&';
+        }
+        return result.toString();
+    }
 
-        try {
-            JSONObject movieObject = new JSONObject(movieJSON);
+    /**
+     * Return true if the query parameter ("name=value") has one of the given names.
+     */
+    private static boolean hasName(String parameter, String[] names) {
+        for (String name : names) {
+            if (parameter.equals(name) || parameter.startsWith(name + "=")) return true;
+        }
+        return false;
+    }
 
-            // Extract "id"
-            if (movieObject.has(ID_KEY)) {
-                int id = movieObject.getInt(ID_KEY);
-                movie.setId(id);
+    /**
+     * Return the value of a query parameter of the URL, or null if it isn't present.
+     */
+    public static String getQueryParameter(String url, String name) {
+        int queryStart = url.indexOf('?');
+        if (queryStart == -1) return null;
+        for (String parameter : url.substring(queryStart + 1).split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return parameter.substring(name.length() + 1);
             }
+        }
+        return null;
+    }
 
-            // Extract "title"
-            if (movieObject.has(TITLE_KEY)) {
-                String title = movieObject.getString(TITLE_KEY);
-                movie.setTitle(title);
-            }
+    /**
+     * Return the number of bytes of response bodies the calling thread has received from the
+     * network so far. The difference between two calls is what the requests in between cost.
+     */
+    public static long getBytesReceived() {
+        return sBytesReceived.get()[0];
+    }
 
-            // Extract "release_date" (release date is returned in format yyyy-mm-dd)
-            if (movieObject.has(RELEASE_DATE_KEY)) {
-                String releaseDate = movieObject.getString(RELEASE_DATE_KEY);
-                movie.setReleaseDate(releaseDate);
-            }
+    /**
+     * Returns new URL object from the given string URL.
+     */
+    private static URL createUrl(String stringUrl) {
+        URL url = null;
+        try {
+            url = new URL(stringUrl);
+        } catch (MalformedURLException e) {
+            Log.e(LOG_TAG, "Error with creating URL ", e);
+        }
+        return url;
+    }
 
-            // Extract "vote_average"
-            if (movieObject.has(VOTE_AVERAGE_KEY)) {
-                double voteAverage = movieObject.getDouble(VOTE_AVERAGE_KEY);
-                movie.setVoteAverage(voteAverage);
-            }
+    /**
+     * Make an HTTP request to the given URL and return the result of parsing the response body
+     * with the given parser, or null if the request or the parsing failed. Responses are stored in
+     * the {@link HttpDiskCache}: fresh responses are served without network and stale ones are
+     * revalidated with a conditional request, reusing the stored body on "304 Not Modified".
+     * Requests are sent through the current {@link Transport}.
+     *
+     * Requests that fail because of the network or the server are sent again, up to the number
+     * of attempts of their priority (see {@link #getMaxAttempts}), waiting as the
+     * {@link RetryPolicy} says. No request is sent while the
+     * {@link CircuitBreaker} is open. If the request fails the stale cached response is returned,
+     * if there is one.
+     */
+    private static <T> T makeHttpRequest(URL url, ResponseParser<T> parser,
+                                         boolean forceRevalidate,
+                                         RequestScheduler.Priority priority) {
+        // If the URL is null, then return early.
+        if (url == null) {
+            return null;
+        }
 
-            // Extract "synopsis"
-            if (movieObject.has(SYNOPSIS_KEY)) {
-                String synopsis = movieObject.getString(SYNOPSIS_KEY);
-                movie.setSynopsis(synopsis);
+        // Look for a cached response
+        HttpDiskCache cache = HttpDiskCache.get();
+        HttpDiskCache.Entry cachedEntry = cache != null ? cache.get(url.toString()) : null;
+        if (cachedEntry != null && cachedEntry.isFresh() && !forceRevalidate) {
+            T result = parseCachedBody(cache, cachedEntry, parser);
+            if (result != null) {
+                return result;
             }
+        }
 
-            // Extract "poster image"
-            if (movieObject.has(POSTER_KEY)) {
-                String imageUrl = BASE_IMAGE_URL_500 + movieObject.getString(POSTER_KEY);
-                movie.setImageUrl(imageUrl);
+        RetryPolicy retryPolicy = sRetryPolicy;
+        CircuitBreaker circuitBreaker = sCircuitBreaker;
+        for (int attempt = 0; attempt < getMaxAttempts(priority); attempt++) {
+            if (!circuitBreaker.allowRequest()) {
+                Log.w(LOG_TAG, "TheMovieDb API keeps failing, the request is not sent");
+                break;
             }
-
-            // Extract the list of "genres"
-            if (movieObject.has(GENRE_KEY)) {
-                JSONArray genres = movieObject.getJSONArray(GENRE_KEY);
-                // Create an empty StringBuilder to add the genres
-                StringBuilder genresList = new StringBuilder();
-                // Loop through each feature in the array
-                for (int i = 0; i < genres.length(); i++) {
-                    // Get genre JSONObject at position i
-                    JSONObject genreObject = genres.getJSONObject(i);
-                    if (genreObject.has(NAME_KEY)) {
-                        genresList.append(genreObject.getString(NAME_KEY));
-                        genresList.append(", ");
-                    }
+            long retryDelay = -1;
+            try {
+                T result = sendRequest(url, parser, cache, cachedEntry);
+                // The server answered, even if the response couldn't be used
+                circuitBreaker.recordSuccess();
+                return result;
+            } catch (ServerErrorException e) {
+                Log.e(LOG_TAG, e.getMessage());
+                circuitBreaker.recordFailure();
+                retryDelay = e.mRetryAfter;
+                if (retryDelay > retryPolicy.getMaxRetryAfter()) {
+                    // The server asks to wait longer than a user would, stop calling it until then
+                    circuitBreaker.openFor(retryDelay);
+                    break;
                 }
-                // Delete 2 last characters of the StringBuilder as they are useless separators
-                if (genresList.length() > 0) genresList.setLength(genresList.length() - 2);
-                movie.setGenres(genresList.toString());
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem retrieving the JSON results.", e);
+                circuitBreaker.recordFailure();
             }
-
-            // Extract the list of "production countries"
-            if (movieObject.has(COUNTRY_KEY)) {
-                JSONArray countries = movieObject.getJSONArray(COUNTRY_KEY);
-                // Create an empty StringBuilder to add the countries
-                StringBuilder countriesList = new StringBuilder();
-                // Loop through each feature in the array
-                for (int i = 0; i < countries.length(); i++) {
-                    // Get country JSONObject at position i
-                    JSONObject countryObject = countries.getJSONObject(i);
-                    if (countryObject.has(COUNTRY_CODE)) {
-                        countriesList.append(countryObject.getString(COUNTRY_CODE));
-                        countriesList.append(", ");
-                    }
+            if (attempt + 1 < getMaxAttempts(priority)) {
+                if (retryDelay < 0) {
+                    retryDelay = retryPolicy.getBackoffDelay(attempt);
+                }
+                if (!waitBeforeRetry(retryDelay)) {
+                    // The request was cancelled
+                    break;
                 }
-                // Delete 2 last characters of the StringBuilder as they are useless separators
-                if (countriesList.length() > 0) countriesList.setLength(countriesList.length() - 2);
-                movie.setCountries(countriesList.toString());
             }
+        }
 
-            // Extract the list of the movie "images"
-            if (movieObject.has(IMAGES_KEY)) {
-                JSONObject images = movieObject.getJSONObject(IMAGES_KEY);
-                if (images.has(BACKDROPS_KEY)) {
-                    JSONArray backdrops = images.getJSONArray(BACKDROPS_KEY);
-                    if (backdrops.length() > 0) {
-                        // Create an empty ArrayList of image paths
-                        List<String> imagesList = new ArrayList<>();
-                        // Limit the list to 10 images
-                        int length;
-                        if (backdrops.length() < 10) {
-                            length = backdrops.length();
-                        } else {
-                            length = 10;
-                        }
-                        // Loop through each feature in the array
-                        for (int i = 0; i < length; i++) {
-                            // Get image JSONObject at position i
-                            JSONObject imageObject = backdrops.getJSONObject(i);
-                            if (imageObject.has(IMAGE_PATH_KEY)) {
-                                String imageUrl = BASE_IMAGE_URL_342
-                                        + imageObject.getString(IMAGE_PATH_KEY);
-                                imagesList.add(imageUrl);
-                            }
-                        }
-                        movie.setImagesList(imagesList);
-                    }
+        // Old data is better than an error
+        if (cachedEntry != null) {
+            Log.i(LOG_TAG, "Using the stale cached response of the failed request");
+            return parseCachedBody(cache, cachedEntry, parser);
+        }
+        return null;
+    }
+
+    /**
+     * Send a single request and return the result of parsing the response, or null if it
+     * couldn't be used (i.e. a client error or an unexpected JSON).
+     *
+     * @throws ServerErrorException if the response has an error code that is worth retrying
+     * @throws IOException          if the request or the response couldn't be sent or received
+     */
+    private static <T> T sendRequest(URL url, ResponseParser<T> parser, HttpDiskCache cache,
+                                     HttpDiskCache.Entry cachedEntry) throws IOException {
+        T result = null;
+        Transport.Response response = null;
+        HttpDiskCache.Editor editor = null;
+        try {
+            // Ask the server to send the body only if it changed
+            Map<String, String> headers = new HashMap<>();
+            if (cachedEntry != null) {
+                if (cachedEntry.getETag() != null) {
+                    headers.put("If-None-Match", cachedEntry.getETag());
+                }
+                if (cachedEntry.getLastModified() != null) {
+                    headers.put("If-Modified-Since", cachedEntry.getLastModified());
                 }
             }
-
-            // Extract "cast" and "crew" details
-            if (movieObject.has(CREDITS_KEY)) {
-                JSONObject credits = movieObject.getJSONObject(CREDITS_KEY);
-                // Extract the list of "cast" details
-                if (credits.has(CAST_KEY)) {
-                    JSONArray cast = credits.getJSONArray(CAST_KEY);
-                    if (cast.length() > 0) {
-                        // Limit the list to 10 person
-                        int length;
-                        if (cast.length() < 10) {
-                            length = cast.length();
-                        } else {
-                            length = 10;
-                        }
-                        // Create an empty array of actor/actress names
-                        String castNamesList[] = new String[length];
-                        // Create an empty array of actor/actress photos urls
-                        String castPhotosList[] = new String[length];
-                        // Loop through each feature in the array
-                        for (int i = 0; i < length; i++) {
-                            // Get person JSONObject at position i
-                            JSONObject castObject = cast.getJSONObject(i);
-                            if (castObject.has(NAME_KEY)) {
-                                castNamesList[i] = castObject.getString(NAME_KEY);
-                                if (castObject.has(PROFILE_IMAGE_KEY)) {
-                                    String imageUrl = BASE_IMAGE_URL_342
-                                            + castObject.getString(PROFILE_IMAGE_KEY);
-                                    castPhotosList[i] = imageUrl;
-                                }
-                            }
-                        }
-                        List<String[]> castList = new ArrayList<>();
-                        castList.add(castNamesList);
-                        castList.add(castPhotosList);
-                        movie.setCast(castList);
-                    }
+            response = sTransport.get(url, headers);
+
+            int responseCode = response.getCode();
+            String cacheControl = response.getHeader("Cache-Control");
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedEntry != null) {
+                // The cached body is still valid
+                cache.updateFreshness(cachedEntry, cacheControl, response.getExpiration());
+                result = parseCachedBody(cache, cachedEntry, parser);
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                // If the request was successful (response code 200), then parse the input
+                // stream as it is read. The compressed bytes are counted, the cache stores the
+                // decompressed ones.
+                InputStream inputStream = response.getBody(BYTE_COUNTER);
+                if (cache != null && HttpDiskCache.isCacheable(cacheControl)) {
+                    // Store the body in the cache while it is parsed
+                    editor = cache.edit(url.toString(), response.getHeader("ETag"),
+                            response.getHeader("Last-Modified"), cacheControl,
+                            response.getExpiration());
+                    inputStream = editor.wrap(inputStream);
                 }
-                // Extract the movie directors
-                if (credits.has(CREW_KEY)) {
-                    JSONArray crew = credits.getJSONArray(CREW_KEY);
-                    // Create an empty StringBuilder to add the directors names
-                    StringBuilder directors = new StringBuilder();
-                    // Loop through each person in the array
-                    for (int i = 0; i < crew.length(); i++) {
-                        // Get person JSONObject at position i
-                        JSONObject crewObject = crew.getJSONObject(i);
-                        // Check if it's a director
-                        if (crewObject.has(JOB_KEY)) {
-                            if (crewObject.getString(JOB_KEY).equals(DIRECTING_JOB)) {
-                                // It is a director
-                                if (crewObject.has(NAME_KEY)) {
-                                    directors.append(crewObject.getString(NAME_KEY));
-                                    directors.append(", ");
-                                }
-                            }
-                        }
-                    }
-                    // Delete 2 last characters of the StringBuilder as they are useless separators
-                    if (directors.length() > 0) directors.setLength(directors.length() - 2);
-                    movie.setDirector(directors.toString());
+                result = parser.parse(inputStream);
+                if (editor != null) {
+                    editor.commit();
+                    editor = null;
                 }
+            } else if (RetryPolicy.isRetryable(responseCode)) {
+                throw new ServerErrorException(responseCode,
+                        RetryPolicy.parseRetryAfter(response.getHeader("Retry-After")));
+            } else {
+                Log.e(LOG_TAG, "Error response code: " + responseCode);
+            }
+        } catch (MalformedJsonException | IllegalStateException e) {
+            // The JSON doesn't have the expected structure, sending the request again won't help
+            Log.e(LOG_TAG, "Problem parsing the JSON results", e);
+        } finally {
+            if (editor != null) {
+                editor.abort();
+            }
+            // Don't disconnect: reading the body to the end lets the connection be reused
+            if (response != null) {
+                response.release();
             }
+        }
+        return result;
+    }
 
-            // Extract the list of movie "trailers"
-            if (movieObject.has(VIDEOS_KEY)) {
-                JSONObject videosObject = movieObject.getJSONObject(VIDEOS_KEY);
-                if (videosObject.has(RESULTS_KEY)) {
-                    JSONArray videos = videosObject.getJSONArray(RESULTS_KEY);
-                    if (videos.length() > 0) {
-                        // Limit the list to 10 trailers
-                        int length;
-                        if (videos.length() < 10) {
-                            length = videos.length();
-                        } else {
-                            length = 10;
-                        }
-                        // Create an empty array for video urls
-                        String videoUrlsList[] = new String[length];
-                        // Create an empty array for thumbnail urls
-                        String videoThumbnailsList[] = new String[length];
-                        // Loop through each feature in the array
-                        for (int i = 0; i < length; i++) {
-                            // Get video JSONObject at position i
-                            JSONObject video = videos.getJSONObject(i);
-                            if (video.has(VIDEO_KEY_KEY)) {
-                                String key = video.getString(VIDEO_KEY_KEY);
-                                videoUrlsList[i] = key;
-                                Uri.Builder thumbnailBuilder = new Uri.Builder();
-                                thumbnailBuilder.scheme("https").path(BASE_VIDEO_THUMBNAIL_URL)
-                                        .appendPath(key)
-                                        .appendPath(VIDEO_THUMBNAIL_QUALITY_URL);
-                                videoThumbnailsList[i] = thumbnailBuilder.build().toString();
-                            }
-                        }
-                        List<String[]> videosList = new ArrayList<>();
-                        videosList.add(videoUrlsList);
-                        videosList.add(videoThumbnailsList);
-                        movie.setTrailers(videosList);
-                    }
+    /**
+     * Sleep before sending a request again. Return false if the thread was interrupted (the
+     * request was cancelled) and nothing else should be sent.
+     */
+    private static boolean waitBeforeRetry(long millis) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /* Adds the bytes received to the counter of the thread */
+    private static final Transport.StreamWrapper BYTE_COUNTER =
+            new Transport.StreamWrapper() {
+                @Override
+                public InputStream wrap(InputStream inputStream) {
+                    return countBytes(inputStream);
                 }
+            };
+
+    /**
+     * Return a stream that adds the bytes read from the source to the counter of the thread.
+     */
+    private static InputStream countBytes(InputStream source) {
+        final long[] counter = sBytesReceived.get();
+        return new FilterInputStream(source) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) counter[0]++;
+                return b;
             }
 
-            // Extract the list of movie "reviews"
-            if (movieObject.has(REVIEWS_KEY)) {
-                JSONObject reviewsObject = movieObject.getJSONObject(REVIEWS_KEY);
-                if (reviewsObject.has(RESULTS_KEY)) {
-                    JSONArray reviews = reviewsObject.getJSONArray(RESULTS_KEY);
-                    if (reviews.length() > 0) {
-                        // Limit the list to 3 reviews
-                        int length;
-                        if (reviews.length() < 3) {
-                            length = reviews.length();
-                        } else {
-                            length = 3;
-                        }
-                        // Create an empty array for reviews contents
-                        String contentsList[] = new String[length];
-                        // Create an empty array for reviews urls
-                        String urlsList[] = new String[length];
-                        // Create an empty array for authors of the reviews
-                        String authorsList[] = new String[length];
-                        // Loop through each review in the array
-                        for (int i = 0; i < length; i++) {
-                            // Get review JSONObject at position i
-                            JSONObject review = reviews.getJSONObject(i);
-                            if (review.has(REVIEW_CONTENT_KEY)) {
-                                contentsList[i] = review.getString(REVIEW_CONTENT_KEY);
-                                if (review.has(REVIEW_URL_KEY)) {
-                                    urlsList[i] = review.getString(REVIEW_URL_KEY);
-                                }
-                                if (review.has(REVIEW_AUTHOR_KEY)) {
-                                    authorsList[i] = review.getString(REVIEW_AUTHOR_KEY);
-                                }
-                            }
-                        }
-                        List<String[]> reviewsList = new ArrayList<>();
-                        reviewsList.add(contentsList);
-                        reviewsList.add(urlsList);
-                        reviewsList.add(authorsList);
-                        movie.setReviews(reviewsList);
-                    }
-                }
+            @Override
+            public int read(byte[] buffer, int offset, int count) throws IOException {
+                int read = super.read(buffer, offset, count);
+                if (read > 0) counter[0] += read;
+                return read;
             }
+        };
+    }
 
-            // Extract the list of recommended movies
-            if (movieObject.has(RECOMMENDATIONS_KEY)) {
-                JSONObject recommendationsObject = movieObject.getJSONObject(RECOMMENDATIONS_KEY);
-                if (recommendationsObject.has(RESULTS_KEY)) {
-                    JSONArray recommendations = recommendationsObject.getJSONArray(RESULTS_KEY);
-                    if (recommendations.length() > 0) {
-                        // Create an empty ArrayList that we can start adding recommendations to
-                        List<Movie> recommendedMovies = new ArrayList<>();
-                        // Limit the list to 10 movies
-                        int length;
-                        if (recommendations.length() < 10) {
-                            length = recommendations.length();
-                        } else {
-                            length = 10;
-                        }
-                        // Loop through each movie in the array
-                        for (int i = 0; i < length; i++) {
-                            // Create an empty Movie Object to add information about it
-                            Movie recommendedMovie = new Movie();
-                            // Get movie JSONObject at position i
-                            JSONObject recommendation = recommendations.getJSONObject(i);
-                            // Extract "id"
-                            if (recommendation.has(ID_KEY)) {
-                                int id = recommendation.getInt(ID_KEY);
-                                recommendedMovie.setId(id);
-                            }
-                            // Extract "poster image"
-                            if (recommendation.has(POSTER_KEY)) {
-                                String imageUrl = BASE_IMAGE_URL_342
-                                        + recommendation.getString(POSTER_KEY);
-                                recommendedMovie.setImageUrl(imageUrl);
-                            }
-                            // Add movie Object to list of recommendations
-                            recommendedMovies.add(recommendedMovie);
-                        }
-                        movie.setRecommendations(recommendedMovies);
-                    }
+    /**
+     * Parse the body of a cached response, or return null if it can't be read.
+     */
+    private static <T> T parseCachedBody(HttpDiskCache cache, HttpDiskCache.Entry entry,
+                                         ResponseParser<T> parser) {
+        InputStream inputStream = null;
+        try {
+            inputStream = new BufferedInputStream(cache.openBody(entry));
+            return parser.parse(inputStream);
+        } catch (IOException | IllegalStateException e) {
+            Log.e(LOG_TAG, "Problem parsing the cached JSON results", e);
+            return null;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    // Ignore
                 }
             }
-
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Problem parsing the JSON results", e);
         }
-
-        // Return the movie object with the detailed information
-        return movie;
     }
 }
@@ -0,0 +1,333 @@
+package com.example.android.pickamoo.utilities;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.example.android.pickamoo.MainActivity.LOG_TAG;
+
+/**
+ * Runs all the network and parse work of the app in a small pool of background threads. Requests
+ * are taken by priority (what the user is looking at first), requests for the same key (i.e. the
+ * same URL) share a single execution, and the requests of an owner (a Loader, an Activity...)
+ * can be cancelled when it goes away.
+ */
+
+public final class RequestScheduler {
+
+    /**
+     * Priority classes, from the most to the least urgent.
+     */
+    public enum Priority {
+        /* Data the user is waiting for */
+        USER_VISIBLE,
+        /* Data the user will probably need soon */
+        PREFETCH,
+        /* Data nobody is waiting for */
+        BACKGROUND
+    }
+
+    /**
+     * Interface to be given the result of a request when it completes, whoever started it.
+     */
+    public interface Callback<T> {
+        /**
+         * Called on the thread that ran the request. It isn't called if the request was
+         * cancelled.
+         *
+         * @param result is the result of the request, or null if it failed
+         */
+        void onResult(T result);
+    }
+
+    /* Number of requests that can run at the same time */
+    private static final int POOL_SIZE = 3;
+
+    /* Time an idle thread is kept alive, in seconds */
+    private static final long KEEP_ALIVE_TIME = 30;
+
+    private static final RequestScheduler sInstance = new RequestScheduler();
+
+    /* Threads of the pool. Requests made from them are run at once to avoid deadlocks */
+    private final Set<Thread> mPoolThreads = new HashSet<>();
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /* Requests queued or running, by key */
+    private final Map<String, Request<?>> mRequests = new HashMap<>();
+
+    /* Order of arrival of the requests, used to break ties between equal priorities */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /* Request running in each thread of the pool */
+    private final ThreadLocal<Request<?>> mCurrentRequest = new ThreadLocal<>();
+
+    private RequestScheduler() {
+        mExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_TIME,
+                TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                synchronized (mPoolThreads) {
+                                    mPoolThreads.add(Thread.currentThread());
+                                }
+                                try {
+                                    runnable.run();
+                                } finally {
+                                    synchronized (mPoolThreads) {
+                                        mPoolThreads.remove(Thread.currentThread());
+                                    }
+                                }
+                            }
+                        }, "RequestScheduler #" + mCount.incrementAndGet());
+                    }
+                });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the unique instance of the scheduler
+     */
+    public static RequestScheduler getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * A queued or running request. It is ordered by priority and then by arrival.
+     */
+    private final class Request<T> extends FutureTask<T> implements Comparable<Request<?>> {
+        final String mKey;
+        final long mSequence;
+        volatile Priority mPriority;
+
+        /* Owners waiting for the result. The request is cancelled when all of them cancel */
+        final Set<Object> mOwners = new HashSet<>();
+
+        /* Callbacks of the callers, with the owner that can remove them */
+        final List<Listener<T>> mListeners = new ArrayList<>();
+
+        Request(String key, Priority priority, Callable<T> callable) {
+            super(callable);
+            mKey = key;
+            mPriority = priority;
+            mSequence = RequestScheduler.this.mSequence.getAndIncrement();
+        }
+
+        @Override
+        public void run() {
+            mCurrentRequest.set(this);
+            try {
+                super.run();
+            } finally {
+                mCurrentRequest.remove();
+            }
+        }
+
+        @Override
+        public int compareTo(Request<?> other) {
+            int byPriority = mPriority.compareTo(other.mPriority);
+            if (byPriority != 0) return byPriority;
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+
+        @Override
+        protected void done() {
+            List<Listener<T>> listeners;
+            synchronized (RequestScheduler.this) {
+                if (mRequests.get(mKey) == this) {
+                    mRequests.remove(mKey);
+                }
+                listeners = new ArrayList<>(mListeners);
+                mListeners.clear();
+            }
+            if (isCancelled() || listeners.isEmpty()) {
+                return;
+            }
+            T result = null;
+            try {
+                result = get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Problem running the request " + mKey, e.getCause());
+            }
+            for (Listener<T> listener : listeners) {
+                listener.mCallback.onResult(result);
+            }
+        }
+    }
+
+    /**
+     * A callback of a request and the owner that added it.
+     */
+    private static final class Listener<T> {
+        final Object mOwner;
+        final Callback<? super T> mCallback;
+
+        Listener(Object owner, Callback<? super T> callback) {
+            mOwner = owner;
+            mCallback = callback;
+        }
+    }
+
+    /**
+     * Queue a request, or join the one with the same key if it is already queued or running.
+     *
+     * @param key      identifies the request (i.e. its URL)
+     * @param priority is the priority class of the request. A queued or running request is
+     *                 promoted if a more urgent caller joins it
+     * @param owner    is the object whose {@link #cancel(Object)} drops this request, or null
+     * @param callable does the work
+     */
+    public <T> Future<T> submit(String key, Priority priority, Object owner,
+                                Callable<T> callable) {
+        return submit(key, priority, owner, callable, null);
+    }
+
+    /**
+     * Queue a request, or join the one with the same key if it is already queued or running,
+     * and give its result to the callback when it completes. Since the request may have been
+     * started by another caller, the callable must not depend on the state of the caller: the
+     * callback is where each caller uses the result.
+     *
+     * @param callback is given the result of the request, or null. It is removed when its owner
+     *                 cancels its requests
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> Future<T> submit(String key, Priority priority, Object owner,
+                                             Callable<T> callable, Callback<? super T> callback) {
+        Request<T> request = (Request<T>) mRequests.get(key);
+        // A finished request can still be in the map: done() runs after its waiters wake up
+        if (request == null || request.isDone()) {
+            request = new Request<>(key, priority, callable);
+            addOwner(request, owner, callback);
+            mRequests.put(key, request);
+            mExecutor.execute(request);
+            return request;
+        }
+        addOwner(request, owner, callback);
+        if (priority.compareTo(request.mPriority) < 0) {
+            // A running request is promoted too, so it is retried as the new caller expects
+            // (see getCurrentPriority)
+            boolean queued = mExecutor.remove(request);
+            request.mPriority = priority;
+            if (queued) {
+                // The request hasn't started yet, queue it again with the higher priority
+                mExecutor.execute(request);
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Return the current priority of the request running in the calling thread, which is raised
+     * when a more urgent caller joins it, or null if the thread isn't running a request.
+     */
+    public Priority getCurrentPriority() {
+        Request<?> request = mCurrentRequest.get();
+        return request != null ? request.mPriority : null;
+    }
+
+    /**
+     * Run a request and wait for its result. Return null if it failed or was cancelled.
+     */
+    public <T> T execute(String key, Priority priority, Object owner, Callable<T> callable) {
+        if (isPoolThread()) {
+            // Waiting for another request of the pool could block all its threads
+            try {
+                return callable.call();
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Problem running the request " + key, e);
+                return null;
+            }
+        }
+        Future<T> future = submit(key, priority, owner, callable);
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Problem running the request " + key, e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Drop the requests of the given owner. Requests that other callers are waiting for go on.
+     */
+    public void cancel(Object owner) {
+        cancelExcept(owner, null);
+    }
+
+    /**
+     * Drop the requests of the given owner except the one with the given key (i.e. the request
+     * the user is about to wait for). Requests that other callers are waiting for go on.
+     *
+     * @param keptKey is the key of the request that goes on, or null to drop all of them
+     */
+    public synchronized void cancelExcept(Object owner, String keptKey) {
+        if (owner == null) return;
+        Iterator<Request<?>> iterator = mRequests.values().iterator();
+        while (iterator.hasNext()) {
+            Request<?> request = iterator.next();
+            if (request.mKey.equals(keptKey)) continue;
+            removeListeners(request, owner);
+            if (request.mOwners.remove(owner) && request.mOwners.isEmpty()) {
+                iterator.remove();
+                request.cancel(true);
+                mExecutor.remove(request);
+            }
+        }
+    }
+
+    private static <T> void addOwner(Request<T> request, Object owner,
+                                     Callback<? super T> callback) {
+        // Callers without owner can't cancel, so they keep the request alive with a unique token
+        request.mOwners.add(owner != null ? owner : new Object());
+        if (callback != null) {
+            request.mListeners.add(new Listener<T>(owner, callback));
+        }
+    }
+
+    private static void removeListeners(Request<?> request, Object owner) {
+        Iterator<? extends Listener<?>> iterator = request.mListeners.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mOwner == owner) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private boolean isPoolThread() {
+        synchronized (mPoolThreads) {
+            return mPoolThreads.contains(Thread.currentThread());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android.pickamoo.utilities;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Decides how many times a failed request to TheMovieDb API is sent again and how long to wait
+ * before each attempt. The waits grow exponentially and are randomized ("full jitter"), so the
+ * clients that failed together don't all come back at the same moment. When the server says how
+ * long to wait (Retry-After header of a 429 or 503 response) that time is used instead.
+ */
+
+public final class RetryPolicy {
+
+    /* Policy used by the app: up to 3 attempts, waiting up to 0.5 s and then up to 1 s */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 500, 8000, 10000);
+
+    /* Format of the dates of the HTTP headers (i.e. "Wed, 21 Oct 2015 07:28:00 GMT") */
+    private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private static final Random sRandom = new Random();
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final long mMaxRetryAfterMillis;
+
+    /**
+     * @param maxAttempts         is the maximum number of times a request is sent, including the
+     *                            first one
+     * @param baseDelayMillis     is the maximum wait before the first retry. It doubles for each
+     *                            following one
+     * @param maxDelayMillis      is the limit of the maximum wait
+     * @param maxRetryAfterMillis is the longest Retry-After that is waited. If the server asks
+     *                            for more, the request fails at once
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                       long maxRetryAfterMillis) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mMaxRetryAfterMillis = maxRetryAfterMillis;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    public long getMaxRetryAfter() {
+        return mMaxRetryAfterMillis;
+    }
+
+    /**
+     * Return the time to wait before sending a request again: a random time between zero and
+     * the base delay doubled once for each previous retry, without going over the maximum.
+     *
+     * @param retry is the number of the retry, starting at 0
+     */
+    public long getBackoffDelay(int retry) {
+        long ceiling = mBaseDelayMillis << Math.min(retry, 20);
+        ceiling = Math.min(ceiling, mMaxDelayMillis);
+        if (ceiling <= 0) {
+            return 0;
+        }
+        return (long) (sRandom.nextDouble() * ceiling);
+    }
+
+    /**
+     * Return true if a request that failed with the given HTTP status code may succeed if it is
+     * sent again: too many requests (429) and server errors (5xx). Other client errors (i.e. 404)
+     * would fail again.
+     */
+    public static boolean isRetryable(int responseCode) {
+        return responseCode == 429 || (responseCode >= 500 && responseCode < 600);
+    }
+
+    /**
+     * Return the wait asked by the value of a Retry-After header, in milliseconds, or -1 if there
+     * is no valid value. It can be a number of seconds or a date.
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds >= 0 ? seconds * 1000 : -1;
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, it should be a date
+        }
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_PATTERN, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(value);
+            return Math.max(0, date.getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.android.pickamoo.utilities;
+
+/**
+ * Builds the URLs of the images of TheMovieDb. The movies only keep the file path of their
+ * images (i.e. "/pB8BM7pdSp6B6Ih7QZ4DrQ3PmJK.jpg"), and the size is chosen when the image is
+ * shown: the smallest size TheMovieDb has that is at least as wide as the view, in pixels. This
+ * way a small grid cell doesn't download (and decode) a poster much bigger than itself.
+ */
+
+public final class TmdbImages {
+
+    /**
+     * Base URL of the images. The size and the file path are added to it
+     */
+    private static final String BASE_IMAGE_URL = "https://image.tmdb.org/t/p/";
+
+    /**
+     * Size of the images in their original resolution
+     */
+    private static final String ORIGINAL_SIZE = "original";
+
+    /**
+     * Sizes of each kind of image, from the smallest to the biggest, and their widths in pixels
+     */
+    private static final String[] POSTER_SIZES =
+            {"w92", "w154", "w185", "w342", "w500", "w780"};
+    private static final int[] POSTER_WIDTHS = {92, 154, 185, 342, 500, 780};
+    private static final String[] BACKDROP_SIZES = {"w300", "w780", "w1280"};
+    private static final int[] BACKDROP_WIDTHS = {300, 780, 1280};
+    // Profiles are also available 632 pixels high, which is about 421 pixels wide
+    private static final String[] PROFILE_SIZES = {"w45", "w185", "h632"};
+    private static final int[] PROFILE_WIDTHS = {45, 185, 421};
+
+    /**
+     * Width and height ratios of the posters (2:3) and the backdrops (16:9)
+     */
+    private static final float POSTER_RATIO = 2f / 3f;
+    private static final float BACKDROP_RATIO = 16f / 9f;
+
+    /**
+     * The original files are often several times bigger than the screen, so the biggest size is
+     * used instead unless it has to be stretched more than this
+     */
+    private static final float MAX_STRETCH = 1.5f;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link TmdbImages} object.
+     * This class is only meant to hold static methods.
+     */
+    private TmdbImages() {
+    }
+
+    /**
+     * Return the URL of a poster for a view of the given width, in pixels, or null if there is
+     * no file path.
+     */
+    public static String getPosterUrl(String filePath, int widthPixels) {
+        return getUrl(filePath, widthPixels, POSTER_SIZES, POSTER_WIDTHS);
+    }
+
+    /**
+     * Return the URL of a poster for a view of the given height, in pixels, or null if there is
+     * no file path.
+     */
+    public static String getPosterUrlForHeight(String filePath, int heightPixels) {
+        return getPosterUrl(filePath, Math.round(heightPixels * POSTER_RATIO));
+    }
+
+    /**
+     * Return the URL of a backdrop for a view of the given height, in pixels, or null if there
+     * is no file path.
+     */
+    public static String getBackdropUrlForHeight(String filePath, int heightPixels) {
+        return getUrl(filePath, Math.round(heightPixels * BACKDROP_RATIO), BACKDROP_SIZES,
+                BACKDROP_WIDTHS);
+    }
+
+    /**
+     * Return the URL of a profile photo for a view of the given width, in pixels, or null if
+     * there is no file path.
+     */
+    public static String getProfileUrl(String filePath, int widthPixels) {
+        return getUrl(filePath, widthPixels, PROFILE_SIZES, PROFILE_WIDTHS);
+    }
+
+    /**
+     * Return the URL of the image with the smallest size that is at least as wide as the view.
+     * Links that are already complete URLs (i.e. data saved by older versions of the app) are
+     * returned as they are.
+     */
+    private static String getUrl(String filePath, int widthPixels, String[] sizes, int[] widths) {
+        if (filePath == null || filePath.isEmpty()) {
+            return null;
+        }
+        if (filePath.startsWith("http")) {
+            return filePath;
+        }
+        return BASE_IMAGE_URL + getSize(widthPixels, sizes, widths) + filePath;
+    }
+
+    /**
+     * Return the smallest of the sizes that covers the given width. If the view isn't measured
+     * yet (width 0) the biggest size is used.
+     */
+    private static String getSize(int widthPixels, String[] sizes, int[] widths) {
+        int last = widths.length - 1;
+        if (widthPixels <= 0) {
+            return sizes[last];
+        }
+        for (int i = 0; i < widths.length; i++) {
+            if (widths[i] >= widthPixels) {
+                return sizes[i];
+            }
+        }
+        return widths[last] * MAX_STRETCH >= widthPixels ? sizes[last] : ORIGINAL_SIZE;
+    }
+}
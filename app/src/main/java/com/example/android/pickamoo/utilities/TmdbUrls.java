@@ -0,0 +1,166 @@
+package com.example.android.pickamoo.utilities;
+
+import com.example.android.pickamoo.BuildConfig;
+
+/**
+ * Builds the request URLs of TheMovieDb API. The base URL can be changed (i.e. to point to a
+ * local fake server in tests), so no other class hardcodes the address of the API.
+ */
+
+public final class TmdbUrls {
+
+    /**
+     * Base URL of the TheMovieDb API
+     */
+    public static final String DEFAULT_BASE_URL = "https://api.themoviedb.org/3/";
+
+    /**
+     * Query parameter for the API key
+     */
+    private static final String API_QUERY_PARAMETER = "?api_key=";
+
+    /**
+     * API Key
+     */
+    private static final String API_KEY = BuildConfig.API_KEY;
+
+    /**
+     * Query parameter for the genre of the discover requests
+     */
+    private static final String GENRE_QUERY_PARAMETER = "&with_genres=";
+
+    /**
+     * Query parameter for the append_to_response method
+     */
+    private static final String APPEND_QUERY_PARAMETER = "&append_to_response=";
+
+    /**
+     * Query parameter for the language
+     */
+    private static final String LANGUAGE_QUERY_PARAMETER = "&language=";
+
+    /**
+     * Language value null. The main value is stored in res/strings to allow translations
+     */
+    private static final String LANGUAGE_VALUE = ",null";
+
+    /**
+     * Bit mask with every section of the details of a movie (SECTION_ constants of
+     * {@link MovieJsonParser}) that can be appended to its request
+     */
+    public static final int ALL_SECTIONS = (1 << MovieJsonParser.SECTION_IMAGES)
+            | (1 << MovieJsonParser.SECTION_CREDITS) | (1 << MovieJsonParser.SECTION_VIDEOS)
+            | (1 << MovieJsonParser.SECTION_REVIEWS)
+            | (1 << MovieJsonParser.SECTION_RECOMMENDATIONS);
+
+    private static volatile String sBaseUrl = DEFAULT_BASE_URL;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link TmdbUrls} object.
+     * This class is only meant to hold static methods.
+     */
+    private TmdbUrls() {
+    }
+
+    /**
+     * Change the base URL of the API. It must end with a slash.
+     */
+    public static void setBaseUrl(String baseUrl) {
+        sBaseUrl = baseUrl;
+    }
+
+    /**
+     * Return the base URL of the API.
+     */
+    public static String getBaseUrl() {
+        return sBaseUrl;
+    }
+
+    /**
+     * URL for popular movies data
+     */
+    public static String popularMovies() {
+        return sBaseUrl + "movie/popular" + API_QUERY_PARAMETER + API_KEY;
+    }
+
+    /**
+     * URL for top rated movies data
+     */
+    public static String topRatedMovies() {
+        return sBaseUrl + "movie/top_rated" + API_QUERY_PARAMETER + API_KEY;
+    }
+
+    /**
+     * URL for movies data of the given genre
+     */
+    public static String moviesByGenre(String genreId) {
+        return sBaseUrl + "discover/movie" + API_QUERY_PARAMETER + API_KEY
+                + GENRE_QUERY_PARAMETER + genreId;
+    }
+
+    /**
+     * URL for the details of a movie, with its images, credits, videos, reviews and
+     * recommendations
+     *
+     * @param languageCode is the language of the texts (i.e. "en")
+     */
+    public static String movieDetails(int movieId, String languageCode) {
+        return movieDetails(movieId, languageCode, ALL_SECTIONS);
+    }
+
+    /**
+     * URL for the details of a movie with only the given sections appended. The others can be
+     * requested later with {@link #movieSection(int, int, String)}.
+     *
+     * @param languageCode     is the language of the texts (i.e. "en")
+     * @param appendedSections is a bit mask of SECTION_ constants of {@link MovieJsonParser}
+     */
+    public static String movieDetails(int movieId, String languageCode, int appendedSections) {
+        StringBuilder url = new StringBuilder(sBaseUrl).append("movie/").append(movieId)
+                .append(API_QUERY_PARAMETER).append(API_KEY);
+        String separator = APPEND_QUERY_PARAMETER;
+        for (int section = MovieJsonParser.SECTION_IMAGES;
+             section <= MovieJsonParser.SECTION_RECOMMENDATIONS; section++) {
+            if ((appendedSections & (1 << section)) != 0) {
+                url.append(separator).append(getSectionPath(section));
+                separator = ",";
+            }
+        }
+        return url.append(LANGUAGE_QUERY_PARAMETER).append(languageCode).append(LANGUAGE_VALUE)
+                .toString();
+    }
+
+    /**
+     * URL for a single section of the details of a movie (i.e. /movie/{id}/credits)
+     *
+     * @param section      is one of the SECTION_ constants of {@link MovieJsonParser}, except
+     *                     the header
+     * @param languageCode is the language of the texts (i.e. "en")
+     */
+    public static String movieSection(int movieId, int section, String languageCode) {
+        return sBaseUrl + "movie/" + String.valueOf(movieId) + "/" + getSectionPath(section)
+                + API_QUERY_PARAMETER + API_KEY + LANGUAGE_QUERY_PARAMETER + languageCode
+                + LANGUAGE_VALUE;
+    }
+
+    /**
+     * Return the name of a section in the API, used both in append_to_response and as the path of
+     * its own request.
+     */
+    private static String getSectionPath(int section) {
+        switch (section) {
+            case MovieJsonParser.SECTION_IMAGES:
+                return "images";
+            case MovieJsonParser.SECTION_CREDITS:
+                return "credits";
+            case MovieJsonParser.SECTION_VIDEOS:
+                return "videos";
+            case MovieJsonParser.SECTION_REVIEWS:
+                return "reviews";
+            case MovieJsonParser.SECTION_RECOMMENDATIONS:
+                return "recommendations";
+            default:
+                throw new IllegalArgumentException("Not a section of its own: " + section);
+        }
+    }
+}
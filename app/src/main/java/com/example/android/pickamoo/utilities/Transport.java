@@ -0,0 +1,58 @@
+package com.example.android.pickamoo.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Performs the HTTP requests of {@link QueryUtils}. The app uses {@link HttpTransport}; tests can
+ * replace it with {@link QueryUtils#setTransport(Transport)}.
+ */
+
+public interface Transport {
+
+    /**
+     * Send a GET request to the given URL with the given extra headers.
+     */
+    Response get(URL url, Map<String, String> headers) throws IOException;
+
+    /**
+     * The response to a request. {@link #release()} must always be called once it isn't needed.
+     */
+    interface Response {
+
+        /**
+         * Return the HTTP status code (i.e. 200 or 304).
+         */
+        int getCode() throws IOException;
+
+        /**
+         * Return the value of a response header, or null if it isn't present.
+         */
+        String getHeader(String name);
+
+        /**
+         * Return the value of the Expires header in milliseconds, or 0 if it isn't present.
+         */
+        long getExpiration();
+
+        /**
+         * Return the decoded body. The raw stream is passed through the given wrapper first (i.e.
+         * to count the bytes received), or used as it is if the wrapper is null.
+         */
+        InputStream getBody(StreamWrapper wrapper) throws IOException;
+
+        /**
+         * Free the resources of the response (i.e. return its connection to the pool).
+         */
+        void release();
+    }
+
+    /**
+     * Wraps the raw stream of a response.
+     */
+    interface StreamWrapper {
+        InputStream wrap(InputStream inputStream);
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.android.pickamoo.utilities;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local HTTP server that answers like TheMovieDb API with the JSON fixtures stored in the test
+ * resources (/fixtures). It can add latency and limit the bandwidth, so network performance can be
+ * measured without depending on the real API. Responses carry an ETag and the server answers
+ * 304 Not Modified to conditional requests, and bodies are compressed with gzip when asked.
+ *
+ * Paths served (relative to {@link #getBaseUrl()}):
+ * movie/popular, movie/top_rated, discover/movie, movie/{id} (from movie_{id}.json) and
+ * movie/{id}/{section} (the appended section of the same name in movie_{id}.json).
+ */
+
+public class FakeTmdbServer {
+
+    private static final String API_PREFIX = "/3/";
+
+    /* Size of the chunks written when the bandwidth is limited, in bytes */
+    private static final int CHUNK_SIZE = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private HttpServer mServer;
+
+    private volatile long mLatencyMillis;
+    private volatile long mBytesPerSecond;
+    private volatile String mCacheControl = "max-age=0";
+    private volatile int mForcedResponseCode;
+    private volatile String mRetryAfter;
+
+    /* Latch the requests wait for before being answered, or null */
+    private volatile CountDownLatch mGate;
+
+    /* Released once for each request received */
+    private final Semaphore mRequestsReceived = new Semaphore(0);
+
+    /* Number of requests still answered with the forced code, or -1 for all of them */
+    private final AtomicInteger mForcedResponsesLeft = new AtomicInteger(-1);
+
+    /* Statistics, useful to check what actually went through the network */
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mNotModifiedCount = new AtomicInteger();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    /**
+     * Start listening on a free port of the loopback interface.
+     */
+    public void start() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext(API_PREFIX, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+    }
+
+    public void stop() {
+        if (mServer != null) {
+            mServer.stop(0);
+        }
+    }
+
+    /**
+     * Return the URL to give to {@link TmdbUrls#setBaseUrl(String)}.
+     */
+    public String getBaseUrl() {
+        return "http://" + mServer.getAddress().getHostString() + ":"
+                + mServer.getAddress().getPort() + API_PREFIX;
+    }
+
+    /**
+     * Delay every response by the given time.
+     */
+    public void setLatency(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * Limit the speed at which bodies are written. Zero means no limit.
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Change the Cache-Control header of the responses ("max-age=0" by default, so every request
+     * is revalidated).
+     */
+    public void setCacheControl(String cacheControl) {
+        mCacheControl = cacheControl;
+    }
+
+    /**
+     * Answer every request with the given error code (i.e. 503). Zero serves the fixtures again.
+     */
+    public void setForcedResponseCode(int responseCode) {
+        setForcedResponseCode(responseCode, -1);
+    }
+
+    /**
+     * Answer the next requests with the given error code, and serve the fixtures again after
+     * them.
+     *
+     * @param count is the number of requests that fail, or -1 for all of them
+     */
+    public void setForcedResponseCode(int responseCode, int count) {
+        mForcedResponsesLeft.set(count);
+        mForcedResponseCode = responseCode;
+    }
+
+    /**
+     * Add a Retry-After header with the given value (i.e. "120") to the error responses, or
+     * remove it if it is null.
+     */
+    public void setRetryAfter(String retryAfter) {
+        mRetryAfter = retryAfter;
+    }
+
+    /**
+     * Hold every request until the given latch is opened, or answer them at once again if it is
+     * null. With {@link #awaitRequest(long)}, a test knows a request is in flight without
+     * depending on timing.
+     */
+    public void setGate(CountDownLatch gate) {
+        mGate = gate;
+    }
+
+    /**
+     * Wait until the server receives a request not awaited yet. Return false if none arrives in
+     * the given time.
+     */
+    public boolean awaitRequest(long timeoutMillis) throws InterruptedException {
+        return mRequestsReceived.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public int getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    /**
+     * Return the number of body bytes written, after compression.
+     */
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    /**
+     * Return the uncompressed content of a fixture, or null if it doesn't exist.
+     */
+    public static byte[] readFixture(String name) throws IOException {
+        InputStream inputStream = FakeTmdbServer.class.getResourceAsStream("/fixtures/" + name);
+        if (inputStream == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        mRequestCount.incrementAndGet();
+        mRequestsReceived.release();
+        awaitGate();
+        sleep(mLatencyMillis);
+
+        if (mForcedResponseCode != 0 && takeForcedResponse()) {
+            if (mRetryAfter != null) {
+                exchange.getResponseHeaders().set("Retry-After", mRetryAfter);
+            }
+            exchange.sendResponseHeaders(mForcedResponseCode, -1);
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath().substring(API_PREFIX.length());
+        byte[] body = readBody(path);
+        if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        String eTag = "\"" + hash(body) + "\"";
+        exchange.getResponseHeaders().set("ETag", eTag);
+        exchange.getResponseHeaders().set("Cache-Control", mCacheControl);
+        if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            mNotModifiedCount.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = gzip(body);
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        writeThrottled(exchange.getResponseBody(), body);
+        mBytesSent.addAndGet(body.length);
+    }
+
+    /**
+     * Return true if the current request has to be answered with the forced code.
+     */
+    private boolean takeForcedResponse() {
+        while (true) {
+            int left = mForcedResponsesLeft.get();
+            if (left < 0) {
+                return true;
+            }
+            if (left == 0) {
+                return false;
+            }
+            if (mForcedResponsesLeft.compareAndSet(left, left - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return the uncompressed body that answers the given path, or null if there is none.
+     */
+    private static byte[] readBody(String path) throws IOException {
+        String[] segments = path.split("/");
+        if (segments.length == 3 && segments[0].equals("movie") && segments[1].matches("\\d+")) {
+            // A section of the details, the same JSON TheMovieDb would append to the movie
+            byte[] details = readFixture("movie_" + segments[1] + ".json");
+            if (details == null) {
+                return null;
+            }
+            JsonObject movie = new JsonParser().parse(new String(details, UTF_8))
+                    .getAsJsonObject();
+            JsonElement section = movie.get(segments[2]);
+            if (section == null || !section.isJsonObject()) {
+                return null;
+            }
+            section.getAsJsonObject().add("id", movie.get("id"));
+            return section.toString().getBytes(UTF_8);
+        }
+        return readFixture(getFixtureName(path));
+    }
+
+    /**
+     * Return the name of the fixture that answers the given path.
+     */
+    private static String getFixtureName(String path) {
+        if (path.equals("discover/movie")) {
+            return "discover.json";
+        } else if (path.startsWith("movie/")) {
+            String name = path.substring("movie/".length());
+            if (name.matches("\\d+")) {
+                return "movie_" + name + ".json";
+            }
+            return name + ".json";
+        }
+        return path + ".json";
+    }
+
+    private void writeThrottled(OutputStream output, byte[] body) throws IOException {
+        long bytesPerSecond = mBytesPerSecond;
+        if (bytesPerSecond <= 0) {
+            output.write(body);
+            return;
+        }
+        for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, body.length - offset);
+            output.write(body, offset, length);
+            output.flush();
+            sleep(length * 1000L / bytesPerSecond);
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOutput = new GZIPOutputStream(output);
+        gzipOutput.write(body);
+        gzipOutput.close();
+        return output.toByteArray();
+    }
+
+    private static String hash(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                builder.append(String.format("%02x", digest[i]));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void awaitGate() {
+        CountDownLatch gate = mGate;
+        if (gate == null) return;
+        try {
+            gate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.android.pickamoo.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the open addressing table of {@link IntHashSet}, mainly the removal of values in the
+ * middle of a cluster of collisions.
+ */
+public class IntHashSetTest {
+
+    @Test
+    public void add_returnsFalseForValuesAlreadyInTheSet() {
+        IntHashSet set = new IntHashSet();
+
+        assertTrue(set.add(550));
+        assertFalse(set.add(550));
+        assertTrue(set.contains(550));
+        assertFalse(set.contains(551));
+        assertEquals(1, set.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void add_rejectsValuesThatAreNotPositive() {
+        new IntHashSet().add(0);
+    }
+
+    @Test
+    public void remove_keepsTheRestOfTheClusterReachable() {
+        // Half of the slots are used, so many values share a cluster with their neighbours
+        IntHashSet set = new IntHashSet(1000);
+        for (int value = 1; value <= 1000; value++) {
+            set.add(value);
+        }
+
+        for (int value = 1; value <= 1000; value += 2) {
+            assertTrue(set.remove(value));
+        }
+
+        for (int value = 1; value <= 1000; value++) {
+            assertEquals(value % 2 == 0, set.contains(value));
+        }
+        assertEquals(500, set.size());
+    }
+
+    @Test
+    public void contains_isFalseAfterRemove() {
+        IntHashSet set = new IntHashSet();
+        set.add(13);
+        set.add(42);
+
+        assertTrue(set.remove(13));
+        assertFalse(set.remove(13));
+
+        assertFalse(set.contains(13));
+        assertTrue(set.contains(42));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void growing_keepsEveryValue() {
+        // The default set has 8 slots, so it grows several times
+        IntHashSet set = new IntHashSet();
+        for (int value = 1; value <= 200; value++) {
+            set.add(value * 7919);
+        }
+
+        for (int value = 1; value <= 200; value++) {
+            assertTrue(set.contains(value * 7919));
+        }
+        assertFalse(set.contains(7918));
+        assertEquals(200, set.size());
+    }
+
+    @Test
+    public void copy_isIndependentOfTheOriginal() {
+        IntHashSet set = new IntHashSet();
+        set.add(1);
+        IntHashSet copy = new IntHashSet(set);
+
+        copy.add(2);
+        copy.remove(1);
+
+        assertTrue(set.contains(1));
+        assertFalse(set.contains(2));
+        assertFalse(copy.contains(1));
+        assertTrue(copy.contains(2));
+    }
+}
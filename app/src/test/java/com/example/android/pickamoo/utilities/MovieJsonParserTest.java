@@ -0,0 +1,50 @@
+package com.example.android.pickamoo.utilities;
+
+import com.example.android.pickamoo.Movie;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the parts of {@link MovieJsonParser} that skip values while reading.
+ */
+public class MovieJsonParserTest {
+
+    @Test
+    public void directors_areJoined_whateverTheOrderOfTheKeys() throws IOException {
+        Movie movie = parseCrew("{\"job\": \"Director\", \"name\": \"Lana Wachowski\"},"
+                + "{\"name\": \"Bill Pope\", \"job\": \"Director of Photography\"},"
+                + "{\"name\": \"Lilly Wachowski\", \"department\": \"Directing\","
+                + " \"job\": \"Director\"}");
+
+        assertEquals("Lana Wachowski, Lilly Wachowski", movie.getDirector());
+    }
+
+    @Test
+    public void directorAfterAHugeCrew_isFound_andTheRestIsStillParsed() throws IOException {
+        StringBuilder crew = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            crew.append("{\"job\": \"Grip\", \"name\": \"Crew Member ").append(i)
+                    .append("\", \"known_for\": [{\"id\": ").append(i).append("}]},");
+        }
+        crew.append("{\"name\": \"David Fincher\", \"job\": \"Director\"}");
+
+        Movie movie = parseCrew(crew.toString());
+
+        assertEquals("David Fincher", movie.getDirector());
+        assertEquals("Fight Club", movie.getTitle());
+        assertEquals(1, movie.getReviews().get(0).length);
+    }
+
+    private static Movie parseCrew(String crew) throws IOException {
+        String json = "{\"id\": 550, \"credits\": {\"cast\": [], \"crew\": [" + crew + "]},"
+                + " \"title\": \"Fight Club\","
+                + " \"reviews\": {\"results\": [{\"author\": \"a\", \"content\": \"c\"}]}}";
+        return MovieJsonParser.parseMovieDetails(
+                new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.android.pickamoo.utilities;
+
+import com.example.android.pickamoo.Movie;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the requests of {@link QueryUtils} against the {@link FakeTmdbServer}, checking what is
+ * parsed and how much goes through the network.
+ */
+public class QueryUtilsTest {
+
+    /* Maximum size of the HTTP cache used by the tests (1 MB) */
+    private static final long CACHE_SIZE = 1024 * 1024;
+
+    /* Failures in a row that open the circuit breaker of the tests */
+    private static final int FAILURE_THRESHOLD = 4;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private FakeTmdbServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new FakeTmdbServer();
+        mServer.start();
+        TmdbUrls.setBaseUrl(mServer.getBaseUrl());
+        HttpDiskCache.install(mTemporaryFolder.newFolder("http"), CACHE_SIZE);
+        // Short waits, so the retries don't slow the tests down
+        QueryUtils.setRetryPolicy(new RetryPolicy(3, 10, 50, 1000));
+        QueryUtils.setCircuitBreaker(new CircuitBreaker(FAILURE_THRESHOLD, 60000));
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+        TmdbUrls.setBaseUrl(TmdbUrls.DEFAULT_BASE_URL);
+        QueryUtils.setRetryPolicy(RetryPolicy.DEFAULT);
+        QueryUtils.setCircuitBreaker(new CircuitBreaker());
+    }
+
+    @Test
+    public void fetchMoviesList_parsesFixture() {
+        List<Movie> movies = QueryUtils.fetchMoviesListData(TmdbUrls.popularMovies());
+
+        assertNotNull(movies);
+        assertEquals(4, movies.size());
+        assertEquals(550, movies.get(0).getId());
+        assertEquals("Fight Club", movies.get(0).getTitle());
+        assertTrue(movies.get(0).getImageUrl().endsWith("/pB8BM7pdSp6B6Ih7QZ4DrQ3PmJK.jpg"));
+    }
+
+    @Test
+    public void fetchMovie_parsesAllSections() {
+        Movie movie = QueryUtils.fetchMovieData(TmdbUrls.movieDetails(550, "en"));
+
+        assertNotNull(movie);
+        assertEquals("Fight Club", movie.getTitle());
+        assertEquals("David Fincher", movie.getDirector());
+        // Cast, trailers and reviews are stored as parallel arrays, one per field
+        assertEquals(10, movie.getCast().get(0).length);
+        assertEquals(3, movie.getTrailers().get(0).length);
+        assertEquals(3, movie.getReviews().get(0).length);
+        assertEquals(2, movie.getRecommendations().size());
+    }
+
+    @Test
+    public void fetchMovieSection_parsesOnlyThatSection() {
+        Movie movie = QueryUtils.fetchMovieSection(
+                TmdbUrls.movieSection(550, MovieJsonParser.SECTION_CREDITS, "en"),
+                MovieJsonParser.SECTION_CREDITS, RequestScheduler.Priority.USER_VISIBLE, null);
+
+        assertNotNull(movie);
+        assertEquals("David Fincher", movie.getDirector());
+        assertEquals(10, movie.getCast().get(0).length);
+        assertTrue(movie.isSectionLoaded(MovieJsonParser.SECTION_CREDITS));
+        assertFalse(movie.isSectionLoaded(MovieJsonParser.SECTION_REVIEWS));
+        assertNull(movie.getReviews());
+    }
+
+    @Test
+    public void fetchMovie_isCompressed() throws Exception {
+        QueryUtils.fetchMovieData(TmdbUrls.movieDetails(550, "en"));
+
+        assertTrue(mServer.getBytesSent() < FakeTmdbServer.readFixture("movie_550.json").length);
+    }
+
+    @Test
+    public void staleResponse_isRevalidated() {
+        mServer.setCacheControl("max-age=0");
+        List<Movie> first = QueryUtils.fetchMoviesListData(TmdbUrls.topRatedMovies());
+        long bytesSent = mServer.getBytesSent();
+        List<Movie> second = QueryUtils.fetchMoviesListData(TmdbUrls.topRatedMovies());
+
+        // The second request is answered with 304 and the body comes from the cache
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals(1, mServer.getNotModifiedCount());
+        assertEquals(bytesSent, mServer.getBytesSent());
+        assertTrue(Movie.sameMovies(first, second));
+    }
+
+    @Test
+    public void freshResponse_skipsNetwork() {
+        mServer.setCacheControl("max-age=600");
+        mServer.setLatency(300);
+        QueryUtils.fetchMoviesListData(TmdbUrls.moviesByGenre("28"));
+
+        long start = System.nanoTime();
+        List<Movie> movies = QueryUtils.fetchMoviesListData(TmdbUrls.moviesByGenre("28"));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertNotNull(movies);
+        assertEquals(1, mServer.getRequestCount());
+        assertTrue("Cache hit took " + elapsedMillis + " ms", elapsedMillis < 300);
+    }
+
+    @Test
+    public void serverError_returnsNull() {
+        mServer.setForcedResponseCode(503);
+
+        assertNull(QueryUtils.fetchMoviesListData(TmdbUrls.popularMovies()));
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void transientError_isRetried() {
+        mServer.setForcedResponseCode(503, 2);
+
+        List<Movie> movies = QueryUtils.fetchMoviesListData(TmdbUrls.popularMovies());
+
+        assertNotNull(movies);
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void clientError_isNotRetried() {
+        mServer.setForcedResponseCode(404);
+
+        assertNull(QueryUtils.fetchMoviesListData(TmdbUrls.popularMovies()));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void prefetchJoinedByTheUser_isRetried() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        mServer.setGate(gate);
+        mServer.setForcedResponseCode(503, 2);
+        Thread prefetch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                QueryUtils.fetchMoviesListData(TmdbUrls.popularMovies(), false,
+                        RequestScheduler.Priority.PREFETCH, null);
+            }
+        });
+        prefetch.start();
+        // Join the prefetch while the server holds its first attempt. The callable never runs
+        assertTrue(mServer.awaitRequest(5000));
+        Future<List<Movie>> joined = RequestScheduler.getInstance().submit(
+                QueryUtils.getRequestKey(TmdbUrls.popularMovies()),
+                RequestScheduler.Priority.USER_VISIBLE, null, new Callable<List<Movie>>() {
+                    @Override
+                    public List<Movie> call() {
+                        return null;
+                    }
+                });
+        gate.countDown();
+
+        List<Movie> movies = joined.get();
+        prefetch.join();
+
+        assertNotNull(movies);
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void backgroundRequest_isNotRetried() {
+        mServer.setForcedResponseCode(503);
+
+        assertNull(QueryUtils.fetchMoviesListData(TmdbUrls.popularMovies(), true,
+                RequestScheduler.Priority.BACKGROUND, null));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void retryAfter_isWaited() {
+        mServer.setForcedResponseCode(429, 1);
+        mServer.setRetryAfter("1");
+
+        long start = System.nanoTime();
+        List<Movie> movies = QueryUtils.fetchMoviesListData(TmdbUrls.popularMovies());
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertNotNull(movies);
+        assertTrue("Retried after " + elapsedMillis + " ms", elapsedMillis >= 1000);
+    }
+
+    @Test
+    public void longRetryAfter_opensCircuit() {
+        mServer.setForcedResponseCode(503);
+        mServer.setRetryAfter("120");
+
+        assertNull(QueryUtils.fetchMoviesListData(TmdbUrls.popularMovies()));
+        assertEquals(1, mServer.getRequestCount());
+        assertTrue(QueryUtils.getCircuitBreaker().isOpen());
+    }
+
+    @Test
+    public void openCircuit_failsFastWithStaleCache() {
+        // max-age=0: the cached list is stale at once
+        List<Movie> cached = QueryUtils.fetchMoviesListData(TmdbUrls.topRatedMovies());
+        mServer.setForcedResponseCode(503);
+        mServer.setLatency(100);
+
+        // The failures open the breaker, the stale list is returned meanwhile
+        List<Movie> first = QueryUtils.fetchMoviesListData(TmdbUrls.topRatedMovies());
+        List<Movie> second = QueryUtils.fetchMoviesListData(TmdbUrls.topRatedMovies());
+        int requestCount = mServer.getRequestCount();
+
+        long start = System.nanoTime();
+        List<Movie> third = QueryUtils.fetchMoviesListData(TmdbUrls.topRatedMovies());
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue(QueryUtils.getCircuitBreaker().isOpen());
+        assertEquals(1 + FAILURE_THRESHOLD, requestCount);
+        assertEquals(requestCount, mServer.getRequestCount());
+        assertTrue("Open circuit took " + elapsedMillis + " ms", elapsedMillis < 100);
+        assertTrue(Movie.sameMovies(cached, first));
+        assertTrue(Movie.sameMovies(cached, second));
+        assertTrue(Movie.sameMovies(cached, third));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.android.pickamoo.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link TmdbImages} picks the smallest size that covers the view.
+ */
+public class TmdbImagesTest {
+
+    private static final String PATH = "/pB8BM7pdSp6B6Ih7QZ4DrQ3PmJK.jpg";
+
+    @Test
+    public void poster_usesTheSmallestSizeThatCoversTheWidth() {
+        assertEquals("https://image.tmdb.org/t/p/w154" + PATH, TmdbImages.getPosterUrl(PATH, 154));
+        assertEquals("https://image.tmdb.org/t/p/w185" + PATH, TmdbImages.getPosterUrl(PATH, 155));
+        assertEquals("https://image.tmdb.org/t/p/w342" + PATH,
+                TmdbImages.getPosterUrlForHeight(PATH, 480));
+    }
+
+    @Test
+    public void widerThanEverySize_usesTheBiggestOrTheOriginal() {
+        assertEquals("https://image.tmdb.org/t/p/w780" + PATH, TmdbImages.getPosterUrl(PATH, 1080));
+        assertEquals("https://image.tmdb.org/t/p/original" + PATH,
+                TmdbImages.getPosterUrl(PATH, 1440));
+    }
+
+    @Test
+    public void backdropsAndProfiles_useTheirOwnSizes() {
+        assertEquals("https://image.tmdb.org/t/p/w780" + PATH,
+                TmdbImages.getBackdropUrlForHeight(PATH, 384));
+        assertEquals("https://image.tmdb.org/t/p/h632" + PATH, TmdbImages.getProfileUrl(PATH, 216));
+    }
+
+    @Test
+    public void missingPaths_andFullUrls_areNotChanged() {
+        assertNull(TmdbImages.getPosterUrl(null, 300));
+        assertNull(TmdbImages.getPosterUrl("", 300));
+        String url = "https://image.tmdb.org/t/p/w342" + PATH;
+        assertEquals(url, TmdbImages.getPosterUrl(url, 92));
+    }
+}
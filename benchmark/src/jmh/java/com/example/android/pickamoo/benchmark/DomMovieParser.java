@@ -0,0 +1,273 @@
+package com.example.android.pickamoo.benchmark;
+
+import com.example.android.pickamoo.Movie;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copy of the parser the app used before the streaming {@code MovieJsonParser}
+ * (extractListDataFromJson and extractMovieDetailsFromJson of QueryUtils): the whole response is
+ * read into a String and turned into a tree of {@link JSONObject} before the fields are extracted.
+ * It is only kept so the benchmarks can compare both approaches on the same fixtures.
+ */
+
+final class DomMovieParser {
+
+    private static final String RESULTS_KEY = "results";
+    private static final String ID_KEY = "id";
+    private static final String POSTER_KEY = "poster_path";
+    private static final String TITLE_KEY = "title";
+    private static final String RELEASE_DATE_KEY = "release_date";
+    private static final String VOTE_AVERAGE_KEY = "vote_average";
+    private static final String SYNOPSIS_KEY = "overview";
+    private static final String GENRE_KEY = "genres";
+    private static final String COUNTRY_KEY = "production_countries";
+    private static final String COUNTRY_CODE = "iso_3166_1";
+    private static final String IMAGES_KEY = "images";
+    private static final String BACKDROPS_KEY = "backdrops";
+    private static final String IMAGE_PATH_KEY = "file_path";
+    private static final String CREDITS_KEY = "credits";
+    private static final String CAST_KEY = "cast";
+    private static final String PROFILE_IMAGE_KEY = "profile_path";
+    private static final String CREW_KEY = "crew";
+    private static final String JOB_KEY = "job";
+    private static final String VIDEOS_KEY = "videos";
+    private static final String VIDEO_KEY_KEY = "key";
+    private static final String REVIEWS_KEY = "reviews";
+    private static final String REVIEW_AUTHOR_KEY = "author";
+    private static final String REVIEW_CONTENT_KEY = "content";
+    private static final String REVIEW_URL_KEY = "url";
+    private static final String RECOMMENDATIONS_KEY = "recommendations";
+    private static final String NAME_KEY = "name";
+    private static final String DIRECTING_JOB = "Director";
+
+    private static final String BASE_IMAGE_URL_342 = "http://image.tmdb.org/t/p/w342/";
+    private static final String BASE_IMAGE_URL_500 = "http://image.tmdb.org/t/p/w500/";
+    private static final String BASE_VIDEO_THUMBNAIL_URL = "https://img.youtube.com/vi/";
+    private static final String VIDEO_THUMBNAIL_QUALITY_URL = "/mqdefault.jpg";
+
+    private DomMovieParser() {
+    }
+
+    /**
+     * Read the whole stream into a String, like the old makeHttpRequest did.
+     */
+    static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        String line = reader.readLine();
+        while (line != null) {
+            output.append(line);
+            line = reader.readLine();
+        }
+        return output.toString();
+    }
+
+    static List<Movie> extractListDataFromJson(String movieJSON) throws JSONException {
+        List<Movie> movies = new ArrayList<>();
+        JSONObject baseJsonResponse = new JSONObject(movieJSON);
+        if (baseJsonResponse.has(RESULTS_KEY)) {
+            JSONArray results = baseJsonResponse.getJSONArray(RESULTS_KEY);
+            for (int i = 0; i < results.length(); i++) {
+                Movie movie = new Movie();
+                JSONObject movieObject = results.getJSONObject(i);
+                if (movieObject.has(ID_KEY)) {
+                    movie.setId(movieObject.getInt(ID_KEY));
+                }
+                if (movieObject.has(POSTER_KEY)) {
+                    movie.setImageUrl(BASE_IMAGE_URL_342 + movieObject.getString(POSTER_KEY));
+                }
+                movies.add(movie);
+            }
+        }
+        return movies;
+    }
+
+    static Movie extractMovieDetailsFromJson(String movieJSON) throws JSONException {
+        Movie movie = new Movie();
+        JSONObject movieObject = new JSONObject(movieJSON);
+
+        if (movieObject.has(ID_KEY)) movie.setId(movieObject.getInt(ID_KEY));
+        if (movieObject.has(TITLE_KEY)) movie.setTitle(movieObject.getString(TITLE_KEY));
+        if (movieObject.has(RELEASE_DATE_KEY)) {
+            movie.setReleaseDate(movieObject.getString(RELEASE_DATE_KEY));
+        }
+        if (movieObject.has(VOTE_AVERAGE_KEY)) {
+            movie.setVoteAverage(movieObject.getDouble(VOTE_AVERAGE_KEY));
+        }
+        if (movieObject.has(SYNOPSIS_KEY)) movie.setSynopsis(movieObject.getString(SYNOPSIS_KEY));
+        if (movieObject.has(POSTER_KEY)) {
+            movie.setImageUrl(BASE_IMAGE_URL_500 + movieObject.getString(POSTER_KEY));
+        }
+        if (movieObject.has(GENRE_KEY)) {
+            movie.setGenres(joinNames(movieObject.getJSONArray(GENRE_KEY), NAME_KEY));
+        }
+        if (movieObject.has(COUNTRY_KEY)) {
+            movie.setCountries(joinNames(movieObject.getJSONArray(COUNTRY_KEY), COUNTRY_CODE));
+        }
+
+        if (movieObject.has(IMAGES_KEY)) {
+            JSONObject images = movieObject.getJSONObject(IMAGES_KEY);
+            if (images.has(BACKDROPS_KEY)) {
+                JSONArray backdrops = images.getJSONArray(BACKDROPS_KEY);
+                if (backdrops.length() > 0) {
+                    List<String> imagesList = new ArrayList<>();
+                    int length = Math.min(backdrops.length(), 10);
+                    for (int i = 0; i < length; i++) {
+                        JSONObject imageObject = backdrops.getJSONObject(i);
+                        if (imageObject.has(IMAGE_PATH_KEY)) {
+                            imagesList.add(BASE_IMAGE_URL_342
+                                    + imageObject.getString(IMAGE_PATH_KEY));
+                        }
+                    }
+                    movie.setImagesList(imagesList);
+                }
+            }
+        }
+
+        if (movieObject.has(CREDITS_KEY)) {
+            JSONObject credits = movieObject.getJSONObject(CREDITS_KEY);
+            if (credits.has(CAST_KEY)) {
+                JSONArray cast = credits.getJSONArray(CAST_KEY);
+                if (cast.length() > 0) {
+                    int length = Math.min(cast.length(), 10);
+                    String castNamesList[] = new String[length];
+                    String castPhotosList[] = new String[length];
+                    for (int i = 0; i < length; i++) {
+                        JSONObject castObject = cast.getJSONObject(i);
+                        if (castObject.has(NAME_KEY)) {
+                            castNamesList[i] = castObject.getString(NAME_KEY);
+                            if (castObject.has(PROFILE_IMAGE_KEY)) {
+                                castPhotosList[i] = BASE_IMAGE_URL_342
+                                        + castObject.getString(PROFILE_IMAGE_KEY);
+                            }
+                        }
+                    }
+                    List<String[]> castList = new ArrayList<>();
+                    castList.add(castNamesList);
+                    castList.add(castPhotosList);
+                    movie.setCast(castList);
+                }
+            }
+            if (credits.has(CREW_KEY)) {
+                JSONArray crew = credits.getJSONArray(CREW_KEY);
+                StringBuilder directors = new StringBuilder();
+                for (int i = 0; i < crew.length(); i++) {
+                    JSONObject crewObject = crew.getJSONObject(i);
+                    if (crewObject.has(JOB_KEY)
+                            && crewObject.getString(JOB_KEY).equals(DIRECTING_JOB)
+                            && crewObject.has(NAME_KEY)) {
+                        directors.append(crewObject.getString(NAME_KEY));
+                        directors.append(", ");
+                    }
+                }
+                if (directors.length() > 0) directors.setLength(directors.length() - 2);
+                movie.setDirector(directors.toString());
+            }
+        }
+
+        if (movieObject.has(VIDEOS_KEY)) {
+            JSONObject videosObject = movieObject.getJSONObject(VIDEOS_KEY);
+            if (videosObject.has(RESULTS_KEY)) {
+                JSONArray videos = videosObject.getJSONArray(RESULTS_KEY);
+                if (videos.length() > 0) {
+                    int length = Math.min(videos.length(), 10);
+                    String videoUrlsList[] = new String[length];
+                    String videoThumbnailsList[] = new String[length];
+                    for (int i = 0; i < length; i++) {
+                        JSONObject video = videos.getJSONObject(i);
+                        if (video.has(VIDEO_KEY_KEY)) {
+                            String key = video.getString(VIDEO_KEY_KEY);
+                            videoUrlsList[i] = key;
+                            videoThumbnailsList[i] = BASE_VIDEO_THUMBNAIL_URL + key
+                                    + VIDEO_THUMBNAIL_QUALITY_URL;
+                        }
+                    }
+                    List<String[]> videosList = new ArrayList<>();
+                    videosList.add(videoUrlsList);
+                    videosList.add(videoThumbnailsList);
+                    movie.setTrailers(videosList);
+                }
+            }
+        }
+
+        if (movieObject.has(REVIEWS_KEY)) {
+            JSONObject reviewsObject = movieObject.getJSONObject(REVIEWS_KEY);
+            if (reviewsObject.has(RESULTS_KEY)) {
+                JSONArray reviews = reviewsObject.getJSONArray(RESULTS_KEY);
+                if (reviews.length() > 0) {
+                    int length = Math.min(reviews.length(), 3);
+                    String contentsList[] = new String[length];
+                    String urlsList[] = new String[length];
+                    String authorsList[] = new String[length];
+                    for (int i = 0; i < length; i++) {
+                        JSONObject review = reviews.getJSONObject(i);
+                        if (review.has(REVIEW_CONTENT_KEY)) {
+                            contentsList[i] = review.getString(REVIEW_CONTENT_KEY);
+                            if (review.has(REVIEW_URL_KEY)) {
+                                urlsList[i] = review.getString(REVIEW_URL_KEY);
+                            }
+                            if (review.has(REVIEW_AUTHOR_KEY)) {
+                                authorsList[i] = review.getString(REVIEW_AUTHOR_KEY);
+                            }
+                        }
+                    }
+                    List<String[]> reviewsList = new ArrayList<>();
+                    reviewsList.add(contentsList);
+                    reviewsList.add(urlsList);
+                    reviewsList.add(authorsList);
+                    movie.setReviews(reviewsList);
+                }
+            }
+        }
+
+        if (movieObject.has(RECOMMENDATIONS_KEY)) {
+            JSONObject recommendationsObject = movieObject.getJSONObject(RECOMMENDATIONS_KEY);
+            if (recommendationsObject.has(RESULTS_KEY)) {
+                JSONArray recommendations = recommendationsObject.getJSONArray(RESULTS_KEY);
+                if (recommendations.length() > 0) {
+                    List<Movie> recommendedMovies = new ArrayList<>();
+                    int length = Math.min(recommendations.length(), 10);
+                    for (int i = 0; i < length; i++) {
+                        Movie recommendedMovie = new Movie();
+                        JSONObject recommendation = recommendations.getJSONObject(i);
+                        if (recommendation.has(ID_KEY)) {
+                            recommendedMovie.setId(recommendation.getInt(ID_KEY));
+                        }
+                        if (recommendation.has(POSTER_KEY)) {
+                            recommendedMovie.setImageUrl(BASE_IMAGE_URL_342
+                                    + recommendation.getString(POSTER_KEY));
+                        }
+                        recommendedMovies.add(recommendedMovie);
+                    }
+                    movie.setRecommendations(recommendedMovies);
+                }
+            }
+        }
+        return movie;
+    }
+
+    private static String joinNames(JSONArray array, String key) throws JSONException {
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject object = array.getJSONObject(i);
+            if (object.has(key)) {
+                names.append(object.getString(key));
+                names.append(", ");
+            }
+        }
+        if (names.length() > 0) names.setLength(names.length() - 2);
+        return names.toString();
+    }
+}
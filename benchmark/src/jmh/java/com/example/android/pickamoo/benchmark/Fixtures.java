@@ -0,0 +1,81 @@
+package com.example.android.pickamoo.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Loads the TheMovieDb responses used by the benchmarks. They are read in memory once, so the
+ * benchmarks measure parsing only:
+ * - LIST: a page of 20 popular movies.
+ * - DETAILS: the details of a movie with every appended section and the full credits.
+ * - HUGE_CREW: the same details with {@link #HUGE_CREW_SIZE} extra crew members before the
+ * director, like the responses of long TV-like productions. The parser examines every crew
+ * member to find the director, so it measures the cost of skipping the people who aren't.
+ */
+
+final class Fixtures {
+
+    static final String LIST = "movie_list.json";
+    static final String DETAILS = "movie_details.json";
+    static final String HUGE_CREW = "movie_huge_crew";
+
+    /* Number of crew members added to build the HUGE_CREW payload */
+    private static final int HUGE_CREW_SIZE = 20000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String CREW_START = "\"crew\": [";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Return the bytes of the given fixture.
+     */
+    static byte[] load(String name) throws IOException {
+        if (HUGE_CREW.equals(name)) {
+            return buildHugeCrew();
+        }
+        InputStream inputStream = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (inputStream == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Insert many crew members at the start of the crew array of the DETAILS fixture, so the
+     * director is found only after all of them.
+     */
+    private static byte[] buildHugeCrew() throws IOException {
+        String details = new String(load(DETAILS), UTF_8);
+        int insertAt = details.indexOf(CREW_START);
+        if (insertAt == -1) {
+            throw new IOException("The details fixture has no crew");
+        }
+        insertAt += CREW_START.length();
+        StringBuilder builder = new StringBuilder(details.length() + HUGE_CREW_SIZE * 160);
+        builder.append(details, 0, insertAt);
+        for (int i = 0; i < HUGE_CREW_SIZE; i++) {
+            builder.append("{\"credit_id\": \"5a1f0c").append(i)
+                    .append("\", \"department\": \"Crew\", \"gender\": 0, \"id\": ")
+                    .append(1000000 + i)
+                    .append(", \"job\": \"Additional Crew\", \"name\": \"Crew Member ")
+                    .append(i).append("\", \"profile_path\": null}, ");
+        }
+        builder.append(details, insertAt, details.length());
+        return builder.toString().getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.pickamoo.benchmark;
+
+import com.example.android.pickamoo.Movie;
+import com.example.android.pickamoo.utilities.MovieJsonParser;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the parsers of TheMovieDb responses: the streaming {@link MovieJsonParser} used by
+ * the app and the old {@link DomMovieParser}. Both read from an in-memory stream, so only the
+ * parsing is measured. Run it with the gc profiler to get the bytes allocated per operation.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MovieJsonParserBenchmark {
+
+    /**
+     * A page of movies.
+     */
+    @State(Scope.Benchmark)
+    public static class ListPayload {
+        byte[] mBytes;
+
+        @Setup(Level.Trial)
+        public void load() throws IOException {
+            mBytes = Fixtures.load(Fixtures.LIST);
+        }
+    }
+
+    /**
+     * The details of a movie, normal or with a huge crew.
+     */
+    @State(Scope.Benchmark)
+    public static class DetailsPayload {
+        @Param({Fixtures.DETAILS, Fixtures.HUGE_CREW})
+        public String fixture;
+
+        byte[] mBytes;
+
+        @Setup(Level.Trial)
+        public void load() throws IOException {
+            mBytes = Fixtures.load(fixture);
+        }
+    }
+
+    @Benchmark
+    public List<Movie> listStreaming(ListPayload payload) throws IOException {
+        return MovieJsonParser.parseMoviesList(new ByteArrayInputStream(payload.mBytes));
+    }
+
+    @Benchmark
+    public List<Movie> listDom(ListPayload payload) throws IOException, JSONException {
+        String json = DomMovieParser.readFromStream(new ByteArrayInputStream(payload.mBytes));
+        return DomMovieParser.extractListDataFromJson(json);
+    }
+
+    @Benchmark
+    public Movie detailsStreaming(DetailsPayload payload) throws IOException {
+        return MovieJsonParser.parseMovieDetails(new ByteArrayInputStream(payload.mBytes));
+    }
+
+    @Benchmark
+    public Movie detailsDom(DetailsPayload payload) throws IOException, JSONException {
+        String json = DomMovieParser.readFromStream(new ByteArrayInputStream(payload.mBytes));
+        return DomMovieParser.extractMovieDetailsFromJson(json);
+    }
+}